@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.impl;
+
+import java.io.IOException;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.ProtocolException;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.impl.client.RequestWrapper;
+
+/**
+ * <p>
+ * {@link RequestWrapper} which implements {@link AbortableHttpRequest},
+ * allowing the wrapped request to be aborted while it is being executed.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 02/09/13
+ * @since 1.1
+ */
+public class AbortableRequestWrapper extends RequestWrapper implements AbortableHttpRequest {
+
+	private RequestAbortHandle mAbortHandle;
+
+	/**
+	 * Creates a new {@code AbortableRequestWrapper} for the given
+	 * {@link HttpRequest}.
+	 * 
+	 * @param request
+	 *            the {@code HttpRequest} to wrap
+	 * @throws ProtocolException
+	 *             if the request URI is invalid
+	 */
+	public AbortableRequestWrapper(HttpRequest request) throws ProtocolException {
+		super(request);
+		mAbortHandle = new RequestAbortHandle();
+	}
+
+	@Override
+	public void setConnectionRequest(ClientConnectionRequest connectionRequest) throws IOException {
+		mAbortHandle.setConnectionRequest(connectionRequest);
+	}
+
+	@Override
+	public void setReleaseTrigger(ConnectionReleaseTrigger releaseTrigger) throws IOException {
+		mAbortHandle.setReleaseTrigger(releaseTrigger);
+	}
+
+	@Override
+	public void abort() {
+		mAbortHandle.abort();
+	}
+
+	@Override
+	public boolean isAborted() {
+		return mAbortHandle.isAborted();
+	}
+
+}
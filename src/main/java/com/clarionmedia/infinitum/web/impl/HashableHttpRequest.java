@@ -22,14 +22,27 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.RequestWrapper;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * <p>
  * Wrapper for {@link HttpUriRequest} to support hashing and equality for
  * the purpose of HTTP caching.
  * </p>
+ * <p>
+ * By default, the request method, URI, protocol version and headers all
+ * contribute to its identity. A request obtained from
+ * {@link #withCacheKey(String)} is instead identified solely by its cache key,
+ * allowing requests which differ only in irrelevant headers to share a cached
+ * response.
+ * </p>
  * 
  * @author Tyler Treat
  * @version 1.0 08/14/12
@@ -37,7 +50,11 @@ import java.util.Map;
  */
 public class HashableHttpRequest implements HttpClientRequest {
 
+	private static final Set<String> CONDITIONAL_HEADERS = new HashSet<String>(Arrays.asList("if-none-match",
+			"if-modified-since"));
+
 	private RequestWrapper mHttpRequest;
+	private String mCacheKey;
 
 	/**
 	 * Creates a new {@code HashableHttpRequest} for the given
@@ -50,6 +67,34 @@ public class HashableHttpRequest implements HttpClientRequest {
 		request.resetHeaders();
 		mHttpRequest = request;
 	}
+
+	private HashableHttpRequest(RequestWrapper request, String cacheKey) {
+		mHttpRequest = request;
+		mCacheKey = cacheKey;
+	}
+
+	/**
+	 * Returns a {@code HashableHttpRequest} wrapping the same request whose
+	 * hash code and equality are determined by the given cache key rather
+	 * than by the request itself.
+	 * 
+	 * @param cacheKey
+	 *            the cache key identifying the request
+	 * @return {@code HashableHttpRequest} identified by {@code cacheKey}
+	 */
+	public HashableHttpRequest withCacheKey(String cacheKey) {
+		return new HashableHttpRequest(mHttpRequest, cacheKey);
+	}
+
+	/**
+	 * Returns the cache key identifying this request.
+	 * 
+	 * @return cache key or {@code null} if the request is identified by its
+	 *         method, URI and headers
+	 */
+	public String getCacheKey() {
+		return mCacheKey;
+	}
 	
 	@Override
 	public RequestWrapper unwrap() {
@@ -99,10 +144,12 @@ public class HashableHttpRequest implements HttpClientRequest {
 
 	@Override
 	public int hashCode() {
+		if (mCacheKey != null)
+			return mCacheKey.hashCode();
 		final int PRIME = 31;
 		int hash = 7;
 		hash *= PRIME + mHttpRequest.getMethod().hashCode();
-		for (Header header : mHttpRequest.getAllHeaders()) {
+		for (Header header : getIdentityHeaders()) {
 			hash *= PRIME + header.getName().hashCode();
 			hash *= PRIME + header.getValue().hashCode();
 		}
@@ -119,15 +166,17 @@ public class HashableHttpRequest implements HttpClientRequest {
 	public boolean equals(Object other) {
 		if (this == other)
 			return true;
-		if (getClass() != other.getClass())
+		if (other == null || getClass() != other.getClass())
 			return false;
 		HashableHttpRequest otherRequest = (HashableHttpRequest) other;
-		Header[] headers = mHttpRequest.getAllHeaders();
-		Header[] otherHeaders = otherRequest.mHttpRequest.getAllHeaders();
-		if (headers.length != otherHeaders.length)
+		if (mCacheKey != null || otherRequest.mCacheKey != null)
+			return mCacheKey != null && mCacheKey.equals(otherRequest.mCacheKey);
+		List<Header> headers = getIdentityHeaders();
+		List<Header> otherHeaders = otherRequest.getIdentityHeaders();
+		if (headers.size() != otherHeaders.size())
 			return false;
-		boolean match = false;
 		for (Header header : headers) {
+			boolean match = false;
 			for (Header otherHeader : otherHeaders) {
 				if (header.getName().equals(otherHeader.getName())
 						&& header.getValue().equals(otherHeader.getValue())) {
@@ -153,6 +202,22 @@ public class HashableHttpRequest implements HttpClientRequest {
 						otherRequest.mHttpRequest.getURI());
 	}
 	
+	/**
+	 * Returns the request headers which contribute to its identity. Conditional
+	 * headers, such as {@code If-None-Match}, are excluded since they are used
+	 * to revalidate a cached response rather than identify a resource.
+	 * 
+	 * @return {@link List} of identifying headers
+	 */
+	protected List<Header> getIdentityHeaders() {
+		List<Header> headers = new ArrayList<Header>();
+		for (Header header : mHttpRequest.getAllHeaders()) {
+			if (!CONDITIONAL_HEADERS.contains(header.getName().toLowerCase(Locale.US)))
+				headers.add(header);
+		}
+		return headers;
+	}
+
 	@Override
 	public String toString() {
 		return "[" + mHttpRequest.getMethod() + " " + mHttpRequest.getURI().toString() + "]";
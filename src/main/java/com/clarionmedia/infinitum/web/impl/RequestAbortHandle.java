@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.impl;
+
+import java.io.IOException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+
+/**
+ * <p>
+ * Tracks the connection state of an {@link AbortableHttpRequest} so that an
+ * in-flight request can be aborted from another thread, either while it is
+ * waiting for a pooled connection or while it is using one.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 02/09/13
+ * @since 1.1
+ */
+class RequestAbortHandle {
+
+	private final Lock mAbortLock;
+	private boolean mIsAborted;
+	private ClientConnectionRequest mConnectionRequest;
+	private ConnectionReleaseTrigger mReleaseTrigger;
+
+	/**
+	 * Creates a new {@code RequestAbortHandle}.
+	 */
+	public RequestAbortHandle() {
+		mAbortLock = new ReentrantLock();
+	}
+
+	/**
+	 * Sets the pending {@link ClientConnectionRequest}.
+	 * 
+	 * @param connectionRequest
+	 *            the connection request to abort if the request is aborted
+	 * @throws IOException
+	 *             if the request has already been aborted
+	 */
+	public void setConnectionRequest(ClientConnectionRequest connectionRequest) throws IOException {
+		mAbortLock.lock();
+		try {
+			if (mIsAborted)
+				throw new IOException("Request already aborted");
+			mReleaseTrigger = null;
+			mConnectionRequest = connectionRequest;
+		} finally {
+			mAbortLock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the {@link ConnectionReleaseTrigger} for the connection in use.
+	 * 
+	 * @param releaseTrigger
+	 *            the release trigger to invoke if the request is aborted
+	 * @throws IOException
+	 *             if the request has already been aborted
+	 */
+	public void setReleaseTrigger(ConnectionReleaseTrigger releaseTrigger) throws IOException {
+		mAbortLock.lock();
+		try {
+			if (mIsAborted)
+				throw new IOException("Request already aborted");
+			mConnectionRequest = null;
+			mReleaseTrigger = releaseTrigger;
+		} finally {
+			mAbortLock.unlock();
+		}
+	}
+
+	/**
+	 * Aborts the request, cancelling any pending connection request and
+	 * shutting down any connection in use.
+	 */
+	public void abort() {
+		ClientConnectionRequest connectionRequest;
+		ConnectionReleaseTrigger releaseTrigger;
+		mAbortLock.lock();
+		try {
+			if (mIsAborted)
+				return;
+			mIsAborted = true;
+			connectionRequest = mConnectionRequest;
+			releaseTrigger = mReleaseTrigger;
+		} finally {
+			mAbortLock.unlock();
+		}
+		if (connectionRequest != null)
+			connectionRequest.abortRequest();
+		if (releaseTrigger != null) {
+			try {
+				releaseTrigger.abortConnection();
+			} catch (IOException e) {
+				// Connection is being discarded anyway
+			}
+		}
+	}
+
+	/**
+	 * Indicates whether or not the request has been aborted.
+	 * 
+	 * @return {@code true} if aborted, {@code false} if not
+	 */
+	public boolean isAborted() {
+		mAbortLock.lock();
+		try {
+			return mIsAborted;
+		} finally {
+			mAbortLock.unlock();
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.clarionmedia.infinitum.web.rest;
+
+import java.util.Collection;
+
+import com.clarionmedia.infinitum.web.HttpClientRequest;
+
+/**
+ * <p>
+ * Describes how the cache key for a request is derived. Two requests with the
+ * same cache key are considered equivalent for the purpose of caching and
+ * request coalescing, so a policy should only take into account the parts of
+ * a request which affect the response, such as its method and URI. Headers
+ * which change on every request, like authentication timestamps or trace
+ * identifiers, should not contribute to the key.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 03/02/13
+ * @since 1.1
+ */
+public interface CacheKeyPolicy {
+
+	/**
+	 * Returns the cache key for the given request. The key must take into
+	 * account the values of the given header names, which are those listed in
+	 * the {@code Vary} header of a previously cached response for the
+	 * request.
+	 * 
+	 * @param request
+	 *            the request to retrieve the cache key for
+	 * @param varyHeaders
+	 *            the names of the request headers the response varies on,
+	 *            which may be empty
+	 * @return cache key
+	 */
+	String getCacheKey(HttpClientRequest request, Collection<String> varyHeaders);
+
+}
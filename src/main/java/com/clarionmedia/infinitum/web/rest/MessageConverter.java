@@ -16,11 +16,22 @@
 
 package com.clarionmedia.infinitum.web.rest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
 import com.clarionmedia.infinitum.web.rest.impl.RestResponse;
 
 /**
  * <p>
- * Converts {@link RestResponse} messages to objects.
+ * Converts {@link RestResponse} messages to objects, and objects to request
+ * messages.
+ * </p>
+ * <p>
+ * Implementations should parse the message data directly from its bytes
+ * rather than decoding it into a {@code String} first, which would hold a
+ * second, UTF-16 copy of the entire message in memory.
  * </p>
  * 
  * @author Tyler Treat
@@ -41,4 +52,82 @@ public interface MessageConverter {
 	 */
 	<T> T convert(Class<T> clazz, RestResponse response);
 
+	/**
+	 * Reads an object of the given type from the given message data stream
+	 * and returns it. The stream is not closed.
+	 * 
+	 * @param clazz
+	 *            the type of the object to return
+	 * @param messageData
+	 *            the {@link InputStream} to read the message data from
+	 * @return converted object
+	 */
+	<T> T convert(Class<T> clazz, InputStream messageData);
+
+	/**
+	 * Reads an object of the given generic type from the given input message
+	 * and returns it. Implementations should cache the type metadata they
+	 * resolve for {@code type}, so that repeated conversions to the same type
+	 * do not resolve it again.
+	 * 
+	 * @param type
+	 *            the {@link TypeToken} representing the type of the object to
+	 *            return
+	 * @param response
+	 *            the response to convert
+	 * @return converted object
+	 */
+	<T> T convert(TypeToken<T> type, RestResponse response);
+
+	/**
+	 * Reads an object of the given generic type from the given message data
+	 * stream and returns it. The stream is not closed.
+	 * 
+	 * @param type
+	 *            the {@link TypeToken} representing the type of the object to
+	 *            return
+	 * @param messageData
+	 *            the {@link InputStream} to read the message data from
+	 * @return converted object
+	 */
+	<T> T convert(TypeToken<T> type, InputStream messageData);
+
+	/**
+	 * Serializes the given object to the given message data stream. The
+	 * stream is not closed. Implementations should write to the stream
+	 * directly rather than serializing the object into a {@code String} or
+	 * byte array first.
+	 * <p>
+	 * Only the object's runtime class is known to the converter, not the
+	 * type it was declared with, so the type arguments of a generic object,
+	 * such as the element type of a {@code List}, are not available when it
+	 * is serialized.
+	 * </p>
+	 * 
+	 * @param object
+	 *            the object to serialize
+	 * @param messageData
+	 *            the {@link OutputStream} to write the message data to
+	 * @throws IOException
+	 *             if the message data cannot be written
+	 */
+	void write(Object object, OutputStream messageData) throws IOException;
+
+	/**
+	 * Returns the content type of the message data written by
+	 * {@link #write(Object, OutputStream)}.
+	 * 
+	 * @return content type, e.g. {@code application/json}
+	 */
+	String getContentType();
+
+	/**
+	 * Returns the media types of the message data this
+	 * {@code MessageConverter} can convert, in order of preference. These are
+	 * advertised to the server in the {@code Accept} header of requests.
+	 * 
+	 * @return supported media types, e.g. {@code application/json}
+	 */
+	List<String> getSupportedMediaTypes();
+
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest;
+
+/**
+ * <p>
+ * Creates copies of objects converted from REST responses. An
+ * {@code ObjectCopier} is used to return defensive copies of cached objects
+ * which callers are free to modify.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 05/25/13
+ * @since 1.1
+ */
+public interface ObjectCopier {
+
+	/**
+	 * Returns a deep copy of the given object.
+	 * 
+	 * @param object
+	 *            the object to copy
+	 * @param type
+	 *            the {@link TypeToken} representing the type of
+	 *            {@code object}
+	 * @return copy of {@code object}
+	 */
+	<T> T copy(T object, TypeToken<T> type);
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest;
+
+/**
+ * <p>
+ * Callback which is notified when an asynchronous request executed by a
+ * {@link RestfulClient} or {@link RestfulMappingClient} completes. Callbacks
+ * are invoked on the client's worker thread, not the thread which submitted
+ * the request.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 02/09/13
+ * @since 1.1
+ * @param <T>
+ *            the type of the request result
+ */
+public interface ResponseCallback<T> {
+
+	/**
+	 * Invoked when the request completes.
+	 * 
+	 * @param result
+	 *            the request result, which may be {@code null} if the
+	 *            response could not be retrieved
+	 */
+	void onSuccess(T result);
+
+	/**
+	 * Invoked when the request fails with an exception, such as a failed
+	 * message conversion.
+	 * 
+	 * @param error
+	 *            the cause of the failure
+	 */
+	void onFailure(Throwable error);
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * <p>
+ * Iterates over the elements of a response message which are converted to
+ * objects as they are read from the response stream, rather than converting
+ * the entire message up front. Only the current element is held in memory,
+ * regardless of the number of elements in the message.
+ * </p>
+ * <p>
+ * A {@code ResponseIterator} holds the response stream open, and with it the
+ * connection of a streamed response, until all of its elements have been
+ * read or it is closed. It is also an {@link Iterable} returning itself, so
+ * that it can be used in an enhanced {@code for} loop, but it can only be
+ * iterated once.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 05/18/13
+ * @since 1.1
+ */
+public interface ResponseIterator<T> extends Iterator<T>, Iterable<T>, Closeable {
+
+	/**
+	 * Closes the response stream, releasing its connection. Any remaining
+	 * elements are discarded. Closing a {@code ResponseIterator} which is
+	 * already closed has no effect.
+	 */
+	@Override
+	void close();
+
+}
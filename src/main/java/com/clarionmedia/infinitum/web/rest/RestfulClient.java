@@ -18,6 +18,7 @@ package com.clarionmedia.infinitum.web.rest;
 
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpUriRequest;
@@ -269,6 +270,98 @@ public interface RestfulClient {
 	 */
 	RestResponse executeRequest(HttpUriRequest request);
 
+	/**
+	 * Executes an HTTP GET request to the given URI without buffering the
+	 * response message data. See {@link #executeRequestStreaming(HttpUriRequest)}.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @return streamed HTTP response
+	 */
+	RestResponse executeGetStreaming(String uri);
+
+	/**
+	 * Executes an HTTP GET request to the given URI without buffering the
+	 * response message data. See {@link #executeRequestStreaming(HttpUriRequest)}.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param headers
+	 *            the headers to send with the request
+	 * @return streamed HTTP response
+	 */
+	RestResponse executeGetStreaming(String uri, Map<String, String> headers);
+
+	/**
+	 * Executes the given {@link HttpUriRequest} without buffering the response
+	 * message data. The returned {@link RestResponse} wraps the live entity
+	 * stream, which is read using {@link RestResponse#getResponseStream()}.
+	 * The stream must be read to its end or the response closed in order to
+	 * release the connection. Responses served from the cache are returned
+	 * as they are.
+	 * 
+	 * @param request
+	 *            the request to execute
+	 * @return streamed HTTP response
+	 */
+	RestResponse executeRequestStreaming(HttpUriRequest request);
+
+	/**
+	 * Asynchronously executes an HTTP GET request to the given URI. The
+	 * returned {@link Future} can be cancelled, which aborts the request.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @return {@code Future} HTTP response
+	 */
+	Future<RestResponse> executeGetAsync(String uri);
+
+	/**
+	 * Asynchronously executes an HTTP GET request to the given URI. The
+	 * returned {@link Future} can be cancelled, which aborts the request.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param headers
+	 *            the headers to send with the request
+	 * @return {@code Future} HTTP response
+	 */
+	Future<RestResponse> executeGetAsync(String uri, Map<String, String> headers);
+
+	/**
+	 * Asynchronously executes an HTTP GET request to the given URI and
+	 * notifies the given {@link ResponseCallback} when it completes.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param callback
+	 *            the {@code ResponseCallback} to notify
+	 * @return {@code Future} HTTP response
+	 */
+	Future<RestResponse> executeGetAsync(String uri, ResponseCallback<RestResponse> callback);
+
+	/**
+	 * Asynchronously executes the given {@link HttpUriRequest}. The returned
+	 * {@link Future} can be cancelled, which aborts the request.
+	 * 
+	 * @param request
+	 *            the request to execute
+	 * @return {@code Future} HTTP response
+	 */
+	Future<RestResponse> executeRequestAsync(HttpUriRequest request);
+
+	/**
+	 * Asynchronously executes the given {@link HttpUriRequest} and notifies
+	 * the given {@link ResponseCallback} when it completes.
+	 * 
+	 * @param request
+	 *            the request to execute
+	 * @param callback
+	 *            the {@code ResponseCallback} to notify
+	 * @return {@code Future} HTTP response
+	 */
+	Future<RestResponse> executeRequestAsync(HttpUriRequest request, ResponseCallback<RestResponse> callback);
+
 	/**
 	 * Sets the connection timeout in milliseconds. This is the timeout used
 	 * until a connection is established with the web service.
@@ -305,4 +398,62 @@ public interface RestfulClient {
 	 */
 	void setAuthStrategy(AuthenticationStrategy authStrategy);
 
+	/**
+	 * Sets the maximum number of pooled connections which may be open at
+	 * once. This resets the connection pool.
+	 * 
+	 * @param maxConnections
+	 *            the maximum total number of connections
+	 */
+	void setMaxTotalConnections(int maxConnections);
+
+	/**
+	 * Sets the maximum number of pooled connections which may be open to a
+	 * single route (host). This resets the connection pool.
+	 * 
+	 * @param maxConnections
+	 *            the maximum number of connections per route
+	 */
+	void setMaxConnectionsPerRoute(int maxConnections);
+
+	/**
+	 * Sets the time in milliseconds after which an idle pooled connection is
+	 * closed. A timeout of zero or less disables idle connection eviction.
+	 * This resets the connection pool.
+	 * 
+	 * @param timeout
+	 *            the idle timeout to set in milliseconds
+	 */
+	void setIdleConnectionTimeout(long timeout);
+
+	/**
+	 * Sets the maximum number of asynchronous requests which may execute
+	 * concurrently. Additional requests are queued until a worker is
+	 * available.
+	 * 
+	 * @param poolSize
+	 *            the number of worker threads to use for asynchronous
+	 *            requests
+	 */
+	void setAsyncPoolSize(int poolSize);
+
+	/**
+	 * Sets the maximum size of a response message which is read into memory.
+	 * Requests whose response exceeds this size fail rather than risk
+	 * exhausting the heap. Streamed responses are not limited. The default is
+	 * 16MB.
+	 * 
+	 * @param maxSize
+	 *            the maximum response size in bytes
+	 */
+	void setMaxResponseSize(long maxSize);
+
+	/**
+	 * Shuts down the connection pool and closes any open connections. Pending
+	 * asynchronous requests are cancelled and pending cache writes are
+	 * flushed. A new pool will be created if the client is used again
+	 * afterward.
+	 */
+	void shutdown();
+
 }
@@ -18,6 +18,7 @@ package com.clarionmedia.infinitum.web.rest;
 
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpUriRequest;
@@ -48,6 +49,18 @@ public interface RestfulMappingClient {
 	 */
 	<T> T executeGet(String uri, Class<T> responseType);
 
+	/**
+	 * Executes an HTTP GET request to the given URI.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param responseType
+	 *            the {@link TypeToken} representing the type of the object to
+	 *            return
+	 * @return HTTP response
+	 */
+	<T> T executeGet(String uri, TypeToken<T> responseType);
+
 	/**
 	 * Executes an HTTP GET request to the given URI
 	 * 
@@ -61,6 +74,20 @@ public interface RestfulMappingClient {
 	 */
 	<T> T executeGet(String uri, Map<String, String> headers, Class<T> responseType);
 
+	/**
+	 * Executes an HTTP GET request to the given URI
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param headers
+	 *            the headers to send with the request
+	 * @param responseType
+	 *            the {@link TypeToken} representing the type of the object to
+	 *            return
+	 * @return HTTP response
+	 */
+	<T> T executeGet(String uri, Map<String, String> headers, TypeToken<T> responseType);
+
 	/**
 	 * Executes an HTTP POST request to the given URI using the given content
 	 * type and message body.
@@ -110,6 +137,21 @@ public interface RestfulMappingClient {
 	 */
 	<T> T executePost(String uri, HttpEntity httpEntity, Class<T> responseType);
 
+	/**
+	 * Executes an HTTP POST request to the given URI using the given
+	 * {@link HttpEntity}.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param httpEntity
+	 *            the {@code HttpEntity}
+	 * @param responseType
+	 *            the {@link TypeToken} representing the type of the object to
+	 *            return
+	 * @return HTTP response
+	 */
+	<T> T executePost(String uri, HttpEntity httpEntity, TypeToken<T> responseType);
+
 	/**
 	 * Executes an HTTP POST request to the given URI using the given
 	 * {@link HttpEntity} and headers.
@@ -127,6 +169,54 @@ public interface RestfulMappingClient {
 	 */
 	<T> T executePost(String uri, HttpEntity httpEntity, Map<String, String> headers, Class<T> responseType);
 
+	/**
+	 * Executes an HTTP POST request to the given URI whose message body is the
+	 * given object, serialized by the {@link MessageConverter} as the request
+	 * is sent.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param messageBody
+	 *            the object to send as the message body
+	 * @param responseType
+	 *            the type of the object to return
+	 * @return HTTP response
+	 */
+	<T> T executePost(String uri, Object messageBody, Class<T> responseType);
+
+	/**
+	 * Executes an HTTP POST request to the given URI whose message body is the
+	 * given object, serialized by the {@link MessageConverter} as the request
+	 * is sent.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param messageBody
+	 *            the object to send as the message body
+	 * @param responseType
+	 *            the {@link TypeToken} representing the type of the object to
+	 *            return
+	 * @return HTTP response
+	 */
+	<T> T executePost(String uri, Object messageBody, TypeToken<T> responseType);
+
+	/**
+	 * Executes an HTTP POST request to the given URI using the given headers
+	 * whose message body is the given object, serialized by the
+	 * {@link MessageConverter} as the request is sent.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param messageBody
+	 *            the object to send as the message body
+	 * @param headers
+	 *            the headers to send with the request
+	 * @param responseType
+	 *            the type of the object to return
+	 * @return HTTP response
+	 */
+	<T> T executePost(String uri, Object messageBody, Map<String, String> headers, Class<T> responseType);
+
 	/**
 	 * Executes an HTTP POST request to the given URI using the given content
 	 * type and message body.
@@ -244,6 +334,34 @@ public interface RestfulMappingClient {
 	 */
 	RestResponse executePut(String uri, HttpEntity httpEntity, Map<String, String> headers);
 
+	/**
+	 * Executes an HTTP PUT request to the given URI whose message body is the
+	 * given object, serialized by the {@link MessageConverter} as the request
+	 * is sent.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param messageBody
+	 *            the object to send as the message body
+	 * @return HTTP response
+	 */
+	RestResponse executePut(String uri, Object messageBody);
+
+	/**
+	 * Executes an HTTP PUT request to the given URI using the given headers
+	 * whose message body is the given object, serialized by the
+	 * {@link MessageConverter} as the request is sent.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param messageBody
+	 *            the object to send as the message body
+	 * @param headers
+	 *            the headers to send with the request
+	 * @return HTTP response
+	 */
+	RestResponse executePut(String uri, Object messageBody, Map<String, String> headers);
+
 	/**
 	 * Executes an HTTP PUT request to the given URI using the given content
 	 * type and message body.
@@ -298,6 +416,185 @@ public interface RestfulMappingClient {
 	 */
 	<T> T executeRequest(HttpUriRequest request, Class<T> responseType);
 
+	/**
+	 * Executes the given {@link HttpUriRequest}.
+	 * 
+	 * @param request
+	 *            the request to execute
+	 * @param responseType
+	 *            the {@link TypeToken} representing the type of the object to
+	 *            return
+	 * @return HTTP response
+	 */
+	<T> T executeRequest(HttpUriRequest request, TypeToken<T> responseType);
+
+	/**
+	 * Asynchronously executes an HTTP GET request to the given URI. The
+	 * returned {@link Future} can be cancelled, which aborts the request.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param responseType
+	 *            the type of the object to return
+	 * @return {@code Future} HTTP response
+	 */
+	<T> Future<T> executeGetAsync(String uri, Class<T> responseType);
+
+	/**
+	 * Asynchronously executes an HTTP GET request to the given URI. The
+	 * returned {@link Future} can be cancelled, which aborts the request.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param headers
+	 *            the headers to send with the request
+	 * @param responseType
+	 *            the type of the object to return
+	 * @return {@code Future} HTTP response
+	 */
+	<T> Future<T> executeGetAsync(String uri, Map<String, String> headers, Class<T> responseType);
+
+	/**
+	 * Asynchronously executes an HTTP GET request to the given URI and
+	 * notifies the given {@link ResponseCallback} when it completes.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param responseType
+	 *            the type of the object to return
+	 * @param callback
+	 *            the {@code ResponseCallback} to notify
+	 * @return {@code Future} HTTP response
+	 */
+	<T> Future<T> executeGetAsync(String uri, Class<T> responseType, ResponseCallback<T> callback);
+
+	/**
+	 * Asynchronously executes the given {@link HttpUriRequest}. The returned
+	 * {@link Future} can be cancelled, which aborts the request.
+	 * 
+	 * @param request
+	 *            the request to execute
+	 * @param responseType
+	 *            the type of the object to return
+	 * @return {@code Future} HTTP response
+	 */
+	<T> Future<T> executeRequestAsync(HttpUriRequest request, Class<T> responseType);
+
+	/**
+	 * Asynchronously executes the given {@link HttpUriRequest}. The returned
+	 * {@link Future} can be cancelled, which aborts the request.
+	 * 
+	 * @param request
+	 *            the request to execute
+	 * @param responseType
+	 *            the {@link TypeToken} representing the type of the object to
+	 *            return
+	 * @return {@code Future} HTTP response
+	 */
+	<T> Future<T> executeRequestAsync(HttpUriRequest request, TypeToken<T> responseType);
+
+	/**
+	 * Asynchronously executes the given {@link HttpUriRequest} and notifies
+	 * the given {@link ResponseCallback} when it completes.
+	 * 
+	 * @param request
+	 *            the request to execute
+	 * @param responseType
+	 *            the type of the object to return
+	 * @param callback
+	 *            the {@code ResponseCallback} to notify
+	 * @return {@code Future} HTTP response
+	 */
+	<T> Future<T> executeRequestAsync(HttpUriRequest request, Class<T> responseType, ResponseCallback<T> callback);
+
+	/**
+	 * Asynchronously executes the given {@link HttpUriRequest} and notifies
+	 * the given {@link ResponseCallback} when it completes.
+	 * 
+	 * @param request
+	 *            the request to execute
+	 * @param responseType
+	 *            the {@link TypeToken} representing the type of the object to
+	 *            return
+	 * @param callback
+	 *            the {@code ResponseCallback} to notify
+	 * @return {@code Future} HTTP response
+	 */
+	<T> Future<T> executeRequestAsync(HttpUriRequest request, TypeToken<T> responseType, ResponseCallback<T> callback);
+
+	/**
+	 * Executes an HTTP GET request to the given URI and returns a
+	 * {@link ResponseIterator} over the elements of the array it returns. See
+	 * {@link #executeRequestStreaming(HttpUriRequest, TypeToken)}.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param elementType
+	 *            the type of the elements to return
+	 * @return {@code ResponseIterator} over the converted elements
+	 */
+	<T> ResponseIterator<T> executeGetStreaming(String uri, Class<T> elementType);
+
+	/**
+	 * Executes an HTTP GET request to the given URI and returns a
+	 * {@link ResponseIterator} over the elements of the array it returns. See
+	 * {@link #executeRequestStreaming(HttpUriRequest, TypeToken)}.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param headers
+	 *            the headers to send with the request
+	 * @param elementType
+	 *            the type of the elements to return
+	 * @return {@code ResponseIterator} over the converted elements
+	 */
+	<T> ResponseIterator<T> executeGetStreaming(String uri, Map<String, String> headers, Class<T> elementType);
+
+	/**
+	 * Executes an HTTP GET request to the given URI and returns a
+	 * {@link ResponseIterator} over the elements of the array it returns. See
+	 * {@link #executeRequestStreaming(HttpUriRequest, TypeToken)}.
+	 * 
+	 * @param uri
+	 *            the URI to execute the request for
+	 * @param elementType
+	 *            the {@link TypeToken} representing the type of the elements
+	 *            to return
+	 * @return {@code ResponseIterator} over the converted elements
+	 */
+	<T> ResponseIterator<T> executeGetStreaming(String uri, TypeToken<T> elementType);
+
+	/**
+	 * Executes the given {@link HttpUriRequest} and returns a
+	 * {@link ResponseIterator} over the elements of the array it returns. See
+	 * {@link #executeRequestStreaming(HttpUriRequest, TypeToken)}.
+	 * 
+	 * @param request
+	 *            the request to execute
+	 * @param elementType
+	 *            the type of the elements to return
+	 * @return {@code ResponseIterator} over the converted elements
+	 */
+	<T> ResponseIterator<T> executeRequestStreaming(HttpUriRequest request, Class<T> elementType);
+
+	/**
+	 * Executes the given {@link HttpUriRequest} and returns a
+	 * {@link ResponseIterator} over the elements of the array it returns. The
+	 * response is not buffered, and each element is converted as it is read
+	 * from the response stream, so only one element is held in memory at a
+	 * time. The {@code ResponseIterator} must be read to its end or closed in
+	 * order to release the connection. Requires a
+	 * {@link StreamingMessageConverter}.
+	 * 
+	 * @param request
+	 *            the request to execute
+	 * @param elementType
+	 *            the {@link TypeToken} representing the type of the elements
+	 *            to return
+	 * @return {@code ResponseIterator} over the converted elements
+	 */
+	<T> ResponseIterator<T> executeRequestStreaming(HttpUriRequest request, TypeToken<T> elementType);
+
 	/**
 	 * Sets the connection timeout in milliseconds. This is the timeout used
 	 * until a connection is established with the web service.
@@ -334,6 +631,64 @@ public interface RestfulMappingClient {
 	 */
 	void setAuthStrategy(AuthenticationStrategy authStrategy);
 
+	/**
+	 * Sets the maximum number of pooled connections which may be open at
+	 * once. This resets the connection pool.
+	 * 
+	 * @param maxConnections
+	 *            the maximum total number of connections
+	 */
+	void setMaxTotalConnections(int maxConnections);
+
+	/**
+	 * Sets the maximum number of pooled connections which may be open to a
+	 * single route (host). This resets the connection pool.
+	 * 
+	 * @param maxConnections
+	 *            the maximum number of connections per route
+	 */
+	void setMaxConnectionsPerRoute(int maxConnections);
+
+	/**
+	 * Sets the time in milliseconds after which an idle pooled connection is
+	 * closed. A timeout of zero or less disables idle connection eviction.
+	 * This resets the connection pool.
+	 * 
+	 * @param timeout
+	 *            the idle timeout to set in milliseconds
+	 */
+	void setIdleConnectionTimeout(long timeout);
+
+	/**
+	 * Sets the maximum number of asynchronous requests which may execute
+	 * concurrently. Additional requests are queued until a worker is
+	 * available.
+	 * 
+	 * @param poolSize
+	 *            the number of worker threads to use for asynchronous
+	 *            requests
+	 */
+	void setAsyncPoolSize(int poolSize);
+
+	/**
+	 * Sets the maximum size of a response message which is read into memory.
+	 * Requests whose response exceeds this size fail rather than risk
+	 * exhausting the heap. Streamed responses are not limited. The default is
+	 * 16MB.
+	 * 
+	 * @param maxSize
+	 *            the maximum response size in bytes
+	 */
+	void setMaxResponseSize(long maxSize);
+
+	/**
+	 * Shuts down the connection pool and closes any open connections. Pending
+	 * asynchronous requests are cancelled and pending cache writes are
+	 * flushed. A new pool will be created if the client is used again
+	 * afterward.
+	 */
+	void shutdown();
+
 	/**
 	 * Sets the {@link MessageConverter} to use. The {@code MessageConverter} is
 	 * responsible for converting web service responses to objects.
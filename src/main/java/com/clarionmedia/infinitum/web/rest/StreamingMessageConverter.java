@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest;
+
+import com.clarionmedia.infinitum.web.rest.impl.RestResponse;
+
+/**
+ * <p>
+ * {@link MessageConverter} which is also capable of converting the elements
+ * of an array message one at a time as they are read from the response
+ * stream.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 05/18/13
+ * @since 1.1
+ */
+public interface StreamingMessageConverter extends MessageConverter {
+
+	/**
+	 * Returns a {@link ResponseIterator} over the elements of the array
+	 * contained in the given response. Each element is converted to the given
+	 * type when it is retrieved from the {@code ResponseIterator}.
+	 * 
+	 * @param elementType
+	 *            the {@link TypeToken} representing the type of the elements
+	 * @param response
+	 *            the response to convert
+	 * @return {@code ResponseIterator} over the converted elements
+	 */
+	<T> ResponseIterator<T> convertElements(TypeToken<T> elementType, RestResponse response);
+
+}
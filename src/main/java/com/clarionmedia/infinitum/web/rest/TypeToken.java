@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+
+import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
+
+/**
+ * <p>
+ * Represents a generic type {@code T} to convert REST responses to. Since a
+ * {@link Class} cannot express parameterized types such as
+ * {@code List<Order>}, the type is captured from an anonymous subclass:
+ * </p>
+ * 
+ * <pre>
+ * List&lt;Order&gt; orders = client.executeGet(uri, new TypeToken&lt;List&lt;Order&gt;&gt;() {});
+ * </pre>
+ * <p>
+ * Tokens are equal if their types are equal, allowing a
+ * {@link MessageConverter} to cache the type metadata it resolves for each
+ * type.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 05/04/13
+ * @since 1.1
+ */
+public class TypeToken<T> {
+
+	private final Type mType;
+	private final Class<? super T> mRawType;
+
+	/**
+	 * Creates a new {@code TypeToken} for the type argument of the anonymous
+	 * subclass being constructed.
+	 * 
+	 * @throws InfinitumRuntimeException
+	 *             if the subclass does not declare a type argument
+	 */
+	@SuppressWarnings("unchecked")
+	protected TypeToken() {
+		Type superclass = getClass().getGenericSuperclass();
+		if (!(superclass instanceof ParameterizedType))
+			throw new InfinitumRuntimeException("TypeToken must be created with a type argument");
+		mType = ((ParameterizedType) superclass).getActualTypeArguments()[0];
+		mRawType = (Class<? super T>) getRawType(mType);
+	}
+
+	private TypeToken(Class<T> type) {
+		mType = type;
+		mRawType = type;
+	}
+
+	/**
+	 * Returns a {@code TypeToken} for the given non-generic type.
+	 * 
+	 * @param type
+	 *            the {@link Class} to create a {@code TypeToken} for
+	 * @return {@code TypeToken} for {@code type}
+	 */
+	public static <T> TypeToken<T> get(Class<T> type) {
+		return new TypeToken<T>(type);
+	}
+
+	/**
+	 * Returns the {@link Type} represented by this {@code TypeToken}.
+	 * 
+	 * @return {@code Type}
+	 */
+	public Type getType() {
+		return mType;
+	}
+
+	/**
+	 * Returns the raw {@link Class} of the type represented by this
+	 * {@code TypeToken}, e.g. {@code List} for {@code List<Order>}.
+	 * 
+	 * @return raw {@code Class}
+	 */
+	public Class<? super T> getRawType() {
+		return mRawType;
+	}
+
+	@Override
+	public int hashCode() {
+		return mType.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof TypeToken))
+			return false;
+		return mType.equals(((TypeToken<?>) obj).mType);
+	}
+
+	@Override
+	public String toString() {
+		return mType instanceof Class ? ((Class<?>) mType).getName() : mType.toString();
+	}
+
+	private static Class<?> getRawType(Type type) {
+		if (type instanceof Class)
+			return (Class<?>) type;
+		if (type instanceof ParameterizedType)
+			return (Class<?>) ((ParameterizedType) type).getRawType();
+		if (type instanceof GenericArrayType) {
+			Class<?> component = getRawType(((GenericArrayType) type).getGenericComponentType());
+			return Array.newInstance(component, 0).getClass();
+		}
+		if (type instanceof WildcardType)
+			return getRawType(((WildcardType) type).getUpperBounds()[0]);
+		if (type instanceof TypeVariable)
+			return Object.class;
+		throw new InfinitumRuntimeException("Unsupported type '" + type + "'");
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
+import com.clarionmedia.infinitum.web.rest.MessageConverter;
+import com.clarionmedia.infinitum.web.rest.TypeToken;
+
+/**
+ * <p>
+ * Base implementation of {@link MessageConverter} which converts a
+ * {@link RestResponse} by reading its message data as a stream, rather than
+ * decoding it into a {@code String} first. The stream is closed once the
+ * conversion completes, which releases the connection of a streamed
+ * response.
+ * </p>
+ * <p>
+ * Conversions to a {@link Class} are performed as conversions to its
+ * {@link TypeToken}, so subclasses need only implement
+ * {@link #convert(TypeToken, InputStream)}.
+ * </p>
+ * <p>
+ * By default, converters do not support writing and advertise no media types.
+ * Subclasses which serialize request messages should override
+ * {@link #write(Object, OutputStream)} and {@link #getContentType()}, and
+ * those which should be negotiated through the {@code Accept} header should
+ * override {@link #getSupportedMediaTypes()}.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 04/27/13
+ * @since 1.1
+ */
+public abstract class AbstractMessageConverter implements MessageConverter {
+
+	@Override
+	public <T> T convert(Class<T> clazz, RestResponse response) {
+		return convert(TypeToken.get(clazz), response);
+	}
+
+	@Override
+	public <T> T convert(Class<T> clazz, InputStream messageData) {
+		return convert(TypeToken.get(clazz), messageData);
+	}
+
+	@Override
+	public <T> T convert(TypeToken<T> type, RestResponse response) {
+		InputStream messageData = response.getResponseStream();
+		try {
+			return convert(type, messageData);
+		} finally {
+			try {
+				messageData.close();
+			} catch (IOException e) {
+				// Ignore, the object has already been converted
+			}
+		}
+	}
+
+	@Override
+	public void write(Object object, OutputStream messageData) throws IOException {
+		throw new InfinitumRuntimeException(getClass().getSimpleName() + " does not support writing");
+	}
+
+	@Override
+	public String getContentType() {
+		return null;
+	}
+
+	@Override
+	public List<String> getSupportedMediaTypes() {
+		return Collections.<String> emptyList();
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
+import com.clarionmedia.infinitum.web.rest.ResponseIterator;
+
+/**
+ * <p>
+ * Base implementation of {@link ResponseIterator} which reads its elements
+ * from a response's message data stream. Subclasses need only implement
+ * {@link #hasNextElement()} and {@link #readElement()}.
+ * </p>
+ * <p>
+ * Once the last element has been read, the remainder of the stream is
+ * drained before it is closed. This allows a streamed response to be cached
+ * and its connection to be reused. A {@code ResponseIterator} closed before
+ * then discards the remainder of the stream.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 05/18/13
+ * @since 1.1
+ */
+public abstract class AbstractResponseIterator<T> implements ResponseIterator<T> {
+
+	private static final int DRAIN_BUFFER_SIZE = 4096;
+
+	private InputStream mMessageData;
+	private boolean mIsClosed;
+
+	/**
+	 * Creates a new {@code AbstractResponseIterator} instance which reads from
+	 * the given message data stream.
+	 * 
+	 * @param messageData
+	 *            the {@link InputStream} to read the message data from
+	 */
+	protected AbstractResponseIterator(InputStream messageData) {
+		mMessageData = messageData;
+	}
+
+	/**
+	 * Indicates if there is another element to read.
+	 * 
+	 * @return {@code true} if there is another element, {@code false} if the
+	 *         end of the elements has been reached
+	 * @throws IOException
+	 *             if the message data cannot be read
+	 */
+	protected abstract boolean hasNextElement() throws IOException;
+
+	/**
+	 * Reads and converts the next element.
+	 * 
+	 * @return next element
+	 * @throws IOException
+	 *             if the message data cannot be read
+	 */
+	protected abstract T readElement() throws IOException;
+
+	@Override
+	public boolean hasNext() {
+		if (mIsClosed)
+			return false;
+		boolean hasNext;
+		try {
+			hasNext = hasNextElement();
+		} catch (IOException e) {
+			close();
+			throw new InfinitumRuntimeException("Unable to convert REST response", e);
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+		if (!hasNext)
+			finish();
+		return hasNext;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		try {
+			return readElement();
+		} catch (IOException e) {
+			close();
+			throw new InfinitumRuntimeException("Unable to convert REST response", e);
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	@Override
+	public void close() {
+		if (mIsClosed)
+			return;
+		mIsClosed = true;
+		try {
+			mMessageData.close();
+		} catch (IOException e) {
+			// Ignore, the stream is being discarded
+		}
+	}
+
+	private void finish() {
+		try {
+			byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+			int read = 0;
+			while (read >= 0)
+				read = mMessageData.read(buffer);
+		} catch (IOException e) {
+			// Ignore, all of the elements have been read
+		} finally {
+			close();
+		}
+	}
+
+}
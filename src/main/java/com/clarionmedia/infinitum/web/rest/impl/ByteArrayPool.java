@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A pool of fixed-size byte arrays which are reused as read buffers, so that
+ * reading a response of unknown length does not allocate and discard a
+ * growing series of arrays.
+ * </p>
+ * <p>
+ * Buffers are taken from the pool with {@link #acquire()} and must be
+ * returned with {@link #release(byte[])} once they are no longer used. The
+ * pool retains at most a fixed number of released buffers, and the rest are
+ * left to be garbage collected.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 04/06/13
+ * @since 1.1
+ */
+public class ByteArrayPool {
+
+	private final int mBufferSize;
+	private final int mMaxPooledBuffers;
+	private final List<byte[]> mBuffers;
+	private long mAllocationCount;
+
+	/**
+	 * Creates a new {@code ByteArrayPool}.
+	 * 
+	 * @param bufferSize
+	 *            the size of the pooled buffers in bytes
+	 * @param maxPooledBuffers
+	 *            the maximum number of released buffers to retain
+	 */
+	public ByteArrayPool(int bufferSize, int maxPooledBuffers) {
+		mBufferSize = bufferSize;
+		mMaxPooledBuffers = maxPooledBuffers;
+		mBuffers = new ArrayList<byte[]>(maxPooledBuffers);
+	}
+
+	/**
+	 * Returns a buffer from the pool, allocating a new one if the pool is
+	 * empty.
+	 * 
+	 * @return buffer of {@link #getBufferSize()} bytes
+	 */
+	public synchronized byte[] acquire() {
+		if (!mBuffers.isEmpty())
+			return mBuffers.remove(mBuffers.size() - 1);
+		mAllocationCount++;
+		return new byte[mBufferSize];
+	}
+
+	/**
+	 * Returns the given buffer to the pool. Buffers which were not acquired
+	 * from this pool are ignored.
+	 * 
+	 * @param buffer
+	 *            the buffer to release
+	 */
+	public synchronized void release(byte[] buffer) {
+		if (buffer == null || buffer.length != mBufferSize || mBuffers.size() >= mMaxPooledBuffers)
+			return;
+		mBuffers.add(buffer);
+	}
+
+	/**
+	 * Returns the size of the pooled buffers.
+	 * 
+	 * @return buffer size in bytes
+	 */
+	public int getBufferSize() {
+		return mBufferSize;
+	}
+
+	/**
+	 * Returns the number of buffers allocated by the pool because none were
+	 * available for reuse.
+	 * 
+	 * @return number of allocations
+	 */
+	public synchronized long getAllocationCount() {
+		return mAllocationCount;
+	}
+
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.clarionmedia.infinitum.internal.DateFormatter;
+import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
+
+/**
+ * <p>
+ * Determines whether HTTP responses may be cached and computes how long they
+ * remain fresh, following the HTTP/1.1 caching model. Freshness is derived
+ * from {@code Cache-Control} ({@code s-maxage}, {@code max-age}),
+ * {@code Expires} relative to {@code Date}, or, failing that, a heuristic
+ * based on {@code Last-Modified}. The response's current age is computed from
+ * the {@code Age} and {@code Date} headers along with the request and response
+ * times, so that a response which was already old when it arrived is not
+ * treated as fresh for its full lifetime.
+ * </p>
+ * <p>
+ * By default, the calculator behaves as a private (single-user) cache, meaning
+ * {@code private} responses may be stored and {@code s-maxage} is ignored.
+ * </p>
+ * <p>
+ * Delta-seconds values, such as {@code max-age}, larger than 2147483648 are
+ * treated as 2147483648, as HTTP/1.1 specifies, so that very large values
+ * neither overflow when converted to milliseconds nor are discarded as
+ * invalid.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 02/23/13
+ * @since 1.1
+ */
+public class CacheFreshnessCalculator {
+
+	private static final Set<Integer> HEURISTICALLY_CACHEABLE_STATUSES = new HashSet<Integer>(Arrays.asList(200, 203, 204,
+			300, 301, 404, 405, 410, 414, 501));
+	private static final double DEFAULT_HEURISTIC_FRACTION = 0.1;
+	private static final long MAX_HEURISTIC_LIFETIME = 24 * 60 * 60 * 1000L;
+	private static final long MAX_DELTA_SECONDS = 2147483648L;
+
+	private boolean mIsSharedCache;
+	private double mHeuristicFraction;
+
+	/**
+	 * Creates a new {@code CacheFreshnessCalculator} for a private cache.
+	 */
+	public CacheFreshnessCalculator() {
+		mHeuristicFraction = DEFAULT_HEURISTIC_FRACTION;
+	}
+
+	/**
+	 * Computes the absolute time at which the given response becomes stale.
+	 * This should be called once, when the response is stored.
+	 * 
+	 * @param request
+	 *            the request the response was received for
+	 * @param response
+	 *            the response to compute the expiration for
+	 * @param requestTime
+	 *            the time the request was sent in milliseconds since the epoch
+	 * @param responseTime
+	 *            the time the response was received in milliseconds since the
+	 *            epoch
+	 * @return expiration time in milliseconds since the epoch or {@code -1} if
+	 *         the response may not be cached
+	 */
+	public long computeExpiration(HashableHttpRequest request, RestResponse response, long requestTime, long responseTime) {
+		if (!isCacheable(request, response))
+			return -1;
+		long freshnessLifetime = getFreshnessLifetime(response, responseTime);
+		long currentAge = getCurrentAge(response, requestTime, responseTime);
+		return responseTime + freshnessLifetime - currentAge;
+	}
+
+	/**
+	 * Indicates whether or not the given response may be stored in the cache.
+	 * 
+	 * @param request
+	 *            the request the response was received for
+	 * @param response
+	 *            the response to check
+	 * @return {@code true} if the response is cacheable, {@code false} if not
+	 */
+	public boolean isCacheable(HashableHttpRequest request, RestResponse response) {
+		String method = request.getHttpMethod();
+		if (!"GET".equalsIgnoreCase(method) && !"HEAD".equalsIgnoreCase(method))
+			return false;
+		Map<String, String> requestDirectives = parseCacheControl(request.getHeader("Cache-Control"));
+		if (requestDirectives.containsKey("no-store"))
+			return false;
+		Map<String, String> directives = parseCacheControl(response.getHeader("Cache-Control"));
+		if (directives.containsKey("no-store"))
+			return false;
+		if (mIsSharedCache) {
+			if (directives.containsKey("private"))
+				return false;
+			String authorization = request.getHeader("Authorization");
+			if (!isEmpty(authorization) && !directives.containsKey("public") && !directives.containsKey("s-maxage")
+					&& !directives.containsKey("must-revalidate"))
+				return false;
+		}
+		String vary = response.getHeader("Vary");
+		if (vary != null && vary.trim().equals("*"))
+			return false;
+		if (HEURISTICALLY_CACHEABLE_STATUSES.contains(response.getStatusCode()))
+			return true;
+		// Other status codes may only be cached with explicit freshness
+		return directives.containsKey("max-age") || directives.containsKey("public")
+				|| (mIsSharedCache && directives.containsKey("s-maxage")) || !isEmpty(response.getHeader("Expires"));
+	}
+
+	/**
+	 * Indicates whether or not the given request forbids serving a cached
+	 * response without first revalidating it with the server, because it
+	 * carries a {@code Cache-Control} {@code no-cache} or {@code max-age=0}
+	 * directive, or a {@code Pragma: no-cache} header and no
+	 * {@code Cache-Control} header.
+	 * 
+	 * @param request
+	 *            the request to check
+	 * @return {@code true} if a cached response must be revalidated,
+	 *         {@code false} if it may be served while fresh
+	 */
+	public boolean requiresRevalidation(HashableHttpRequest request) {
+		String cacheControl = request.getHeader("Cache-Control");
+		Map<String, String> directives = parseCacheControl(cacheControl);
+		if (directives.containsKey("no-cache"))
+			return true;
+		if (directives.containsKey("max-age") && getDeltaSeconds(directives.get("max-age")) == 0)
+			return true;
+		return isEmpty(cacheControl) && "no-cache".equalsIgnoreCase(trim(request.getHeader("Pragma")));
+	}
+
+	/**
+	 * Returns the freshness lifetime of the given response, which is the
+	 * length of time between its generation by the server and its expiration.
+	 * 
+	 * @param response
+	 *            the response to compute the freshness lifetime for
+	 * @param responseTime
+	 *            the time the response was received in milliseconds since the
+	 *            epoch, used if the response has no {@code Date} header
+	 * @return freshness lifetime in milliseconds
+	 */
+	public long getFreshnessLifetime(RestResponse response, long responseTime) {
+		String cacheControl = response.getHeader("Cache-Control");
+		Map<String, String> directives = parseCacheControl(cacheControl);
+		if (directives.containsKey("no-cache"))
+			return 0;
+		if (isEmpty(cacheControl) && "no-cache".equalsIgnoreCase(trim(response.getHeader("Pragma"))))
+			return 0;
+		if (mIsSharedCache && directives.containsKey("s-maxage"))
+			return getDeltaSeconds(directives.get("s-maxage")) * 1000;
+		if (directives.containsKey("max-age"))
+			return getDeltaSeconds(directives.get("max-age")) * 1000;
+		long date = parseDate(response.getHeader("Date"));
+		if (date < 0)
+			date = responseTime;
+		String expiresHeader = response.getHeader("Expires");
+		if (!isEmpty(expiresHeader)) {
+			// An invalid Expires value, such as "0", means already expired
+			long expires = parseDate(expiresHeader);
+			return expires < 0 ? 0 : Math.max(0, expires - date);
+		}
+		long lastModified = parseDate(response.getHeader("Last-Modified"));
+		if (lastModified >= 0 && lastModified < date && HEURISTICALLY_CACHEABLE_STATUSES.contains(response.getStatusCode())) {
+			long heuristic = (long) ((date - lastModified) * mHeuristicFraction);
+			return Math.min(heuristic, MAX_HEURISTIC_LIFETIME);
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the age of the given response at the time it was received,
+	 * accounting for the {@code Age} header, clock skew between the client and
+	 * server, and the network delay of the request.
+	 * 
+	 * @param response
+	 *            the response to compute the age for
+	 * @param requestTime
+	 *            the time the request was sent in milliseconds since the epoch
+	 * @param responseTime
+	 *            the time the response was received in milliseconds since the
+	 *            epoch
+	 * @return age in milliseconds
+	 */
+	public long getCurrentAge(RestResponse response, long requestTime, long responseTime) {
+		long date = parseDate(response.getHeader("Date"));
+		long apparentAge = date < 0 ? 0 : Math.max(0, responseTime - date);
+		long ageValue = 0;
+		String age = response.getHeader("Age");
+		if (!isEmpty(age))
+			ageValue = getDeltaSeconds(age) * 1000;
+		long correctedAge = ageValue + Math.max(0, responseTime - requestTime);
+		return Math.max(apparentAge, correctedAge);
+	}
+
+	/**
+	 * Returns the value of the given {@code Cache-Control} extension directive
+	 * which specifies a number of seconds, such as
+	 * {@code stale-while-revalidate}.
+	 * 
+	 * @param response
+	 *            the response to retrieve the directive from
+	 * @param directive
+	 *            the name of the directive
+	 * @return directive value in seconds or {@code -1} if the response does
+	 *         not include the directive
+	 */
+	public long getDirectiveSeconds(RestResponse response, String directive) {
+		Map<String, String> directives = parseCacheControl(response.getHeader("Cache-Control"));
+		if (!directives.containsKey(directive))
+			return -1;
+		return getDeltaSeconds(directives.get(directive));
+	}
+
+	/**
+	 * Indicates whether or not the given response has a {@code Cache-Control}
+	 * directive which forbids serving it once it becomes stale, such as
+	 * {@code must-revalidate}.
+	 * 
+	 * @param response
+	 *            the response to check
+	 * @return {@code true} if the response must not be served stale,
+	 *         {@code false} if it may be
+	 */
+	public boolean mustRevalidate(RestResponse response) {
+		Map<String, String> directives = parseCacheControl(response.getHeader("Cache-Control"));
+		return directives.containsKey("must-revalidate") || (mIsSharedCache && directives.containsKey("proxy-revalidate"));
+	}
+
+	/**
+	 * Indicates whether or not the given response may be served after it has
+	 * become stale, for instance while it is being refreshed in the
+	 * background. Responses marked {@code no-cache} or which
+	 * {@link #mustRevalidate(RestResponse) must be revalidated} may not.
+	 * 
+	 * @param response
+	 *            the response to check
+	 * @return {@code true} if the response may be served stale, {@code false}
+	 *         if not
+	 */
+	public boolean mayServeStale(RestResponse response) {
+		if (mustRevalidate(response))
+			return false;
+		String cacheControl = response.getHeader("Cache-Control");
+		if (parseCacheControl(cacheControl).containsKey("no-cache"))
+			return false;
+		return !isEmpty(cacheControl) || !"no-cache".equalsIgnoreCase(trim(response.getHeader("Pragma")));
+	}
+
+	/**
+	 * Sets the value indicating whether or not this calculator should behave
+	 * as a shared cache. A shared cache does not store {@code private}
+	 * responses and honors {@code s-maxage}.
+	 * 
+	 * @param isSharedCache
+	 *            {@code true} for a shared cache, {@code false} for a private
+	 *            cache
+	 */
+	public void setSharedCache(boolean isSharedCache) {
+		mIsSharedCache = isSharedCache;
+	}
+
+	/**
+	 * Sets the fraction of the time since a response was last modified which
+	 * is used as its freshness lifetime when it has no explicit expiration.
+	 * The default is 10%. A fraction of zero disables heuristic freshness.
+	 * 
+	 * @param fraction
+	 *            the heuristic fraction to use
+	 */
+	public void setHeuristicFraction(double fraction) {
+		mHeuristicFraction = fraction;
+	}
+
+	/**
+	 * Parses the given {@code Cache-Control} header value into a {@link Map}
+	 * of lower-case directive names to their values. Directives without a
+	 * value map to an empty {@link String}.
+	 * 
+	 * @param cacheControl
+	 *            the {@code Cache-Control} header value
+	 * @return {@code Map} of directives
+	 */
+	protected Map<String, String> parseCacheControl(String cacheControl) {
+		Map<String, String> directives = new HashMap<String, String>();
+		if (isEmpty(cacheControl))
+			return directives;
+		boolean quoted = false;
+		int start = 0;
+		for (int i = 0; i <= cacheControl.length(); i++) {
+			char c = i < cacheControl.length() ? cacheControl.charAt(i) : ',';
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (!quoted && (c == ',' || c == ';')) {
+				// Multiple header values are joined using semicolons
+				addDirective(directives, cacheControl.substring(start, i));
+				start = i + 1;
+			}
+		}
+		return directives;
+	}
+
+	private void addDirective(Map<String, String> directives, String directive) {
+		directive = directive.trim();
+		if (directive.length() == 0)
+			return;
+		int equals = directive.indexOf('=');
+		if (equals < 0) {
+			directives.put(directive.toLowerCase(Locale.US), "");
+			return;
+		}
+		String name = directive.substring(0, equals).trim().toLowerCase(Locale.US);
+		String value = directive.substring(equals + 1).trim();
+		if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+			value = value.substring(1, value.length() - 1);
+		// The first occurrence of a directive takes precedence
+		if (!directives.containsKey(name))
+			directives.put(name, value);
+	}
+
+	private long getDeltaSeconds(String value) {
+		value = value.trim();
+		try {
+			long seconds = Long.parseLong(value);
+			return Math.max(0, Math.min(seconds, MAX_DELTA_SECONDS));
+		} catch (NumberFormatException e) {
+			// Values too large for a long are still valid delta-seconds
+			if (value.length() > 0 && isDigits(value))
+				return MAX_DELTA_SECONDS;
+			// Invalid values are treated as zero, making the response stale
+			return 0;
+		}
+	}
+
+	private static boolean isDigits(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (!Character.isDigit(value.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	private long parseDate(String value) {
+		if (isEmpty(value))
+			return -1;
+		try {
+			Date date = DateFormatter.parseHttpExpiresStringAsDate(value.trim());
+			return date == null ? -1 : date.getTime();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	private static String trim(String value) {
+		return value == null ? null : value.trim();
+	}
+
+	private static boolean isEmpty(String value) {
+		return value == null || value.trim().length() == 0;
+	}
+
+}
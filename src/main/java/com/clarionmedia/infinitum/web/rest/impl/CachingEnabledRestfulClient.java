@@ -18,41 +18,153 @@ package com.clarionmedia.infinitum.web.rest.impl;
 
 import android.content.Context;
 import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
-import com.clarionmedia.infinitum.internal.DateFormatter;
-import com.clarionmedia.infinitum.internal.caching.AbstractCache;
 import com.clarionmedia.infinitum.logging.Logger;
 import com.clarionmedia.infinitum.logging.impl.SmartLogger;
+import com.clarionmedia.infinitum.web.impl.AbortableEntityEnclosingRequestWrapper;
+import com.clarionmedia.infinitum.web.impl.AbortableRequestWrapper;
 import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
 import com.clarionmedia.infinitum.web.rest.AuthenticationStrategy;
+import com.clarionmedia.infinitum.web.rest.CacheKeyPolicy;
+import com.clarionmedia.infinitum.web.rest.ResponseCallback;
 import com.clarionmedia.infinitum.web.rest.RestfulClient;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.ProtocolException;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.*;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.RequestWrapper;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>
  * Implementation of {@link RestfulClient} with caching support.
  * </p>
+ * <p>
+ * Requests are sent through a single, thread-safe {@link HttpClient} backed by
+ * a pooled {@link ClientConnectionManager}, allowing persistent connections to
+ * be reused across requests. The pool is created lazily and should be released
+ * by calling {@link #shutdown()} once the client is no longer needed.
+ * </p>
+ * <p>
+ * Responses are cached by a key derived from the request by a
+ * {@link CacheKeyPolicy}. By default, this is the request method, the
+ * normalized URI and the values of any request headers the response varies
+ * on, so per-request headers such as authentication tokens do not fragment
+ * the cache. The same key is used to coalesce concurrent requests.
+ * </p>
+ * <p>
+ * Stale cached responses which carry an {@code ETag} or
+ * {@code Last-Modified} validator are revalidated with a conditional request.
+ * Requests with a {@code Cache-Control} {@code no-cache} or
+ * {@code max-age=0} directive are always sent to the server, revalidating
+ * the cached response in the same way.
+ * If the server responds with {@code 304 Not Modified}, the cached response is
+ * refreshed and served rather than being downloaded again.
+ * </p>
+ * <p>
+ * Expired responses may be served from the cache within a
+ * {@code stale-while-revalidate} window, either specified by the server or
+ * configured on the client, while they are refreshed in the background. At
+ * most one background refresh is in progress per request, and refreshes are
+ * executed on a small, bounded pool of threads.
+ * </p>
+ * <p>
+ * If the server cannot be reached or responds with a server error, the last
+ * cached response is served instead within a {@code stale-if-error} window,
+ * again either specified by the server or configured on the client.
+ * </p>
+ * <p>
+ * Responses served after they have expired are copies of the cached response
+ * for which {@link RestResponse#isStale()} returns {@code true}.
+ * </p>
+ * <p>
+ * Concurrent identical GET requests are coalesced so that only one of them
+ * is sent to the network while the others wait for and share its response.
+ * </p>
+ * <p>
+ * Streamed requests return the live entity stream rather than buffering the
+ * response, and are never coalesced. Cacheable streamed responses are
+ * spooled to the disk cache as the stream is read and stored once it has
+ * been read to its end.
+ * </p>
+ * <p>
+ * Response messages are read into an array sized from their
+ * {@code Content-Length} when it is known. Otherwise, they are read into
+ * buffers taken from a {@link ByteArrayPool} and copied into an array of the
+ * exact size once complete, after which the buffers are recycled. Responses
+ * larger than the maximum response size are rejected. Streamed responses are
+ * exempt from this limit, since they are never read into memory; a streamed
+ * response spooled to the disk cache stops being spooled once it exceeds the
+ * disk cache's maximum size.
+ * </p>
+ * <p>
+ * Requests advertise support for {@code gzip} and {@code deflate} content
+ * codings unless they specify their own {@code Accept-Encoding} header.
+ * Compressed responses are decoded as they are read, or optionally kept and
+ * cached in their compressed form and decoded each time their message data
+ * is read. The number of bytes received and decoded is recorded on each
+ * downloaded {@link RestResponse} and accumulated by the client.
+ * </p>
+ * <p>
+ * Request bodies can optionally be compressed with gzip as they are sent by
+ * wrapping them in a {@link GzipCompressingEntity}, either for every request
+ * above a size threshold or for individual requests.
+ * </p>
+ * <p>
+ * Asynchronous requests are executed on a bounded pool of daemon worker
+ * threads owned by the client, with a bounded queue of pending requests.
+ * Requests submitted while the queue is full fail immediately. Cancelling
+ * the {@link Future} returned for an asynchronous request aborts the
+ * underlying HTTP request, releasing its connection back to the pool, unless
+ * identical requests coalesced into it are still waiting for its response.
+ * </p>
  * 
  * @author Tyler Treat
  * @version 1.0 07/04/12
@@ -60,11 +172,50 @@ import java.util.Map.Entry;
  */
 public class CachingEnabledRestfulClient implements RestfulClient {
 
+	protected static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 20;
+	protected static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+	protected static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 30000;
+	protected static final int DEFAULT_ASYNC_POOL_SIZE = 4;
+	protected static final int DEFAULT_ASYNC_QUEUE_SIZE = 128;
+	protected static final int DEFAULT_REFRESH_POOL_SIZE = 2;
+	protected static final int DEFAULT_REFRESH_QUEUE_SIZE = 16;
+	protected static final long DEFAULT_MAX_RESPONSE_SIZE = 16 * 1024 * 1024;
+	protected static final int READ_BUFFER_SIZE = 8192;
+	protected static final int MAX_POOLED_READ_BUFFERS = 32;
+	protected static final long DEFAULT_REQUEST_COMPRESSION_THRESHOLD = 1024;
+
 	protected Logger mLogger;
 	protected HttpParams mHttpParams;
 	protected RestResponseCache mResponseCache;
+	protected RequestCoalescer mRequestCoalescer;
+	protected CacheFreshnessCalculator mFreshnessCalculator;
+	protected CacheKeyPolicy mCacheKeyPolicy;
+	protected volatile boolean mIsCoalescingEnabled;
+	protected volatile boolean mIsStaleWhileRevalidateEnabled;
+	protected volatile long mStaleWhileRevalidate;
+	protected volatile boolean mIsStaleIfErrorEnabled;
+	protected volatile long mStaleIfError;
 	protected boolean mIsAuthenticated;
 	protected AuthenticationStrategy mAuthStrategy;
+	protected int mMaxTotalConnections;
+	protected int mMaxConnectionsPerRoute;
+	protected long mIdleConnectionTimeout;
+	protected int mAsyncPoolSize;
+	protected volatile long mMaxResponseSize;
+	protected ByteArrayPool mBufferPool;
+	protected volatile boolean mIsCompressionEnabled;
+	protected volatile boolean mIsCompressedCachingEnabled;
+	protected volatile boolean mIsRequestCompressionEnabled;
+	protected volatile long mRequestCompressionThreshold;
+	protected volatile String mAccept;
+	private DefaultHttpClient mHttpClient;
+	private ExecutorService mAsyncExecutor;
+	private ExecutorService mRefreshExecutor;
+	private ConcurrentMap<HashableHttpRequest, Boolean> mPendingRefreshes;
+	private ConcurrentMap<String, List<String>> mVaryHeaders;
+	private IdleConnectionReaper mConnectionReaper;
+	private AtomicLong mBytesReceived;
+	private AtomicLong mBytesDecoded;
 
 	/**
 	 * Creates a new {@code CachingEnabledRestfulClient}.
@@ -73,7 +224,25 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 		mLogger = new SmartLogger(getClass().getSimpleName());
 		mHttpParams = new BasicHttpParams();
 		mResponseCache = new RestResponseCache();
-		mResponseCache.enableDiskCache(context, AbstractCache.DISK_CACHE_INTERNAL);
+		mResponseCache.enableDiskCache(context.getCacheDir());
+		mRequestCoalescer = new RequestCoalescer();
+		mFreshnessCalculator = new CacheFreshnessCalculator();
+		mCacheKeyPolicy = new DefaultCacheKeyPolicy();
+		mVaryHeaders = new ConcurrentHashMap<String, List<String>>();
+		mIsCoalescingEnabled = true;
+		mIsStaleWhileRevalidateEnabled = true;
+		mIsStaleIfErrorEnabled = true;
+		mPendingRefreshes = new ConcurrentHashMap<HashableHttpRequest, Boolean>();
+		mMaxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+		mMaxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+		mIdleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+		mAsyncPoolSize = DEFAULT_ASYNC_POOL_SIZE;
+		mMaxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+		mBufferPool = new ByteArrayPool(READ_BUFFER_SIZE, MAX_POOLED_READ_BUFFERS);
+		mIsCompressionEnabled = true;
+		mRequestCompressionThreshold = DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+		mBytesReceived = new AtomicLong();
+		mBytesDecoded = new AtomicLong();
 	}
 
 	/**
@@ -81,16 +250,264 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 	 */
 	public void clearCache() {
 		mResponseCache.clear();
+		mVaryHeaders.clear();
+	}
+
+	/**
+	 * Sets the maximum total size of the message data of cached responses
+	 * held in memory. Responses which do not fit are still available from the
+	 * disk cache.
+	 * 
+	 * @param maxSize
+	 *            the maximum size in bytes
+	 */
+	public void setMaxMemoryCacheSize(long maxSize) {
+		mResponseCache.setMaxMemorySize(maxSize);
+	}
+
+	/**
+	 * Sets the maximum size of the disk cache. The least recently used
+	 * responses are evicted when it is exceeded. The default is 10MB.
+	 * 
+	 * @param maxSize
+	 *            the maximum size in bytes
+	 */
+	public void setMaxDiskCacheSize(long maxSize) {
+		mResponseCache.setMaxDiskSize(maxSize);
+	}
+
+	/**
+	 * Sets the minimum size of a cached response which is memory-mapped when
+	 * it is read from the disk cache. The message data of such responses is
+	 * not copied onto the heap unless {@link RestResponse#getResponseData()}
+	 * is called, and can instead be read using
+	 * {@link RestResponse#getResponseStream()}. Mapping is disabled by
+	 * default.
+	 * 
+	 * @param threshold
+	 *            the minimum size in bytes, or zero or less to disable mapping
+	 */
+	public void setMappedReadThreshold(long threshold) {
+		mResponseCache.setMapThreshold(threshold);
+	}
+
+	/**
+	 * Sets the value indicating whether or not cached responses are written
+	 * to disk on a background thread rather than the thread executing the
+	 * request. This is disabled by default. Pending writes are flushed when
+	 * the client is shut down.
+	 * 
+	 * @param enabled
+	 *            {@code true} to write cached responses asynchronously,
+	 *            {@code false} to write them synchronously
+	 */
+	public void setWriteBehindEnabled(boolean enabled) {
+		mResponseCache.setWriteBehindEnabled(enabled);
+	}
+
+	/**
+	 * Sets the value indicating whether or not requests advertise support for
+	 * compressed responses with an {@code Accept-Encoding} header. This is
+	 * enabled by default.
+	 * 
+	 * @param enabled
+	 *            {@code true} to request compressed responses, {@code false}
+	 *            if not
+	 */
+	public void setCompressionEnabled(boolean enabled) {
+		mIsCompressionEnabled = enabled;
+	}
+
+	/**
+	 * Sets the value indicating whether or not compressed responses are kept
+	 * and cached in their compressed form rather than decoded when they are
+	 * received. This reduces the size of the cache at the cost of decoding
+	 * the message data each time it is read. This is disabled by default.
+	 * 
+	 * @param enabled
+	 *            {@code true} to cache compressed responses as they were
+	 *            received, {@code false} to decode them first
+	 */
+	public void setCompressedCachingEnabled(boolean enabled) {
+		mIsCompressedCachingEnabled = enabled;
+	}
+
+	/**
+	 * Sets the value of the {@code Accept} header added to requests which do
+	 * not specify one, allowing the server to choose the format of the
+	 * response from the given media types. No header is added by default.
+	 * 
+	 * @param accept
+	 *            the {@code Accept} header value, e.g.
+	 *            {@code application/json}, or {@code null} to not add the
+	 *            header
+	 */
+	public void setAcceptHeader(String accept) {
+		mAccept = accept;
+	}
+
+	/**
+	 * Sets the value indicating whether or not POST and PUT request bodies are
+	 * compressed with gzip. Bodies smaller than the request compression
+	 * threshold and bodies which already specify a content coding are sent
+	 * as they are. This is disabled by default, since not every server
+	 * accepts compressed requests.
+	 * 
+	 * @param enabled
+	 *            {@code true} to compress request bodies, {@code false} if
+	 *            not
+	 */
+	public void setRequestCompressionEnabled(boolean enabled) {
+		mIsRequestCompressionEnabled = enabled;
+	}
+
+	/**
+	 * Sets the minimum length of a request body which is compressed when
+	 * request compression is enabled. Bodies of unknown length are always
+	 * compressed. The default is 1KB.
+	 * 
+	 * @param threshold
+	 *            the minimum body length in bytes
+	 */
+	public void setRequestCompressionThreshold(long threshold) {
+		mRequestCompressionThreshold = threshold;
+	}
+
+	/**
+	 * Returns the total number of response message bytes received over the
+	 * network.
+	 * 
+	 * @return number of bytes received
+	 */
+	public long getBytesReceived() {
+		return mBytesReceived.get();
+	}
+
+	/**
+	 * Returns the total number of bytes the response messages received over
+	 * the network decoded to. Responses which were kept in their compressed
+	 * form are not included.
+	 * 
+	 * @return number of bytes decoded
+	 */
+	public long getBytesDecoded() {
+		return mBytesDecoded.get();
+	}
+
+	/**
+	 * Returns the ratio of cache lookups which found a cached response,
+	 * either in memory or on disk.
+	 * 
+	 * @return hit ratio between 0 and 1
+	 */
+	public double getCacheHitRatio() {
+		return mResponseCache.getHitRatio();
+	}
+
+	/**
+	 * Sets the {@link CacheKeyPolicy} used to derive the cache key for a
+	 * request. Changing the policy effectively invalidates previously cached
+	 * responses.
+	 * 
+	 * @param cacheKeyPolicy
+	 *            the {@code CacheKeyPolicy} to use
+	 */
+	public void setCacheKeyPolicy(CacheKeyPolicy cacheKeyPolicy) {
+		mCacheKeyPolicy = cacheKeyPolicy;
+	}
+
+	/**
+	 * Sets the {@link CacheFreshnessCalculator} used to determine whether
+	 * responses are cacheable and when they expire.
+	 * 
+	 * @param freshnessCalculator
+	 *            the {@code CacheFreshnessCalculator} to use
+	 */
+	public void setFreshnessCalculator(CacheFreshnessCalculator freshnessCalculator) {
+		mFreshnessCalculator = freshnessCalculator;
+	}
+
+	/**
+	 * Sets the value indicating whether or not concurrent identical GET
+	 * requests should be collapsed into a single network call. This is
+	 * enabled by default.
+	 * 
+	 * @param enabled
+	 *            {@code true} to coalesce requests, {@code false} to send
+	 *            every request to the network
+	 */
+	public void setRequestCoalescingEnabled(boolean enabled) {
+		mIsCoalescingEnabled = enabled;
+	}
+
+	/**
+	 * Returns the number of requests which were collapsed into an identical
+	 * in-flight request rather than being sent to the network.
+	 * 
+	 * @return number of collapsed requests
+	 */
+	public long getCoalescedRequestCount() {
+		return mRequestCoalescer.getCoalescedCount();
+	}
+
+	/**
+	 * Sets the value indicating whether or not expired responses may be
+	 * served from the cache while they are refreshed in the background. This
+	 * is enabled by default.
+	 * 
+	 * @param enabled
+	 *            {@code true} to serve stale responses while revalidating,
+	 *            {@code false} to always wait for the network once a response
+	 *            expires
+	 */
+	public void setStaleWhileRevalidateEnabled(boolean enabled) {
+		mIsStaleWhileRevalidateEnabled = enabled;
+	}
+
+	/**
+	 * Sets the window, in milliseconds, after a cached response expires
+	 * during which it is served while being refreshed in the background. This
+	 * applies to responses which do not specify a
+	 * {@code stale-while-revalidate} directive themselves. The default is 0,
+	 * meaning only responses with the directive are served stale.
+	 * 
+	 * @param window
+	 *            the stale-while-revalidate window in milliseconds
+	 */
+	public void setStaleWhileRevalidate(long window) {
+		mStaleWhileRevalidate = window;
+	}
+
+	/**
+	 * Sets the value indicating whether or not the last cached response
+	 * should be served when the server cannot be reached or responds with a
+	 * server error. This is enabled by default.
+	 * 
+	 * @param enabled
+	 *            {@code true} to serve stale responses on errors,
+	 *            {@code false} to never do so
+	 */
+	public void setStaleIfErrorEnabled(boolean enabled) {
+		mIsStaleIfErrorEnabled = enabled;
+	}
+
+	/**
+	 * Sets the grace window, in milliseconds, after a cached response expires
+	 * during which it is served if the server cannot be reached or responds
+	 * with a server error. This applies to responses which do not specify a
+	 * {@code stale-if-error} directive themselves. The default is 0, meaning
+	 * only responses with the directive are served on errors.
+	 * 
+	 * @param window
+	 *            the stale-if-error window in milliseconds
+	 */
+	public void setStaleIfError(long window) {
+		mStaleIfError = window;
 	}
 
 	@Override
 	public RestResponse executeGet(String uri) {
-		try {
-			RequestWrapper request = new RequestWrapper(new HttpGet(uri));
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(new HttpGet(uri)));
 	}
 
 	@Override
@@ -99,12 +516,7 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 		for (Entry<String, String> header : headers.entrySet()) {
 			httpGet.addHeader(header.getKey(), header.getValue());
 		}
-		try {
-			RequestWrapper request = new RequestWrapper(httpGet);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpGet));
 	}
 
 	@Override
@@ -117,12 +529,7 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 			mLogger.error("Unable to send POST request (could not encode message body)", e);
 			return null;
 		}
-		try {
-			RequestWrapper request = new RequestWrapper(httpPost);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPost));
 	}
 
 	@Override
@@ -138,25 +545,16 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 			mLogger.error("Unable to send POST request (could not encode message body)", e);
 			return null;
 		}
-		try {
-			RequestWrapper request = new RequestWrapper(httpPost);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPost));
 	}
 
 	@Override
 	public RestResponse executePost(String uri, HttpEntity httpEntity) {
 		HttpPost httpPost = new HttpPost(uri);
-		httpPost.addHeader("content-type", httpEntity.getContentType().getValue());
+		if (httpEntity.getContentType() != null)
+			httpPost.addHeader("content-type", httpEntity.getContentType().getValue());
 		httpPost.setEntity(httpEntity);
-		try {
-			RequestWrapper request = new RequestWrapper(httpPost);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPost));
 	}
 
 	@Override
@@ -166,12 +564,7 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 			httpPost.addHeader(header.getKey(), header.getValue());
 		}
 		httpPost.setEntity(httpEntity);
-		try {
-			RequestWrapper request = new RequestWrapper(httpPost);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPost));
 	}
 
 	@Override
@@ -179,12 +572,7 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 		HttpPost httpPost = new HttpPost(uri);
 		httpPost.addHeader("content-type", contentType);
 		httpPost.setEntity(new InputStreamEntity(messageBody, messageBodyLength));
-		try {
-			RequestWrapper request = new RequestWrapper(httpPost);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPost));
 	}
 
 	@Override
@@ -196,22 +584,12 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 		}
 		httpPost.addHeader("content-type", contentType);
 		httpPost.setEntity(new InputStreamEntity(messageBody, messageBodyLength));
-		try {
-			RequestWrapper request = new RequestWrapper(httpPost);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPost));
 	}
 
 	@Override
 	public RestResponse executeDelete(String uri) {
-		try {
-			RequestWrapper request = new RequestWrapper(new HttpDelete(uri));
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(new HttpDelete(uri)));
 	}
 
 	@Override
@@ -220,12 +598,7 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 		for (Entry<String, String> header : headers.entrySet()) {
 			httpDelete.addHeader(header.getKey(), header.getValue());
 		}
-		try {
-			RequestWrapper request = new RequestWrapper(httpDelete);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpDelete));
 	}
 
 	@Override
@@ -238,12 +611,7 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 			mLogger.error("Unable to send PUT request (could not encode message body)", e);
 			return null;
 		}
-		try {
-			RequestWrapper request = new RequestWrapper(httpPut);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPut));
 	}
 
 	@Override
@@ -259,25 +627,16 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 			mLogger.error("Unable to send PUT request (could not encode message body)", e);
 			return null;
 		}
-		try {
-			RequestWrapper request = new RequestWrapper(httpPut);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPut));
 	}
 
 	@Override
 	public RestResponse executePut(String uri, HttpEntity httpEntity) {
 		HttpPut httpPut = new HttpPut(uri);
-		httpPut.addHeader("content-type", httpEntity.getContentType().getValue());
+		if (httpEntity.getContentType() != null)
+			httpPut.addHeader("content-type", httpEntity.getContentType().getValue());
 		httpPut.setEntity(httpEntity);
-		try {
-			RequestWrapper request = new RequestWrapper(httpPut);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPut));
 	}
 
 	@Override
@@ -287,12 +646,7 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 			httpPut.addHeader(header.getKey(), header.getValue());
 		}
 		httpPut.setEntity(httpEntity);
-		try {
-			RequestWrapper request = new RequestWrapper(httpPut);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPut));
 	}
 
 	@Override
@@ -300,12 +654,7 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 		HttpPut httpPut = new HttpPut(uri);
 		httpPut.addHeader("content-type", contentType);
 		httpPut.setEntity(new InputStreamEntity(messageBody, messageBodyLength));
-		try {
-			RequestWrapper request = new RequestWrapper(httpPut);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPut));
 	}
 
 	@Override
@@ -317,22 +666,60 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 		}
 		httpPut.addHeader("content-type", contentType);
 		httpPut.setEntity(new InputStreamEntity(messageBody, messageBodyLength));
-		try {
-			RequestWrapper request = new RequestWrapper(httpPut);
-			return executeRequest(new HashableHttpRequest(request));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
-		}
+		return executeRequest(createRequest(httpPut));
 	}
 
 	@Override
 	public RestResponse executeRequest(HttpUriRequest request) {
-		try {
-			RequestWrapper wrapped = new RequestWrapper(request);
-			return executeRequest(new HashableHttpRequest(wrapped));
-		} catch (ProtocolException e) {
-			throw new InfinitumRuntimeException("Unable to execute request", e);
+		return executeRequest(createRequest(request));
+	}
+
+	@Override
+	public RestResponse executeGetStreaming(String uri) {
+		return executeRequest(createRequest(new HttpGet(uri)), true);
+	}
+
+	@Override
+	public RestResponse executeGetStreaming(String uri, Map<String, String> headers) {
+		HttpGet httpGet = new HttpGet(uri);
+		for (Entry<String, String> header : headers.entrySet()) {
+			httpGet.addHeader(header.getKey(), header.getValue());
 		}
+		return executeRequest(createRequest(httpGet), true);
+	}
+
+	@Override
+	public RestResponse executeRequestStreaming(HttpUriRequest request) {
+		return executeRequest(createRequest(request), true);
+	}
+
+	@Override
+	public Future<RestResponse> executeGetAsync(String uri) {
+		return executeAsync(createRequest(new HttpGet(uri)), null);
+	}
+
+	@Override
+	public Future<RestResponse> executeGetAsync(String uri, Map<String, String> headers) {
+		HttpGet httpGet = new HttpGet(uri);
+		for (Entry<String, String> header : headers.entrySet()) {
+			httpGet.addHeader(header.getKey(), header.getValue());
+		}
+		return executeAsync(createRequest(httpGet), null);
+	}
+
+	@Override
+	public Future<RestResponse> executeGetAsync(String uri, ResponseCallback<RestResponse> callback) {
+		return executeAsync(createRequest(new HttpGet(uri)), callback);
+	}
+
+	@Override
+	public Future<RestResponse> executeRequestAsync(HttpUriRequest request) {
+		return executeAsync(createRequest(request), null);
+	}
+
+	@Override
+	public Future<RestResponse> executeRequestAsync(HttpUriRequest request, ResponseCallback<RestResponse> callback) {
+		return executeAsync(createRequest(request), callback);
 	}
 
 	@Override
@@ -347,84 +734,782 @@ public class CachingEnabledRestfulClient implements RestfulClient {
 
 	@Override
 	public void setHttpParams(HttpParams httpParams) {
-		mHttpParams = httpParams;
+		// Copied so the pool settings and timeouts applied by this client do
+		// not leak into the caller's parameters or other clients sharing them
+		mHttpParams = httpParams.copy();
+		resetHttpClient();
 	}
-	
+
+	@Override
+	public void setMaxTotalConnections(int maxConnections) {
+		mMaxTotalConnections = maxConnections;
+		resetHttpClient();
+	}
+
+	@Override
+	public void setMaxConnectionsPerRoute(int maxConnections) {
+		mMaxConnectionsPerRoute = maxConnections;
+		resetHttpClient();
+	}
+
+	@Override
+	public void setIdleConnectionTimeout(long timeout) {
+		mIdleConnectionTimeout = timeout;
+		resetHttpClient();
+	}
+
+	@Override
+	public synchronized void setAsyncPoolSize(int poolSize) {
+		mAsyncPoolSize = poolSize;
+		if (mAsyncExecutor != null) {
+			mAsyncExecutor.shutdown();
+			mAsyncExecutor = null;
+		}
+	}
+
+	@Override
+	public void setMaxResponseSize(long maxSize) {
+		mMaxResponseSize = maxSize;
+	}
+
+	@Override
+	public void shutdown() {
+		synchronized (this) {
+			if (mAsyncExecutor != null) {
+				for (Runnable pending : mAsyncExecutor.shutdownNow()) {
+					if (pending instanceof Future)
+						((Future<?>) pending).cancel(true);
+				}
+				mAsyncExecutor = null;
+			}
+			if (mRefreshExecutor != null) {
+				mRefreshExecutor.shutdownNow();
+				mRefreshExecutor = null;
+			}
+		}
+		mPendingRefreshes.clear();
+		mResponseCache.close();
+		resetHttpClient();
+	}
+
 	@Override
 	public void setAuthStrategy(AuthenticationStrategy authStrategy) {
 		mAuthStrategy = authStrategy;
 		mIsAuthenticated = authStrategy != null;
 	}
 
-	private RestResponse executeRequest(HashableHttpRequest hashableHttpRequest) {
+	/**
+	 * Wraps the given {@link HttpUriRequest} in a {@link HashableHttpRequest}
+	 * which can be aborted while it is executing.
+	 * 
+	 * @param request
+	 *            the request to wrap
+	 * @return {@code HashableHttpRequest}
+	 */
+	protected HashableHttpRequest createRequest(HttpUriRequest request) {
+		try {
+			RequestWrapper wrapper;
+			if (request instanceof HttpEntityEnclosingRequest)
+				wrapper = new AbortableEntityEnclosingRequestWrapper((HttpEntityEnclosingRequest) request);
+			else
+				wrapper = new AbortableRequestWrapper(request);
+			return new HashableHttpRequest(wrapper);
+		} catch (ProtocolException e) {
+			throw new InfinitumRuntimeException("Unable to execute request", e);
+		}
+	}
+
+	/**
+	 * Submits the given task to the asynchronous executor. Cancelling the
+	 * returned {@link Future} aborts the given request.
+	 * 
+	 * @param request
+	 *            the request which is executed by the task
+	 * @param task
+	 *            the task to execute
+	 * @param callback
+	 *            the {@link ResponseCallback} to notify on completion or
+	 *            {@code null} if there is none
+	 * @return {@code Future} task result
+	 */
+	protected <T> Future<T> submit(HashableHttpRequest request, Callable<T> task, ResponseCallback<T> callback) {
+		RequestFuture<T> future = new RequestFuture<T>(request.unwrap(), task, callback);
+		try {
+			getAsyncExecutor().execute(future);
+		} catch (RejectedExecutionException e) {
+			future.fail(new InfinitumRuntimeException("Unable to execute request (async queue is full)", e));
+		}
+		return future;
+	}
+
+	/**
+	 * Returns the bounded {@link ExecutorService} used for asynchronous
+	 * requests, creating it if necessary. The executor has a bounded queue,
+	 * and its threads are daemon threads, so they do not keep the process
+	 * alive if the client is never shut down.
+	 * 
+	 * @return {@code ExecutorService}
+	 */
+	protected synchronized ExecutorService getAsyncExecutor() {
+		if (mAsyncExecutor == null) {
+			mAsyncExecutor = new ThreadPoolExecutor(mAsyncPoolSize, mAsyncPoolSize, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(DEFAULT_ASYNC_QUEUE_SIZE), new DaemonThreadFactory(
+							"RestfulClientAsync"));
+		}
+		return mAsyncExecutor;
+	}
+
+	/**
+	 * Returns the {@link ExecutorService} used to refresh stale responses in
+	 * the background, creating it if necessary. The executor has a bounded
+	 * queue, and refreshes submitted while it is full are rejected.
+	 * 
+	 * @return {@code ExecutorService}
+	 */
+	protected synchronized ExecutorService getRefreshExecutor() {
+		if (mRefreshExecutor == null) {
+			mRefreshExecutor = new ThreadPoolExecutor(DEFAULT_REFRESH_POOL_SIZE, DEFAULT_REFRESH_POOL_SIZE, 0L,
+					TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(DEFAULT_REFRESH_QUEUE_SIZE),
+					new DaemonThreadFactory("RestfulClientRefresh"));
+		}
+		return mRefreshExecutor;
+	}
+
+	private Future<RestResponse> executeAsync(final HashableHttpRequest request, ResponseCallback<RestResponse> callback) {
+		return submit(request, new Callable<RestResponse>() {
+			@Override
+			public RestResponse call() {
+				return executeRequest(request);
+			}
+		}, callback);
+	}
+
+	RestResponse executeRequest(HashableHttpRequest request) {
+		return executeRequest(request, false);
+	}
+
+	private RestResponse executeRequest(HashableHttpRequest request, boolean stream) {
+		// The headers are added before the cache key is derived, since
+		// responses commonly vary on them
+		if (mIsCompressionEnabled && !request.unwrap().containsHeader("Accept-Encoding"))
+			request.unwrap().addHeader("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
+		String accept = mAccept;
+		if (accept != null && !request.unwrap().containsHeader("Accept"))
+			request.unwrap().addHeader("Accept", accept);
+		if (mIsRequestCompressionEnabled)
+			compressRequestEntity(request);
 		if (mIsAuthenticated)
-			mAuthStrategy.authenticate(hashableHttpRequest.unwrap());
-		if (mResponseCache.containsKey(hashableHttpRequest)) {
-			RestResponse cachedResponse = mResponseCache.get(hashableHttpRequest);
-			if (cachedResponse != null)
+			mAuthStrategy.authenticate(request.unwrap());
+		HashableHttpRequest hashableHttpRequest = getCacheKey(request);
+		RestResponse cachedResponse = mResponseCache.lookup(hashableHttpRequest);
+		// A request which forbids unvalidated cached responses is sent to the
+		// server, conditionally if the cached response has validators
+		if (cachedResponse != null && !mFreshnessCalculator.requiresRevalidation(hashableHttpRequest)) {
+			if (cachedResponse.isFresh())
 				return cachedResponse;
+			long staleUntil = cachedResponse.getExpiration() + getStaleWhileRevalidateWindow(cachedResponse);
+			if (System.currentTimeMillis() < staleUntil) {
+				refreshInBackground(hashableHttpRequest, cachedResponse);
+				return copyAsStale(cachedResponse);
+			}
 		}
+		// A live stream cannot be shared, so streamed requests are not coalesced
+		if (stream)
+			return sendRequest(hashableHttpRequest, cachedResponse, true);
+		return fetch(hashableHttpRequest, cachedResponse);
+	}
+
+	private void compressRequestEntity(HashableHttpRequest request) {
+		if (!(request.unwrap() instanceof HttpEntityEnclosingRequest))
+			return;
+		HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request.unwrap();
+		HttpEntity entity = entityRequest.getEntity();
+		if (entity == null || entity.getContentEncoding() != null)
+			return;
+		long length = entity.getContentLength();
+		if (length >= 0 && length < mRequestCompressionThreshold)
+			return;
+		entityRequest.setEntity(new GzipCompressingEntity(entity));
+	}
+
+	private RestResponse fetch(final HashableHttpRequest hashableHttpRequest, final RestResponse cachedResponse) {
+		if (mIsCoalescingEnabled && isCoalescable(hashableHttpRequest)) {
+			return mRequestCoalescer.execute(hashableHttpRequest, new Callable<RestResponse>() {
+				@Override
+				public RestResponse call() {
+					return sendRequest(hashableHttpRequest, cachedResponse, false);
+				}
+			});
+		}
+		return sendRequest(hashableHttpRequest, cachedResponse, false);
+	}
+
+	private void refreshInBackground(final HashableHttpRequest request, final RestResponse cachedResponse) {
+		// Only one refresh per request may be pending at a time
+		if (mPendingRefreshes.putIfAbsent(request, Boolean.TRUE) != null)
+			return;
+		try {
+			getRefreshExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						fetch(request, cachedResponse);
+					} finally {
+						mPendingRefreshes.remove(request);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			mPendingRefreshes.remove(request);
+			mLogger.debug("Unable to refresh " + request + " in the background (refresh queue is full)");
+		}
+	}
+
+	private RestResponse sendRequest(HashableHttpRequest hashableHttpRequest, RestResponse cachedResponse,
+			boolean stream) {
 		HttpUriRequest httpRequest = hashableHttpRequest.unwrap();
+		List<Header> conditionalHeaders = addConditionalHeaders(httpRequest, cachedResponse);
 		mLogger.debug("Sending " + httpRequest.getMethod() + " request to " + httpRequest.getURI() + " with "
 				+ httpRequest.getAllHeaders().length + " headers");
-		HttpClient httpClient = new DefaultHttpClient(mHttpParams);
+		HttpResponse response = null;
 		try {
-			HttpResponse response = httpClient.execute(httpRequest);
-			RestResponse restResponse = new RestResponse(response);
+			long requestTime = System.currentTimeMillis();
+			response = getHttpClient().execute(httpRequest);
+			long responseTime = System.currentTimeMillis();
 			StatusLine statusLine = response.getStatusLine();
+			if (statusLine.getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+				RestResponse staleResponse = getStaleIfError(cachedResponse);
+				if (staleResponse != null) {
+					mLogger.debug("Serving stale response for " + hashableHttpRequest + " (server responded with "
+							+ statusLine.getStatusCode() + ")");
+					return staleResponse;
+				}
+			}
+			if (statusLine.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+				if (cachedResponse != null && !conditionalHeaders.isEmpty())
+					return refreshCachedResponse(hashableHttpRequest, cachedResponse, response, requestTime,
+							responseTime);
+				// The caller sent its own validators, so the response is
+				// passed through without being cached
+				RestResponse notModified = new RestResponse(response);
+				notModified.setStatusCode(statusLine.getStatusCode());
+				notModified.setResponseData(new byte[] {});
+				return notModified;
+			}
+			RestResponse restResponse = new RestResponse(response);
 			restResponse.setStatusCode(statusLine.getStatusCode());
 			HttpEntity entity = response.getEntity();
 			if (entity == null) {
 				restResponse.setResponseData(new byte[] {});
+			} else if (stream) {
+				CountingInputStream received = new CountingInputStream(entity.getContent());
+				InputStream content = received;
+				String encoding = getContentEncoding(entity);
+				if (encoding != null && !mIsCompressedCachingEnabled) {
+					content = ContentEncoding.decode(received, encoding);
+					encoding = null;
+					// The decoded length is not known until the stream is read
+					removeContentCoding(restResponse, -1);
+				}
+				restResponse.setContentEncoding(encoding);
+				content = new TrafficRecordingInputStream(content, received, restResponse, encoding == null);
+				restResponse.setResponseStream(cacheStreamedResponse(hashableHttpRequest, restResponse, content,
+						requestTime, responseTime));
+				// The connection is released once the stream is closed
+				response = null;
+				return restResponse;
 			} else {
-				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				entity.writeTo(out);
-				out.close();
-				restResponse.setResponseData(out.toByteArray());
+				readEntity(entity, restResponse);
 			}
-			long expiration = getResponseExpiration(restResponse);
-			if (expiration > 0)
-				mResponseCache.put(hashableHttpRequest, restResponse, expiration);
+			cacheResponse(hashableHttpRequest, restResponse, requestTime, responseTime);
 			return restResponse;
 		} catch (ClientProtocolException e) {
 			mLogger.error("Unable to send " + httpRequest.getMethod() + " request", e);
-			return null;
+			return getStaleIfError(cachedResponse);
 		} catch (IOException e) {
 			mLogger.error("Unable to read web service response", e);
+			return getStaleIfError(cachedResponse);
+		} finally {
+			if (response != null)
+				releaseConnection(response);
+			for (Header header : conditionalHeaders)
+				httpRequest.removeHeader(header);
+		}
+	}
+
+	private void readEntity(HttpEntity entity, RestResponse response) throws IOException {
+		long length = entity.getContentLength();
+		if (length > mMaxResponseSize)
+			throw new IOException("Response of " + length + " bytes exceeds maximum response size");
+		InputStream content = entity.getContent();
+		if (content == null) {
+			response.setResponseData(new byte[0]);
+			return;
+		}
+		CountingInputStream received = new CountingInputStream(content);
+		InputStream in = received;
+		byte[] data;
+		long bytesDecoded = -1;
+		try {
+			String encoding = getContentEncoding(entity);
+			if (encoding != null && !mIsCompressedCachingEnabled) {
+				in = ContentEncoding.decode(received, encoding);
+				// The Content-Length is that of the encoded data
+				data = readFully(in, -1);
+				bytesDecoded = data.length;
+				encoding = null;
+				removeContentCoding(response, data.length);
+			} else {
+				data = readFully(in, length);
+				if (encoding == null)
+					bytesDecoded = data.length;
+			}
+			response.setResponseData(data);
+			response.setContentEncoding(encoding);
+		} finally {
+			in.close();
+		}
+		recordTraffic(response, received.getCount(), bytesDecoded);
+	}
+
+	private void recordTraffic(RestResponse response, long bytesReceived, long bytesDecoded) {
+		response.setBytesReceived(bytesReceived);
+		response.setBytesDecoded(bytesDecoded);
+		mBytesReceived.addAndGet(bytesReceived);
+		if (bytesDecoded >= 0)
+			mBytesDecoded.addAndGet(bytesDecoded);
+	}
+
+	private void removeContentCoding(RestResponse response, long decodedLength) {
+		// The headers describe the encoded message data, which would otherwise
+		// be stored alongside the decoded data
+		HttpResponse httpResponse = response.unwrap();
+		if (httpResponse == null)
+			return;
+		httpResponse.removeHeaders("Content-Encoding");
+		if (decodedLength >= 0)
+			httpResponse.setHeader("Content-Length", String.valueOf(decodedLength));
+		else
+			httpResponse.removeHeaders("Content-Length");
+	}
+
+	private String getContentEncoding(HttpEntity entity) {
+		Header contentEncoding = entity.getContentEncoding();
+		return ContentEncoding.getSupportedEncoding(contentEncoding == null ? null : contentEncoding.getValue());
+	}
+
+	private byte[] readFully(InputStream in, long length) throws IOException {
+		if (length >= 0) {
+			byte[] data = new byte[(int) length];
+			int offset = 0;
+			while (offset < data.length) {
+				int read = in.read(data, offset, data.length - offset);
+				if (read < 0)
+					throw new IOException("Response ended after " + offset + " of " + length + " bytes");
+				offset += read;
+			}
+			return data;
+		}
+		return readChunked(in);
+	}
+
+	private byte[] readChunked(InputStream in) throws IOException {
+		List<byte[]> buffers = new ArrayList<byte[]>();
+		try {
+			byte[] buffer = mBufferPool.acquire();
+			buffers.add(buffer);
+			int position = 0;
+			long length = 0;
+			int read;
+			while ((read = in.read(buffer, position, buffer.length - position)) >= 0) {
+				position += read;
+				length += read;
+				if (length > mMaxResponseSize)
+					throw new IOException("Response exceeds maximum response size of " + mMaxResponseSize + " bytes");
+				if (position == buffer.length) {
+					buffer = mBufferPool.acquire();
+					buffers.add(buffer);
+					position = 0;
+				}
+			}
+			byte[] data = new byte[(int) length];
+			int offset = 0;
+			for (byte[] chunk : buffers) {
+				int count = (int) Math.min(chunk.length, length - offset);
+				System.arraycopy(chunk, 0, data, offset, count);
+				offset += count;
+			}
+			return data;
+		} finally {
+			for (byte[] chunk : buffers)
+				mBufferPool.release(chunk);
+		}
+	}
+
+	private void cacheResponse(HashableHttpRequest request, RestResponse response, long requestTime, long responseTime) {
+		long expiration = mFreshnessCalculator.computeExpiration(request, response, requestTime, responseTime);
+		if (expiration < 0) {
+			invalidateCachedResponse(request, response);
+			return;
+		}
+		response.setExpiration(expiration);
+		mResponseCache.store(updateVaryHeaders(request, response), response, getStaleRetention(response));
+	}
+
+	private InputStream cacheStreamedResponse(HashableHttpRequest request, RestResponse response, InputStream content,
+			long requestTime, long responseTime) {
+		long expiration = mFreshnessCalculator.computeExpiration(request, response, requestTime, responseTime);
+		if (expiration < 0) {
+			invalidateCachedResponse(request, response);
+			return content;
+		}
+		response.setExpiration(expiration);
+		return mResponseCache.storeStream(updateVaryHeaders(request, response), response, content,
+				getStaleRetention(response));
+	}
+
+	private void invalidateCachedResponse(HashableHttpRequest request, RestResponse response) {
+		// Only a successful response replaces the cached one. An error leaves
+		// it in place, since it may still be revalidated or served stale.
+		int statusCode = response.getStatusCode();
+		if (statusCode >= HttpStatus.SC_OK && statusCode < HttpStatus.SC_MULTIPLE_CHOICES)
+			mResponseCache.remove(request);
+	}
+
+	private long getStaleRetention(RestResponse response) {
+		long staleRetention = Math.max(getStaleWhileRevalidateWindow(response), getStaleIfErrorWindow(response));
+		return (staleRetention + 999) / 1000;
+	}
+
+	private HashableHttpRequest getCacheKey(HashableHttpRequest request) {
+		List<String> varyHeaders = Collections.emptyList();
+		String primaryKey = mCacheKeyPolicy.getCacheKey(request, varyHeaders);
+		varyHeaders = mVaryHeaders.get(primaryKey);
+		if (varyHeaders == null)
+			return request.withCacheKey(primaryKey);
+		return request.withCacheKey(mCacheKeyPolicy.getCacheKey(request, varyHeaders));
+	}
+
+	private HashableHttpRequest updateVaryHeaders(HashableHttpRequest request, RestResponse response) {
+		Set<String> names = new TreeSet<String>();
+		String vary = response.getHeader("Vary");
+		if (vary != null) {
+			for (String name : vary.split("[,;]")) {
+				if (name.trim().length() > 0)
+					names.add(name.trim().toLowerCase(Locale.US));
+			}
+		}
+		List<String> varyHeaders = new ArrayList<String>(names);
+		String primaryKey = mCacheKeyPolicy.getCacheKey(request, Collections.<String> emptyList());
+		List<String> previous = varyHeaders.isEmpty() ? mVaryHeaders.remove(primaryKey) : mVaryHeaders.put(primaryKey,
+				varyHeaders);
+		if (varyHeaders.equals(previous == null ? Collections.<String> emptyList() : previous))
+			return request;
+		// The response now varies on different headers, so the entry looked up
+		// under the previous key is obsolete
+		mResponseCache.remove(request);
+		return request.withCacheKey(mCacheKeyPolicy.getCacheKey(request, varyHeaders));
+	}
+
+	private long getStaleWhileRevalidateWindow(RestResponse response) {
+		if (!mIsStaleWhileRevalidateEnabled || !mFreshnessCalculator.mayServeStale(response))
+			return 0;
+		long window = mFreshnessCalculator.getDirectiveSeconds(response, "stale-while-revalidate");
+		return window < 0 ? mStaleWhileRevalidate : window * 1000;
+	}
+
+	private long getStaleIfErrorWindow(RestResponse response) {
+		if (!mIsStaleIfErrorEnabled || !mFreshnessCalculator.mayServeStale(response))
+			return 0;
+		long window = mFreshnessCalculator.getDirectiveSeconds(response, "stale-if-error");
+		return window < 0 ? mStaleIfError : window * 1000;
+	}
+
+	private RestResponse getStaleIfError(RestResponse cachedResponse) {
+		if (cachedResponse == null)
+			return null;
+		if (System.currentTimeMillis() >= cachedResponse.getExpiration() + getStaleIfErrorWindow(cachedResponse))
 			return null;
+		return copyAsStale(cachedResponse);
+	}
+
+	private RestResponse copyAsStale(RestResponse cachedResponse) {
+		RestResponse stale = new RestResponse();
+		stale.setStatusCode(cachedResponse.getStatusCode());
+		stale.shareResponseData(cachedResponse);
+		stale.setHeaders(new HashMap<String, String>(cachedResponse.getHeaders()));
+		stale.setExpiration(cachedResponse.getExpiration());
+		stale.setStale(true);
+		return stale;
+	}
+
+	private List<Header> addConditionalHeaders(HttpUriRequest request, RestResponse cachedResponse) {
+		List<Header> headers = new ArrayList<Header>();
+		if (cachedResponse == null)
+			return headers;
+		String etag = cachedResponse.getHeader("ETag");
+		if (etag != null && etag.length() > 0 && !request.containsHeader("If-None-Match"))
+			headers.add(new BasicHeader("If-None-Match", etag));
+		String lastModified = cachedResponse.getHeader("Last-Modified");
+		if (lastModified != null && lastModified.length() > 0 && !request.containsHeader("If-Modified-Since"))
+			headers.add(new BasicHeader("If-Modified-Since", lastModified));
+		for (Header header : headers)
+			request.addHeader(header);
+		return headers;
+	}
+
+	private RestResponse refreshCachedResponse(HashableHttpRequest request, RestResponse cachedResponse, HttpResponse notModified,
+			long requestTime, long responseTime) {
+		mLogger.debug("Cached response for " + request + " was not modified");
+		Map<String, String> headers = new HashMap<String, String>(cachedResponse.getHeaders());
+		for (Header header : notModified.getAllHeaders()) {
+			if (header.getName().equalsIgnoreCase("Content-Length"))
+				continue;
+			Iterator<String> names = headers.keySet().iterator();
+			while (names.hasNext()) {
+				if (names.next().equalsIgnoreCase(header.getName()))
+					names.remove();
+			}
+			headers.put(header.getName(), header.getValue());
 		}
+		RestResponse refreshed = new RestResponse();
+		refreshed.setStatusCode(cachedResponse.getStatusCode());
+		refreshed.shareResponseData(cachedResponse);
+		refreshed.setHeaders(headers);
+		cacheResponse(request, refreshed, requestTime, responseTime);
+		return refreshed;
 	}
 
-	private long getResponseExpiration(RestResponse response) {
-		long seconds = 0;
+	/**
+	 * Returns the shared {@link HttpClient} used to execute requests, creating
+	 * it and its connection pool if necessary.
+	 * 
+	 * @return {@code HttpClient}
+	 */
+	protected synchronized HttpClient getHttpClient() {
+		if (mHttpClient != null)
+			return mHttpClient;
+		ConnManagerParams.setMaxTotalConnections(mHttpParams, mMaxTotalConnections);
+		ConnManagerParams.setMaxConnectionsPerRoute(mHttpParams, new ConnPerRouteBean(mMaxConnectionsPerRoute));
+		SchemeRegistry schemeRegistry = new SchemeRegistry();
+		schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+		ClientConnectionManager connectionManager = new ThreadSafeClientConnManager(mHttpParams, schemeRegistry);
+		mHttpClient = new DefaultHttpClient(connectionManager, mHttpParams);
+		if (mIdleConnectionTimeout > 0) {
+			mConnectionReaper = new IdleConnectionReaper(connectionManager, mIdleConnectionTimeout);
+			mConnectionReaper.start();
+		}
+		return mHttpClient;
+	}
+
+	/**
+	 * Shuts down the current connection pool, if any. A new one will be
+	 * created the next time a request is executed.
+	 */
+	protected synchronized void resetHttpClient() {
+		if (mConnectionReaper != null) {
+			mConnectionReaper.shutdown();
+			mConnectionReaper = null;
+		}
+		if (mHttpClient != null) {
+			mHttpClient.getConnectionManager().shutdown();
+			mHttpClient = null;
+		}
+	}
+
+	private boolean isCoalescable(HashableHttpRequest request) {
+		String method = request.getHttpMethod();
+		return "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method);
+	}
+
+	private void releaseConnection(HttpResponse response) {
+		HttpEntity entity = response.getEntity();
+		if (entity == null)
+			return;
 		try {
-			for (Entry<String, String> header : response.getHeaders().entrySet()) {
-				String name = header.getKey().trim();
-				if (name.equalsIgnoreCase("cache-control")) {
-					String[] values = header.getValue().split(",");
-					for (String cacheControl : values) {
-						cacheControl = cacheControl.trim();
-						if (cacheControl.equalsIgnoreCase("no-cache") || cacheControl.equalsIgnoreCase("no-store")
-								|| cacheControl.equalsIgnoreCase("must-revalidate"))
-							return 0;
-						if (cacheControl.toLowerCase(Locale.getDefault()).startsWith("max-age")) {
-							seconds = Long.parseLong(cacheControl.split("=")[1].trim());
-						}
+			// Consuming the entity returns the connection to the pool
+			entity.consumeContent();
+		} catch (IOException e) {
+			mLogger.debug("Unable to release connection (" + e.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * {@link FutureTask} for an asynchronous request which aborts the request
+	 * when cancelled and notifies a {@link ResponseCallback} on completion. A
+	 * request which other callers have been coalesced into is not aborted,
+	 * since they share its response.
+	 */
+	private class RequestFuture<T> extends FutureTask<T> {
+
+		private final HttpUriRequest mRequest;
+		private final ResponseCallback<T> mCallback;
+
+		public RequestFuture(HttpUriRequest request, Callable<T> task, ResponseCallback<T> callback) {
+			super(task);
+			mRequest = request;
+			mCallback = callback;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled && mRequestCoalescer.abandon(mRequest))
+				mRequest.abort();
+			return cancelled;
+		}
+
+		public void fail(Throwable cause) {
+			setException(cause);
+		}
+
+		@Override
+		protected void done() {
+			if (mCallback == null || isCancelled())
+				return;
+			try {
+				mCallback.onSuccess(get());
+			} catch (ExecutionException e) {
+				mCallback.onFailure(e.getCause());
+			} catch (InterruptedException e) {
+				mCallback.onFailure(e);
+			}
+		}
+
+	}
+
+	/**
+	 * {@link FilterInputStream} over the message data of a streamed response
+	 * which records the bytes received and decoded once the stream has been
+	 * read to its end or closed.
+	 */
+	private class TrafficRecordingInputStream extends FilterInputStream {
+
+		private CountingInputStream mReceived;
+		private RestResponse mResponse;
+		private boolean mIsDecoded;
+		private long mBytesRead;
+		private boolean mIsRecorded;
+
+		public TrafficRecordingInputStream(InputStream in, CountingInputStream received, RestResponse response,
+				boolean isDecoded) {
+			super(in);
+			mReceived = received;
+			mResponse = response;
+			mIsDecoded = isDecoded;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b < 0)
+				record();
+			else
+				mBytesRead++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read < 0)
+				record();
+			else
+				mBytesRead += read;
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			mBytesRead += skipped;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				record();
+			}
+		}
+
+		private synchronized void record() {
+			if (mIsRecorded)
+				return;
+			mIsRecorded = true;
+			// Data kept in its compressed form has no decoded length
+			recordTraffic(mResponse, mReceived.getCount(), mIsDecoded ? mBytesRead : -1);
+		}
+
+	}
+
+	/**
+	 * {@link ThreadFactory} which creates named daemon threads.
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private final String mName;
+		private final AtomicLong mThreadCount;
+
+		public DaemonThreadFactory(String name) {
+			mName = name;
+			mThreadCount = new AtomicLong();
+		}
+
+		@Override
+		public Thread newThread(Runnable task) {
+			Thread thread = new Thread(task, mName + "-" + mThreadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+	/**
+	 * Background thread which periodically closes expired and idle
+	 * connections held by a {@link ClientConnectionManager}.
+	 */
+	private static class IdleConnectionReaper extends Thread {
+
+		private final ClientConnectionManager mConnectionManager;
+		private final long mIdleTimeout;
+		private volatile boolean mIsShutdown;
+
+		public IdleConnectionReaper(ClientConnectionManager connectionManager, long idleTimeout) {
+			super("IdleConnectionReaper");
+			setDaemon(true);
+			mConnectionManager = connectionManager;
+			mIdleTimeout = idleTimeout;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!mIsShutdown) {
+					synchronized (this) {
+						wait(mIdleTimeout);
 					}
-				} else if (name.equalsIgnoreCase("expires")) {
-					Date expirationDate = DateFormatter.parseHttpExpiresStringAsDate(header.getValue().trim());
-					long difference = expirationDate.getTime() - System.currentTimeMillis();
-					if (difference > 0)
-						seconds = difference;
-				} else if (name.equalsIgnoreCase("pragma")) {
-					if (header.getValue().trim().equalsIgnoreCase("no-cache"))
-						return 0;
+					mConnectionManager.closeExpiredConnections();
+					mConnectionManager.closeIdleConnections(mIdleTimeout, TimeUnit.MILLISECONDS);
 				}
+			} catch (InterruptedException e) {
+				// Shutting down
 			}
-		} catch (Exception e) {
-			mLogger.error("Unable to retrieve HTTP response expiration.");
 		}
-		return seconds;
+
+		public void shutdown() {
+			mIsShutdown = true;
+			interrupt();
+		}
+
 	}
 
 }
@@ -17,17 +17,30 @@
 package com.clarionmedia.infinitum.web.rest.impl;
 
 import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.params.HttpParams;
 
 import android.content.Context;
 
+import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
+import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
 import com.clarionmedia.infinitum.web.rest.AuthenticationStrategy;
+import com.clarionmedia.infinitum.web.rest.CacheKeyPolicy;
 import com.clarionmedia.infinitum.web.rest.MessageConverter;
+import com.clarionmedia.infinitum.web.rest.ObjectCopier;
+import com.clarionmedia.infinitum.web.rest.ResponseCallback;
+import com.clarionmedia.infinitum.web.rest.ResponseIterator;
 import com.clarionmedia.infinitum.web.rest.RestfulMappingClient;
+import com.clarionmedia.infinitum.web.rest.StreamingMessageConverter;
+import com.clarionmedia.infinitum.web.rest.TypeToken;
 
 /**
  * <p>
@@ -41,6 +54,23 @@ import com.clarionmedia.infinitum.web.rest.RestfulMappingClient;
  * {@link GsonMessageConverter} by default, meaning Gson must be on the class
  * path in this case.
  * </p>
+ * <p>
+ * The media types supported by the {@code MessageConverter} are sent in the
+ * {@code Accept} header of requests which do not specify one, so a server
+ * offering several formats, such as JSON and Smile, can respond in one the
+ * converter understands. Each media type after the first is given a lower
+ * quality value than the one before it, so that the server honors the
+ * converter's order of preference.
+ * </p>
+ * <p>
+ * Objects converted from cached responses can themselves be cached by
+ * enabling the object cache with {@link #setObjectCacheEnabled(boolean)}, in
+ * which case a response served from the response cache is only converted
+ * the first time it is served. By default, the cached object is shared by
+ * every caller and must be treated as immutable. Alternatively, an
+ * {@link ObjectCopier} can be set with {@link #setObjectCopier(ObjectCopier)}
+ * so that each caller receives its own copy.
+ * </p>
  * 
  * @author Tyler
  * @version 1.0 12/23/12
@@ -48,66 +78,395 @@ import com.clarionmedia.infinitum.web.rest.RestfulMappingClient;
  */
 public class CachingEnabledRestfulMappingClient implements RestfulMappingClient {
 
+	private static final int DEFAULT_OBJECT_CACHE_SIZE = 64;
+
 	private CachingEnabledRestfulClient mRestClient;
 	private MessageConverter mMessageConverter;
+	private volatile ConvertedObjectCache mObjectCache;
+	private volatile ObjectCopier mObjectCopier;
+	private int mObjectCacheSize = DEFAULT_OBJECT_CACHE_SIZE;
 
 	public CachingEnabledRestfulMappingClient(Context context) {
-		mRestClient = new CachingEnabledRestfulClient(context);
-		mMessageConverter = new GsonMessageConverter();
+		this(context, new GsonMessageConverter());
 	}
 
 	public CachingEnabledRestfulMappingClient(Context context, MessageConverter messageConverter) {
 		mRestClient = new CachingEnabledRestfulClient(context);
 		mMessageConverter = messageConverter;
+		mRestClient.setAcceptHeader(getAcceptHeader(messageConverter));
+	}
+
+	/**
+	 * Clears the response cache and the object cache.
+	 */
+	public void clearCache() {
+		mRestClient.clearCache();
+		ConvertedObjectCache objectCache = mObjectCache;
+		if (objectCache != null)
+			objectCache.clear();
+	}
+
+	/**
+	 * Sets the value indicating whether or not objects converted from cached
+	 * responses are cached, so that a response served from the response cache
+	 * is not converted again. Cached objects are shared between callers
+	 * unless an {@link ObjectCopier} is set. This is disabled by default.
+	 * 
+	 * @param enabled
+	 *            {@code true} to cache converted objects, {@code false} if
+	 *            not
+	 */
+	public synchronized void setObjectCacheEnabled(boolean enabled) {
+		if (!enabled)
+			mObjectCache = null;
+		else if (mObjectCache == null)
+			mObjectCache = new ConvertedObjectCache(mObjectCacheSize);
+	}
+
+	/**
+	 * Sets the maximum number of converted objects held in the object cache.
+	 * The default is 64.
+	 * 
+	 * @param maxEntries
+	 *            the maximum number of converted objects
+	 */
+	public synchronized void setObjectCacheSize(int maxEntries) {
+		mObjectCacheSize = maxEntries;
+		if (mObjectCache != null)
+			mObjectCache.setMaxEntries(maxEntries);
+	}
+
+	/**
+	 * Sets the {@link ObjectCopier} used to copy objects returned from the
+	 * object cache, so that callers may modify them. If it is {@code null},
+	 * which is the default, the cached objects themselves are returned and
+	 * must not be modified. {@link GsonMessageConverter} and
+	 * {@link JacksonMessageConverter} can each be used as an
+	 * {@code ObjectCopier}.
+	 * 
+	 * @param objectCopier
+	 *            the {@code ObjectCopier} to use, or {@code null} to share
+	 *            cached objects
+	 */
+	public void setObjectCopier(ObjectCopier objectCopier) {
+		mObjectCopier = objectCopier;
+	}
+
+	/**
+	 * Returns the ratio of object cache lookups which found a converted
+	 * object.
+	 * 
+	 * @return hit ratio between 0 and 1
+	 */
+	public double getObjectCacheHitRatio() {
+		ConvertedObjectCache objectCache = mObjectCache;
+		return objectCache == null ? 0 : objectCache.getHitRatio();
+	}
+
+	/**
+	 * Sets the maximum total size of the message data of cached responses
+	 * held in memory.
+	 * 
+	 * @param maxSize
+	 *            the maximum size in bytes
+	 */
+	public void setMaxMemoryCacheSize(long maxSize) {
+		mRestClient.setMaxMemoryCacheSize(maxSize);
+	}
+
+	/**
+	 * Sets the maximum size of the disk cache. The least recently used
+	 * responses are evicted when it is exceeded. The default is 10MB.
+	 * 
+	 * @param maxSize
+	 *            the maximum size in bytes
+	 */
+	public void setMaxDiskCacheSize(long maxSize) {
+		mRestClient.setMaxDiskCacheSize(maxSize);
+	}
+
+	/**
+	 * Sets the minimum size of a cached response which is memory-mapped when
+	 * it is read from the disk cache. The message data of such responses is
+	 * not copied onto the heap unless {@link RestResponse#getResponseData()}
+	 * is called, and can instead be read using
+	 * {@link RestResponse#getResponseStream()}. Mapping is disabled by
+	 * default.
+	 * 
+	 * @param threshold
+	 *            the minimum size in bytes, or zero or less to disable mapping
+	 */
+	public void setMappedReadThreshold(long threshold) {
+		mRestClient.setMappedReadThreshold(threshold);
+	}
+
+	/**
+	 * Sets the value indicating whether or not cached responses are written
+	 * to disk on a background thread rather than the thread executing the
+	 * request. This is disabled by default. Pending writes are flushed when
+	 * the client is shut down.
+	 * 
+	 * @param enabled
+	 *            {@code true} to write cached responses asynchronously,
+	 *            {@code false} to write them synchronously
+	 */
+	public void setWriteBehindEnabled(boolean enabled) {
+		mRestClient.setWriteBehindEnabled(enabled);
+	}
+
+	/**
+	 * Sets the value indicating whether or not requests advertise support for
+	 * compressed responses with an {@code Accept-Encoding} header. This is
+	 * enabled by default.
+	 * 
+	 * @param enabled
+	 *            {@code true} to request compressed responses, {@code false}
+	 *            if not
+	 */
+	public void setCompressionEnabled(boolean enabled) {
+		mRestClient.setCompressionEnabled(enabled);
+	}
+
+	/**
+	 * Sets the value indicating whether or not compressed responses are kept
+	 * and cached in their compressed form rather than decoded when they are
+	 * received. This is disabled by default.
+	 * 
+	 * @param enabled
+	 *            {@code true} to cache compressed responses as they were
+	 *            received, {@code false} to decode them first
+	 */
+	public void setCompressedCachingEnabled(boolean enabled) {
+		mRestClient.setCompressedCachingEnabled(enabled);
+	}
+
+	/**
+	 * Sets the value indicating whether or not POST and PUT request bodies are
+	 * compressed with gzip. Bodies smaller than the request compression
+	 * threshold and bodies which already specify a content coding are sent
+	 * as they are. This is disabled by default, since not every server
+	 * accepts compressed requests.
+	 * 
+	 * @param enabled
+	 *            {@code true} to compress request bodies, {@code false} if
+	 *            not
+	 */
+	public void setRequestCompressionEnabled(boolean enabled) {
+		mRestClient.setRequestCompressionEnabled(enabled);
+	}
+
+	/**
+	 * Sets the minimum length of a request body which is compressed when
+	 * request compression is enabled. Bodies of unknown length are always
+	 * compressed. The default is 1KB.
+	 * 
+	 * @param threshold
+	 *            the minimum body length in bytes
+	 */
+	public void setRequestCompressionThreshold(long threshold) {
+		mRestClient.setRequestCompressionThreshold(threshold);
+	}
+
+	/**
+	 * Returns the total number of response message bytes received over the
+	 * network.
+	 * 
+	 * @return number of bytes received
+	 */
+	public long getBytesReceived() {
+		return mRestClient.getBytesReceived();
+	}
+
+	/**
+	 * Returns the total number of bytes the response messages received over
+	 * the network decoded to.
+	 * 
+	 * @return number of bytes decoded
+	 */
+	public long getBytesDecoded() {
+		return mRestClient.getBytesDecoded();
+	}
+
+	/**
+	 * Returns the ratio of cache lookups which found a cached response,
+	 * either in memory or on disk.
+	 * 
+	 * @return hit ratio between 0 and 1
+	 */
+	public double getCacheHitRatio() {
+		return mRestClient.getCacheHitRatio();
+	}
+
+	/**
+	 * Sets the {@link CacheKeyPolicy} used to derive the cache key for a
+	 * request.
+	 * 
+	 * @param cacheKeyPolicy
+	 *            the {@code CacheKeyPolicy} to use
+	 */
+	public void setCacheKeyPolicy(CacheKeyPolicy cacheKeyPolicy) {
+		mRestClient.setCacheKeyPolicy(cacheKeyPolicy);
+	}
+
+	/**
+	 * Sets the value indicating whether or not concurrent identical GET
+	 * requests should be collapsed into a single network call. This is
+	 * enabled by default.
+	 * 
+	 * @param enabled
+	 *            {@code true} to coalesce requests, {@code false} to send
+	 *            every request to the network
+	 */
+	public void setRequestCoalescingEnabled(boolean enabled) {
+		mRestClient.setRequestCoalescingEnabled(enabled);
+	}
+
+	/**
+	 * Sets the value indicating whether or not expired responses may be
+	 * served from the cache while they are refreshed in the background. This
+	 * is enabled by default.
+	 * 
+	 * @param enabled
+	 *            {@code true} to serve stale responses while revalidating,
+	 *            {@code false} to always wait for the network once a response
+	 *            expires
+	 */
+	public void setStaleWhileRevalidateEnabled(boolean enabled) {
+		mRestClient.setStaleWhileRevalidateEnabled(enabled);
+	}
+
+	/**
+	 * Sets the window, in milliseconds, after a cached response expires
+	 * during which it is served while being refreshed in the background. This
+	 * applies to responses which do not specify a
+	 * {@code stale-while-revalidate} directive themselves.
+	 * 
+	 * @param window
+	 *            the stale-while-revalidate window in milliseconds
+	 */
+	public void setStaleWhileRevalidate(long window) {
+		mRestClient.setStaleWhileRevalidate(window);
+	}
+
+	/**
+	 * Sets the value indicating whether or not the last cached response
+	 * should be served when the server cannot be reached or responds with a
+	 * server error. This is enabled by default.
+	 * 
+	 * @param enabled
+	 *            {@code true} to serve stale responses on errors,
+	 *            {@code false} to never do so
+	 */
+	public void setStaleIfErrorEnabled(boolean enabled) {
+		mRestClient.setStaleIfErrorEnabled(enabled);
+	}
+
+	/**
+	 * Sets the grace window, in milliseconds, after a cached response expires
+	 * during which it is served if the server cannot be reached or responds
+	 * with a server error. This applies to responses which do not specify a
+	 * {@code stale-if-error} directive themselves.
+	 * 
+	 * @param window
+	 *            the stale-if-error window in milliseconds
+	 */
+	public void setStaleIfError(long window) {
+		mRestClient.setStaleIfError(window);
+	}
+
+	/**
+	 * Returns the number of requests which were collapsed into an identical
+	 * in-flight request rather than being sent to the network.
+	 * 
+	 * @return number of collapsed requests
+	 */
+	public long getCoalescedRequestCount() {
+		return mRestClient.getCoalescedRequestCount();
 	}
 
 	@Override
 	public <T> T executeGet(String uri, Class<T> responseType) {
 		RestResponse response = mRestClient.executeGet(uri);
-		return mMessageConverter.convert(responseType, response);
+		return convert(responseType, response);
+	}
+
+	@Override
+	public <T> T executeGet(String uri, TypeToken<T> responseType) {
+		RestResponse response = mRestClient.executeGet(uri);
+		return convert(responseType, response);
 	}
 
 	@Override
 	public <T> T executeGet(String uri, Map<String, String> headers, Class<T> responseType) {
 		RestResponse response = mRestClient.executeGet(uri, headers);
-		return mMessageConverter.convert(responseType, response);
+		return convert(responseType, response);
+	}
+
+	@Override
+	public <T> T executeGet(String uri, Map<String, String> headers, TypeToken<T> responseType) {
+		RestResponse response = mRestClient.executeGet(uri, headers);
+		return convert(responseType, response);
 	}
 
 	@Override
 	public <T> T executePost(String uri, String messageBody, String contentType, Class<T> responseType) {
 		RestResponse response = mRestClient.executePost(uri, messageBody, contentType);
-		return mMessageConverter.convert(responseType, response);
+		return convert(responseType, response);
 	}
 
 	@Override
 	public <T> T executePost(String uri, String messageBody, String contentType, Map<String, String> headers, Class<T> responseType) {
 		RestResponse response = mRestClient.executePost(uri, messageBody, contentType, headers);
-		return mMessageConverter.convert(responseType, response);
+		return convert(responseType, response);
 	}
 
 	@Override
 	public <T> T executePost(String uri, HttpEntity httpEntity, Class<T> responseType) {
 		RestResponse response = mRestClient.executePost(uri, httpEntity);
-		return mMessageConverter.convert(responseType, response);
+		return convert(responseType, response);
+	}
+
+	@Override
+	public <T> T executePost(String uri, HttpEntity httpEntity, TypeToken<T> responseType) {
+		RestResponse response = mRestClient.executePost(uri, httpEntity);
+		return convert(responseType, response);
 	}
 
 	@Override
 	public <T> T executePost(String uri, HttpEntity httpEntity, Map<String, String> headers, Class<T> responseType) {
 		RestResponse response = mRestClient.executePost(uri, httpEntity, headers);
-		return mMessageConverter.convert(responseType, response);
+		return convert(responseType, response);
+	}
+
+	@Override
+	public <T> T executePost(String uri, Object messageBody, Class<T> responseType) {
+		RestResponse response = mRestClient.executePost(uri, new ObjectEntity(messageBody, mMessageConverter));
+		return convert(responseType, response);
+	}
+
+	@Override
+	public <T> T executePost(String uri, Object messageBody, TypeToken<T> responseType) {
+		RestResponse response = mRestClient.executePost(uri, new ObjectEntity(messageBody, mMessageConverter));
+		return convert(responseType, response);
+	}
+
+	@Override
+	public <T> T executePost(String uri, Object messageBody, Map<String, String> headers, Class<T> responseType) {
+		RestResponse response = mRestClient.executePost(uri, new ObjectEntity(messageBody, mMessageConverter), headers);
+		return convert(responseType, response);
 	}
 
 	@Override
 	public <T> T executePost(String uri, InputStream messageBody, int messageBodyLength, String contentType, Class<T> responseType) {
 		RestResponse response = mRestClient.executePost(uri, messageBody, messageBodyLength, contentType);
-		return mMessageConverter.convert(responseType, response);
+		return convert(responseType, response);
 	}
 
 	@Override
 	public <T> T executePost(String uri, InputStream messageBody, int messageBodyLength, String contentType, Map<String, String> headers,
 			Class<T> responseType) {
 		RestResponse response = mRestClient.executePost(uri, messageBody, messageBodyLength, contentType, headers);
-		return mMessageConverter.convert(responseType, response);
+		return convert(responseType, response);
 	}
 
 	@Override
@@ -140,6 +499,16 @@ public class CachingEnabledRestfulMappingClient implements RestfulMappingClient
 		return mRestClient.executePut(uri, httpEntity, headers);
 	}
 
+	@Override
+	public RestResponse executePut(String uri, Object messageBody) {
+		return mRestClient.executePut(uri, new ObjectEntity(messageBody, mMessageConverter));
+	}
+
+	@Override
+	public RestResponse executePut(String uri, Object messageBody, Map<String, String> headers) {
+		return mRestClient.executePut(uri, new ObjectEntity(messageBody, mMessageConverter), headers);
+	}
+
 	@Override
 	public RestResponse executePut(String uri, InputStream messageBody, int messageBodyLength, String contentType) {
 		return mRestClient.executePut(uri, messageBody, messageBodyLength, contentType);
@@ -159,7 +528,88 @@ public class CachingEnabledRestfulMappingClient implements RestfulMappingClient
 	@Override
 	public <T> T executeRequest(HttpUriRequest request, Class<T> responseType) {
 		RestResponse response = mRestClient.executeRequest(request);
-		return mMessageConverter.convert(responseType, response);
+		return convert(responseType, response);
+	}
+
+	@Override
+	public <T> T executeRequest(HttpUriRequest request, TypeToken<T> responseType) {
+		RestResponse response = mRestClient.executeRequest(request);
+		return convert(responseType, response);
+	}
+
+	@Override
+	public <T> Future<T> executeGetAsync(String uri, Class<T> responseType) {
+		return executeAsync(new HttpGet(uri), TypeToken.get(responseType), null);
+	}
+
+	@Override
+	public <T> Future<T> executeGetAsync(String uri, Map<String, String> headers, Class<T> responseType) {
+		HttpGet httpGet = new HttpGet(uri);
+		for (Entry<String, String> header : headers.entrySet()) {
+			httpGet.addHeader(header.getKey(), header.getValue());
+		}
+		return executeAsync(httpGet, TypeToken.get(responseType), null);
+	}
+
+	@Override
+	public <T> Future<T> executeGetAsync(String uri, Class<T> responseType, ResponseCallback<T> callback) {
+		return executeAsync(new HttpGet(uri), TypeToken.get(responseType), callback);
+	}
+
+	@Override
+	public <T> Future<T> executeRequestAsync(HttpUriRequest request, Class<T> responseType) {
+		return executeAsync(request, TypeToken.get(responseType), null);
+	}
+
+	@Override
+	public <T> Future<T> executeRequestAsync(HttpUriRequest request, Class<T> responseType, ResponseCallback<T> callback) {
+		return executeAsync(request, TypeToken.get(responseType), callback);
+	}
+
+	@Override
+	public <T> Future<T> executeRequestAsync(HttpUriRequest request, TypeToken<T> responseType) {
+		return executeAsync(request, responseType, null);
+	}
+
+	@Override
+	public <T> Future<T> executeRequestAsync(HttpUriRequest request, TypeToken<T> responseType,
+			ResponseCallback<T> callback) {
+		return executeAsync(request, responseType, callback);
+	}
+
+	@Override
+	public <T> ResponseIterator<T> executeGetStreaming(String uri, Class<T> elementType) {
+		return executeRequestStreaming(new HttpGet(uri), TypeToken.get(elementType));
+	}
+
+	@Override
+	public <T> ResponseIterator<T> executeGetStreaming(String uri, Map<String, String> headers, Class<T> elementType) {
+		HttpGet httpGet = new HttpGet(uri);
+		for (Entry<String, String> header : headers.entrySet()) {
+			httpGet.addHeader(header.getKey(), header.getValue());
+		}
+		return executeRequestStreaming(httpGet, TypeToken.get(elementType));
+	}
+
+	@Override
+	public <T> ResponseIterator<T> executeGetStreaming(String uri, TypeToken<T> elementType) {
+		return executeRequestStreaming(new HttpGet(uri), elementType);
+	}
+
+	@Override
+	public <T> ResponseIterator<T> executeRequestStreaming(HttpUriRequest request, Class<T> elementType) {
+		return executeRequestStreaming(request, TypeToken.get(elementType));
+	}
+
+	@Override
+	public <T> ResponseIterator<T> executeRequestStreaming(HttpUriRequest request, TypeToken<T> elementType) {
+		// Check the converter first so that a request is not wasted
+		MessageConverter converter = mMessageConverter;
+		if (!(converter instanceof StreamingMessageConverter))
+			throw new InfinitumRuntimeException("MessageConverter '" + converter.getClass().getName()
+					+ "' does not support streaming conversions");
+		RestResponse response = mRestClient.executeRequestStreaming(request);
+		return ((StreamingMessageConverter) converter).convertElements(elementType, response);
 	}
 
 	@Override
@@ -182,9 +632,96 @@ public class CachingEnabledRestfulMappingClient implements RestfulMappingClient
 		mRestClient.setAuthStrategy(authStrategy);
 	}
 
+	@Override
+	public void setMaxTotalConnections(int maxConnections) {
+		mRestClient.setMaxTotalConnections(maxConnections);
+	}
+
+	@Override
+	public void setMaxConnectionsPerRoute(int maxConnections) {
+		mRestClient.setMaxConnectionsPerRoute(maxConnections);
+	}
+
+	@Override
+	public void setIdleConnectionTimeout(long timeout) {
+		mRestClient.setIdleConnectionTimeout(timeout);
+	}
+
+	@Override
+	public void setAsyncPoolSize(int poolSize) {
+		mRestClient.setAsyncPoolSize(poolSize);
+	}
+
+	@Override
+	public void setMaxResponseSize(long maxSize) {
+		mRestClient.setMaxResponseSize(maxSize);
+	}
+
+	@Override
+	public void shutdown() {
+		mRestClient.shutdown();
+	}
+
 	@Override
 	public void setMessageConverter(MessageConverter messageConverter) {
 		mMessageConverter = messageConverter;
+		mRestClient.setAcceptHeader(getAcceptHeader(messageConverter));
+		// Objects converted by the previous converter may differ
+		ConvertedObjectCache objectCache = mObjectCache;
+		if (objectCache != null)
+			objectCache.clear();
+	}
+
+	/**
+	 * Returns the {@code Accept} header value listing the media types
+	 * supported by the given {@link MessageConverter} with descending quality
+	 * values, e.g. {@code application/x-jackson-smile, application/json;q=0.9},
+	 * or {@code null} if it does not list any.
+	 */
+	static String getAcceptHeader(MessageConverter messageConverter) {
+		List<String> mediaTypes = messageConverter.getSupportedMediaTypes();
+		if (mediaTypes == null || mediaTypes.isEmpty())
+			return null;
+		StringBuilder accept = new StringBuilder(mediaTypes.get(0));
+		for (int i = 1; i < mediaTypes.size(); i++) {
+			// Quality values descend in steps of 0.1, and media types beyond
+			// the tenth share the lowest non-zero quality
+			accept.append(", ").append(mediaTypes.get(i)).append(";q=0.").append(Math.max(1, 10 - i));
+		}
+		return accept.toString();
+	}
+
+	private <T> T convert(Class<T> responseType, RestResponse response) {
+		return convert(TypeToken.get(responseType), response);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T convert(TypeToken<T> responseType, RestResponse response) {
+		ConvertedObjectCache objectCache = mObjectCache;
+		String cacheKey = response.getCacheKey();
+		if (objectCache == null || cacheKey == null)
+			return mMessageConverter.convert(responseType, response);
+		long version = response.getCacheVersion();
+		T object = (T) objectCache.get(cacheKey, responseType.getType(), version);
+		if (object == null) {
+			object = mMessageConverter.convert(responseType, response);
+			if (object == null)
+				return null;
+			objectCache.put(cacheKey, responseType.getType(), version, object);
+		}
+		ObjectCopier objectCopier = mObjectCopier;
+		return objectCopier == null ? object : objectCopier.copy(object, responseType);
+	}
+
+	private <T> Future<T> executeAsync(HttpUriRequest request, final TypeToken<T> responseType, ResponseCallback<T> callback) {
+		final HashableHttpRequest hashableRequest = mRestClient.createRequest(request);
+		return mRestClient.submit(hashableRequest, new Callable<T>() {
+			@Override
+			public T call() {
+				RestResponse response = mRestClient.executeRequest(hashableRequest);
+				return convert(responseType, response);
+			}
+		}, callback);
 	}
 
 }
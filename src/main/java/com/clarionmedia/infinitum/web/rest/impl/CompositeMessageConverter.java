@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
+import com.clarionmedia.infinitum.web.rest.MessageConverter;
+import com.clarionmedia.infinitum.web.rest.ResponseIterator;
+import com.clarionmedia.infinitum.web.rest.StreamingMessageConverter;
+import com.clarionmedia.infinitum.web.rest.TypeToken;
+
+/**
+ * <p>
+ * Implementation of {@link MessageConverter} which delegates each conversion
+ * to the {@code MessageConverter} registered for the media type in the
+ * response's {@code Content-Type} header. This allows a single client, and
+ * its response cache, to serve endpoints returning different formats, e.g.
+ * JSON and XML.
+ * </p>
+ * <p>
+ * Converters are registered for a full media type, e.g.
+ * {@code application/json}, for a structured syntax suffix, e.g.
+ * {@code +json}, which matches types such as
+ * {@code application/vnd.example+json}, or for a type wildcard, e.g.
+ * {@code text/*}. The registrations are kept in a lookup table keyed by the
+ * normalized media type, so resolving a converter only requires stripping
+ * the parameters from the {@code Content-Type} and at most three table
+ * lookups. A full media type takes precedence over a suffix, which takes
+ * precedence over a wildcard. Responses without a matching
+ * {@code Content-Type}, and message data converted without a response, are
+ * converted using the default converter. Objects are also written using the
+ * default converter.
+ * </p>
+ * <p>
+ * The media types of the registered converters are advertised in the
+ * {@code Accept} header of requests in the order they were registered, so
+ * that a server supporting several formats can respond with the preferred
+ * one, e.g. Smile rather than JSON.
+ * </p>
+ * <p>
+ * Elements are converted by
+ * {@link #convertElements(TypeToken, RestResponse)} only if the converter for
+ * the response is a {@link StreamingMessageConverter}.
+ * </p>
+ * <p>
+ * Converters should be registered before the
+ * {@code CompositeMessageConverter} is used, as registration is not
+ * synchronized with conversions.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 05/11/13
+ * @since 1.1
+ */
+public class CompositeMessageConverter implements StreamingMessageConverter {
+
+	private MessageConverter mDefaultConverter;
+	private Map<String, MessageConverter> mConverters;
+
+	/**
+	 * Creates a new {@code CompositeMessageConverter} instance which uses a
+	 * {@link GsonMessageConverter} for responses without a registered media
+	 * type.
+	 */
+	public CompositeMessageConverter() {
+		this(new GsonMessageConverter());
+	}
+
+	/**
+	 * Creates a new {@code CompositeMessageConverter} instance which uses the
+	 * given {@link MessageConverter} for responses without a registered media
+	 * type.
+	 * 
+	 * @param defaultConverter
+	 *            the default {@code MessageConverter}
+	 */
+	public CompositeMessageConverter(MessageConverter defaultConverter) {
+		mDefaultConverter = defaultConverter;
+		mConverters = new LinkedHashMap<String, MessageConverter>();
+	}
+
+	/**
+	 * Registers the given {@link MessageConverter} for the media types it
+	 * supports, as returned by {@link MessageConverter#getSupportedMediaTypes()}.
+	 * 
+	 * @param converter
+	 *            the {@code MessageConverter} to register
+	 * @return this {@code CompositeMessageConverter} to allow chaining
+	 */
+	public CompositeMessageConverter addConverter(MessageConverter converter) {
+		for (String mediaType : converter.getSupportedMediaTypes())
+			mConverters.put(normalize(mediaType), converter);
+		return this;
+	}
+
+	/**
+	 * Registers the given {@link MessageConverter} for the given media types.
+	 * A media type may be a full type, e.g. {@code application/json}, a
+	 * structured syntax suffix, e.g. {@code +json}, or a type wildcard, e.g.
+	 * {@code text/*}. A converter already registered for one of the media
+	 * types is replaced.
+	 * 
+	 * @param converter
+	 *            the {@code MessageConverter} to register
+	 * @param mediaTypes
+	 *            the media types to convert with {@code converter}
+	 * @return this {@code CompositeMessageConverter} to allow chaining
+	 */
+	public CompositeMessageConverter addConverter(MessageConverter converter, String... mediaTypes) {
+		for (String mediaType : mediaTypes)
+			mConverters.put(normalize(mediaType), converter);
+		return this;
+	}
+
+	/**
+	 * Registers {@link GsonMessageConverter} for JSON media types and
+	 * {@link SimpleXmlMessageConverter} for XML media types, using
+	 * {@code application/json}, {@code text/json} and {@code +json} for the
+	 * former and {@code application/xml}, {@code text/xml} and {@code +xml}
+	 * for the latter.
+	 * 
+	 * @return this {@code CompositeMessageConverter} to allow chaining
+	 */
+	public CompositeMessageConverter addDefaultConverters() {
+		addConverter(new GsonMessageConverter(), "application/json", "text/json", "+json");
+		addConverter(new SimpleXmlMessageConverter(), "application/xml", "text/xml", "+xml");
+		return this;
+	}
+
+	/**
+	 * Sets the {@link MessageConverter} to use for responses without a
+	 * registered media type.
+	 * 
+	 * @param defaultConverter
+	 *            the default {@code MessageConverter}
+	 */
+	public void setDefaultConverter(MessageConverter defaultConverter) {
+		mDefaultConverter = defaultConverter;
+	}
+
+	/**
+	 * Returns the {@link MessageConverter} which converts responses with the
+	 * given {@code Content-Type}.
+	 * 
+	 * @param contentType
+	 *            the {@code Content-Type} header value, which may include
+	 *            parameters, or {@code null}
+	 * @return {@code MessageConverter} for {@code contentType}, or the default
+	 *         converter if none is registered
+	 */
+	public MessageConverter getConverter(String contentType) {
+		if (contentType == null || mConverters.isEmpty())
+			return mDefaultConverter;
+		int params = contentType.indexOf(';');
+		String mediaType = normalize(params == -1 ? contentType : contentType.substring(0, params));
+		MessageConverter converter = mConverters.get(mediaType);
+		if (converter != null)
+			return converter;
+		int slash = mediaType.indexOf('/');
+		if (slash == -1)
+			return mDefaultConverter;
+		int suffix = mediaType.lastIndexOf('+');
+		if (suffix > slash) {
+			converter = mConverters.get(mediaType.substring(suffix));
+			if (converter != null)
+				return converter;
+		}
+		converter = mConverters.get(mediaType.substring(0, slash + 1) + '*');
+		return converter == null ? mDefaultConverter : converter;
+	}
+
+	@Override
+	public <T> T convert(Class<T> clazz, RestResponse response) {
+		return getConverter(response.getHeader("Content-Type")).convert(clazz, response);
+	}
+
+	@Override
+	public <T> T convert(Class<T> clazz, InputStream messageData) {
+		return mDefaultConverter.convert(clazz, messageData);
+	}
+
+	@Override
+	public <T> T convert(TypeToken<T> type, RestResponse response) {
+		return getConverter(response.getHeader("Content-Type")).convert(type, response);
+	}
+
+	@Override
+	public <T> T convert(TypeToken<T> type, InputStream messageData) {
+		return mDefaultConverter.convert(type, messageData);
+	}
+
+	@Override
+	public void write(Object object, OutputStream messageData) throws IOException {
+		mDefaultConverter.write(object, messageData);
+	}
+
+	@Override
+	public String getContentType() {
+		return mDefaultConverter.getContentType();
+	}
+
+	/**
+	 * Returns the media types converters are registered for, excluding
+	 * structured syntax suffixes, in the order they were registered, followed
+	 * by those of the default converter.
+	 */
+	@Override
+	public List<String> getSupportedMediaTypes() {
+		Set<String> mediaTypes = new LinkedHashSet<String>();
+		for (String mediaType : mConverters.keySet()) {
+			if (mediaType.indexOf('/') != -1)
+				mediaTypes.add(mediaType);
+		}
+		for (String mediaType : mDefaultConverter.getSupportedMediaTypes())
+			mediaTypes.add(normalize(mediaType));
+		return new ArrayList<String>(mediaTypes);
+	}
+
+	@Override
+	public <T> ResponseIterator<T> convertElements(TypeToken<T> elementType, RestResponse response) {
+		MessageConverter converter = getConverter(response.getHeader("Content-Type"));
+		if (!(converter instanceof StreamingMessageConverter)) {
+			response.close();
+			throw new InfinitumRuntimeException("MessageConverter '" + converter.getClass().getName()
+					+ "' does not support streaming conversions");
+		}
+		return ((StreamingMessageConverter) converter).convertElements(elementType, response);
+	}
+
+	private static String normalize(String mediaType) {
+		return mediaType.trim().toLowerCase(Locale.US);
+	}
+
+}
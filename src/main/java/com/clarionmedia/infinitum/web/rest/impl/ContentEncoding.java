@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <p>
+ * The content codings which {@link CachingEnabledRestfulClient} accepts and
+ * decodes, {@code gzip} and {@code deflate}.
+ * </p>
+ * <p>
+ * Decoding is performed as the message data is read. {@code deflate} data is
+ * accepted both with and without the zlib wrapper, since servers commonly
+ * send raw deflate data. Once the decoded data has been read to its end, the
+ * remainder of the encoded stream is consumed so that streams layered
+ * beneath the decoder observe its end.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 04/13/13
+ * @since 1.1
+ */
+public final class ContentEncoding {
+
+	/**
+	 * The {@code gzip} content coding.
+	 */
+	public static final String GZIP = "gzip";
+
+	/**
+	 * The {@code deflate} content coding.
+	 */
+	public static final String DEFLATE = "deflate";
+
+	/**
+	 * The {@code Accept-Encoding} header value listing the supported codings.
+	 */
+	public static final String ACCEPT_ENCODING = GZIP + ", " + DEFLATE;
+
+	private ContentEncoding() {
+	}
+
+	/**
+	 * Returns the supported content coding named by the given
+	 * {@code Content-Encoding} header value.
+	 * 
+	 * @param contentEncoding
+	 *            the {@code Content-Encoding} header value or {@code null}
+	 * @return {@link #GZIP}, {@link #DEFLATE} or {@code null} if the data is
+	 *         not encoded or its coding is not supported
+	 */
+	public static String getSupportedEncoding(String contentEncoding) {
+		if (contentEncoding == null)
+			return null;
+		String encoding = contentEncoding.trim().toLowerCase(Locale.US);
+		if (encoding.equals(GZIP) || encoding.equals("x-gzip"))
+			return GZIP;
+		if (encoding.equals(DEFLATE))
+			return DEFLATE;
+		return null;
+	}
+
+	/**
+	 * Returns an {@link InputStream} which decodes the given stream. Closing
+	 * the returned stream closes the given stream.
+	 * 
+	 * @param in
+	 *            the encoded {@code InputStream}
+	 * @param encoding
+	 *            the content coding of the stream, as returned by
+	 *            {@link #getSupportedEncoding(String)}
+	 * @return decoded {@code InputStream} or {@code in} if {@code encoding}
+	 *         is {@code null}
+	 * @throws IOException
+	 *             if the stream's header could not be read or is malformed
+	 */
+	public static InputStream decode(InputStream in, String encoding) throws IOException {
+		if (encoding == null)
+			return in;
+		PushbackInputStream input = new PushbackInputStream(in, 2);
+		byte[] header = new byte[2];
+		int length = 0;
+		while (length < header.length) {
+			int read = input.read(header, length, header.length - length);
+			if (read < 0)
+				break;
+			length += read;
+		}
+		// An empty message, such as the response to a HEAD request, is not
+		// decoded
+		if (length == 0)
+			return input;
+		input.unread(header, 0, length);
+		InputStream decoded;
+		if (GZIP.equals(encoding)) {
+			decoded = new GZIPInputStream(input);
+		} else {
+			// A zlib header specifies the deflate method and is a multiple of 31
+			boolean isWrapped = length == 2 && (header[0] & 0x0F) == 8
+					&& (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+			decoded = new DeflateInputStream(input, new Inflater(!isWrapped));
+		}
+		return new DrainingInputStream(decoded, in);
+	}
+
+	/**
+	 * {@link InflaterInputStream} which releases its {@link Inflater} when it
+	 * is closed.
+	 */
+	private static class DeflateInputStream extends InflaterInputStream {
+
+		public DeflateInputStream(InputStream in, Inflater inflater) {
+			super(in, inflater);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				inf.end();
+			}
+		}
+
+	}
+
+	/**
+	 * {@link FilterInputStream} which consumes the rest of an encoded stream
+	 * once the decoded stream reaches its end.
+	 */
+	private static class DrainingInputStream extends FilterInputStream {
+
+		private InputStream mEncoded;
+
+		public DrainingInputStream(InputStream decoded, InputStream encoded) {
+			super(decoded);
+			mEncoded = encoded;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b < 0)
+				drain();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read < 0)
+				drain();
+			return read;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		private void drain() throws IOException {
+			byte[] buffer = new byte[256];
+			int read = 0;
+			while (read >= 0)
+				read = mEncoded.read(buffer);
+		}
+
+	}
+
+}
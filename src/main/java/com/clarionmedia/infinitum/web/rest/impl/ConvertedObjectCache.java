@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Caches objects converted from the message data of cached REST responses,
+ * so that a response served from the {@link RestResponseCache} does not have
+ * to be converted again. Objects are keyed by the cache key of the response
+ * and the type they were converted to, and are only returned for the cache
+ * entry version they were converted from. When the response is replaced in
+ * the {@code RestResponseCache}, the new version misses and replaces the
+ * cached object.
+ * </p>
+ * <p>
+ * The cache is bounded by its number of entries, since the size of a
+ * converted object is not known, and evicts the least recently used entry
+ * when it is full.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 05/25/13
+ * @since 1.1
+ */
+public class ConvertedObjectCache {
+
+	private LinkedHashMap<Key, Entry> mEntries;
+	private int mMaxEntries;
+	private long mHitCount;
+	private long mMissCount;
+
+	/**
+	 * Creates a new {@code ConvertedObjectCache} with the given maximum number
+	 * of entries.
+	 * 
+	 * @param maxEntries
+	 *            the maximum number of converted objects to cache
+	 */
+	public ConvertedObjectCache(int maxEntries) {
+		mEntries = new LinkedHashMap<Key, Entry>(0, 0.75f, true);
+		mMaxEntries = maxEntries;
+	}
+
+	/**
+	 * Returns the object converted to the given type from the given version
+	 * of the cache entry with the given key.
+	 * 
+	 * @param cacheKey
+	 *            the cache key of the response
+	 * @param type
+	 *            the {@link Type} the response was converted to
+	 * @param version
+	 *            the cache entry version of the response
+	 * @return converted object or {@code null} if there is none for
+	 *         {@code version}
+	 */
+	public synchronized Object get(String cacheKey, Type type, long version) {
+		Key key = new Key(cacheKey, type);
+		Entry entry = mEntries.get(key);
+		if (entry == null) {
+			mMissCount++;
+			return null;
+		}
+		if (entry.mVersion != version) {
+			// The response has been replaced since the object was converted
+			if (entry.mVersion < version)
+				mEntries.remove(key);
+			mMissCount++;
+			return null;
+		}
+		mHitCount++;
+		return entry.mObject;
+	}
+
+	/**
+	 * Caches the object converted to the given type from the given version of
+	 * the cache entry with the given key. An object converted from an older
+	 * version is replaced.
+	 * 
+	 * @param cacheKey
+	 *            the cache key of the response
+	 * @param type
+	 *            the {@link Type} the response was converted to
+	 * @param version
+	 *            the cache entry version of the response
+	 * @param object
+	 *            the converted object
+	 */
+	public synchronized void put(String cacheKey, Type type, long version, Object object) {
+		Key key = new Key(cacheKey, type);
+		Entry entry = mEntries.get(key);
+		// Don't let a slow conversion of an older version replace a newer one
+		if (entry != null && entry.mVersion > version)
+			return;
+		mEntries.put(key, new Entry(version, object));
+		trimToSize();
+	}
+
+	/**
+	 * Removes all cached objects.
+	 */
+	public synchronized void clear() {
+		mEntries.clear();
+	}
+
+	/**
+	 * Sets the maximum number of converted objects to cache, evicting objects
+	 * if necessary.
+	 * 
+	 * @param maxEntries
+	 *            the maximum number of converted objects
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		mMaxEntries = maxEntries;
+		trimToSize();
+	}
+
+	/**
+	 * Returns the number of cached objects.
+	 * 
+	 * @return number of cached objects
+	 */
+	public synchronized int size() {
+		return mEntries.size();
+	}
+
+	/**
+	 * Returns the number of lookups which returned a cached object.
+	 * 
+	 * @return number of hits
+	 */
+	public synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * Returns the number of lookups which did not return a cached object.
+	 * 
+	 * @return number of misses
+	 */
+	public synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * Returns the ratio of lookups which returned a cached object.
+	 * 
+	 * @return hit ratio between 0 and 1
+	 */
+	public synchronized double getHitRatio() {
+		long requests = mHitCount + mMissCount;
+		return requests == 0 ? 0 : (double) mHitCount / requests;
+	}
+
+	private void trimToSize() {
+		Iterator<Map.Entry<Key, Entry>> iterator = mEntries.entrySet().iterator();
+		while (mEntries.size() > mMaxEntries && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Cache key and type an object was converted for.
+	 */
+	private static class Key {
+
+		final String mCacheKey;
+		final Type mType;
+
+		Key(String cacheKey, Type type) {
+			mCacheKey = cacheKey;
+			mType = type;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * mCacheKey.hashCode() + mType.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return mCacheKey.equals(other.mCacheKey) && mType.equals(other.mType);
+		}
+
+	}
+
+	/**
+	 * Converted object and the cache entry version it was converted from.
+	 */
+	private static class Entry {
+
+		final long mVersion;
+		final Object mObject;
+
+		Entry(long version, Object object) {
+			mVersion = version;
+			mObject = object;
+		}
+
+	}
+
+}
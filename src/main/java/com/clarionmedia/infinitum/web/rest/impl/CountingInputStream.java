@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>
+ * A {@link FilterInputStream} which counts the bytes read through it, for
+ * example to determine how many bytes of a response were received over the
+ * network or where a block begins within a file.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 04/13/13
+ * @since 1.1
+ */
+public class CountingInputStream extends FilterInputStream {
+
+	private long mCount;
+
+	/**
+	 * Creates a new {@code CountingInputStream}.
+	 * 
+	 * @param in
+	 *            the {@link InputStream} to count the bytes of
+	 */
+	public CountingInputStream(InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0)
+			mCount++;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		if (read > 0)
+			mCount += read;
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		mCount += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Returns the number of bytes read or skipped so far.
+	 * 
+	 * @return number of bytes
+	 */
+	public long getCount() {
+		return mCount;
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import com.clarionmedia.infinitum.web.HttpClientRequest;
+import com.clarionmedia.infinitum.web.rest.CacheKeyPolicy;
+
+/**
+ * <p>
+ * Default implementation of {@link CacheKeyPolicy}. The cache key consists of
+ * the request method, the normalized request URI, and the values of the
+ * request headers named in the cached response's {@code Vary} header. Other
+ * request headers are ignored unless they are explicitly added to the
+ * policy's allow-list using {@link #addKeyHeader(String)}.
+ * </p>
+ * <p>
+ * The {@code Accept} header is part of the cache key whenever the request
+ * sets it, since it selects the representation returned, e.g. JSON or Smile,
+ * and servers negotiating on it frequently omit it from the {@code Vary}
+ * header. Requests without an {@code Accept} header are keyed as before.
+ * </p>
+ * <p>
+ * URIs are normalized by lower-casing the scheme and host, removing the
+ * default port and fragment, and using {@code /} for an empty path.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 03/02/13
+ * @since 1.1
+ */
+public class DefaultCacheKeyPolicy implements CacheKeyPolicy {
+
+	private static final String ACCEPT = "accept";
+
+	private Set<String> mKeyHeaders;
+
+	/**
+	 * Creates a new {@code DefaultCacheKeyPolicy}.
+	 */
+	public DefaultCacheKeyPolicy() {
+		mKeyHeaders = new CopyOnWriteArraySet<String>();
+	}
+
+	@Override
+	public String getCacheKey(HttpClientRequest request, Collection<String> varyHeaders) {
+		StringBuilder key = new StringBuilder();
+		key.append(request.getHttpMethod().toUpperCase(Locale.US)).append(' ');
+		key.append(normalizeUri(request.getRequestUri()));
+		Set<String> headers = new TreeSet<String>(mKeyHeaders);
+		String accept = request.getHeader(ACCEPT);
+		if (accept != null && accept.length() > 0)
+			headers.add(ACCEPT);
+		for (String header : varyHeaders)
+			headers.add(header.trim().toLowerCase(Locale.US));
+		for (String header : headers) {
+			String value = request.getHeader(header);
+			key.append('\n').append(header).append(':').append(value == null ? "" : value.trim());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Adds the given request header to the allow-list of headers which are
+	 * always part of the cache key, regardless of whether the response varies
+	 * on it. This is useful for headers which select a different
+	 * representation, such as an API version, when the server does not send a
+	 * {@code Vary} header.
+	 * 
+	 * @param header
+	 *            the name of the header to include in the cache key
+	 */
+	public void addKeyHeader(String header) {
+		mKeyHeaders.add(header.trim().toLowerCase(Locale.US));
+	}
+
+	/**
+	 * Normalizes the given URI so that equivalent URIs produce the same cache
+	 * key.
+	 * 
+	 * @param uri
+	 *            the URI to normalize
+	 * @return normalized URI
+	 */
+	protected String normalizeUri(String uri) {
+		URI parsed;
+		try {
+			parsed = URI.create(uri);
+		} catch (IllegalArgumentException e) {
+			return uri;
+		}
+		if (parsed.isOpaque() || parsed.getRawAuthority() == null)
+			return uri;
+		StringBuilder normalized = new StringBuilder();
+		String scheme = parsed.getScheme() == null ? "" : parsed.getScheme().toLowerCase(Locale.US);
+		normalized.append(scheme).append("://");
+		if (parsed.getRawUserInfo() != null)
+			normalized.append(parsed.getRawUserInfo()).append('@');
+		String host = parsed.getHost() == null ? parsed.getRawAuthority() : parsed.getHost();
+		normalized.append(host.toLowerCase(Locale.US));
+		int port = parsed.getPort();
+		if (port != -1 && !(port == 80 && scheme.equals("http")) && !(port == 443 && scheme.equals("https")))
+			normalized.append(':').append(port);
+		String path = parsed.getRawPath();
+		normalized.append(path == null || path.length() == 0 ? "/" : path);
+		if (parsed.getRawQuery() != null)
+			normalized.append('?').append(parsed.getRawQuery());
+		return normalized.toString();
+	}
+
+}
@@ -16,28 +16,76 @@
 
 package com.clarionmedia.infinitum.web.rest.impl;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
 import com.clarionmedia.infinitum.web.rest.MessageConverter;
+import com.clarionmedia.infinitum.web.rest.ObjectCopier;
+import com.clarionmedia.infinitum.web.rest.ResponseIterator;
+import com.clarionmedia.infinitum.web.rest.StreamingMessageConverter;
+import com.clarionmedia.infinitum.web.rest.TypeToken;
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
 
 /**
  * <p>
  * Implementation of {@link MessageConverter} which relies on Gson to perform
- * object conversions.
+ * object conversions. Message data is parsed as UTF-8 using a
+ * {@link JsonReader} over the response stream, and objects are written as
+ * UTF-8 directly to the request stream.
+ * </p>
+ * <p>
+ * The {@link TypeAdapter} obtained from {@code Gson} for each type is cached,
+ * so repeated conversions to the same type read with it directly rather than
+ * resolving the type again.
+ * </p>
+ * <p>
+ * The elements of an array message can be converted one at a time as they
+ * are read using {@link #convertElements(TypeToken, RestResponse)}.
+ * </p>
+ * <p>
+ * Objects are written according to their runtime class, as
+ * {@link Gson#toJson(Object)} does. The elements of a collection or map are
+ * therefore written according to their own runtime classes, and a
+ * {@code TypeAdapter} registered for a parameterized type such as
+ * {@code List<Item>} is not used. To serialize with such an adapter, send an
+ * object whose class declares the parameterized type as a field.
+ * </p>
+ * <p>
+ * As an {@link ObjectCopier}, converted objects are copied through a
+ * {@code JsonElement} tree using their cached {@code TypeAdapter}, which
+ * avoids writing and parsing JSON text.
  * </p>
  * 
  * @author Tyler Treat
  * @version 1.0 12/23/12
  * @since 1.0
  */
-public class GsonMessageConverter implements MessageConverter {
+public class GsonMessageConverter extends AbstractMessageConverter implements StreamingMessageConverter,
+		ObjectCopier {
 
 	private Gson mGson;
+	private ConcurrentMap<Type, TypeAdapter<?>> mAdapters;
 
 	/**
 	 * Creates a new {@code GsonMessageConverter} instance.
 	 */
 	public GsonMessageConverter() {
-		mGson = new Gson();
+		this(new Gson());
 	}
 
 	/**
@@ -49,11 +97,126 @@ public class GsonMessageConverter implements MessageConverter {
 	 */
 	public GsonMessageConverter(Gson gson) {
 		mGson = gson;
+		mAdapters = new ConcurrentHashMap<Type, TypeAdapter<?>>();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T convert(TypeToken<T> type, InputStream messageData) {
+		TypeAdapter<T> adapter = (TypeAdapter<T>) getAdapter(type.getType());
+		try {
+			JsonReader reader = createReader(messageData);
+			return reader == null ? null : adapter.read(reader);
+		} catch (IOException e) {
+			throw new InfinitumRuntimeException("Unable to convert REST response", e);
+		} catch (IllegalStateException e) {
+			throw new InfinitumRuntimeException("Unable to convert REST response", e);
+		} catch (JsonParseException e) {
+			throw new InfinitumRuntimeException("Unable to convert REST response", e);
+		}
 	}
 
 	@Override
-	public <T> T convert(Class<T> clazz, RestResponse response) {
-		return mGson.fromJson(response.getResponseDataAsString(), clazz);
+	public void write(Object object, OutputStream messageData) throws IOException {
+		Writer writer = new OutputStreamWriter(messageData, "UTF-8");
+		try {
+			mGson.toJson(object, writer);
+		} catch (JsonIOException e) {
+			// Gson wraps the errors of the underlying stream
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw e;
+		}
+		writer.flush();
+	}
+
+	@Override
+	public String getContentType() {
+		return "application/json";
+	}
+
+	@Override
+	public List<String> getSupportedMediaTypes() {
+		return Collections.singletonList("application/json");
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> ResponseIterator<T> convertElements(TypeToken<T> elementType, RestResponse response) {
+		final TypeAdapter<T> adapter = (TypeAdapter<T>) getAdapter(elementType.getType());
+		InputStream messageData = response.getResponseStream();
+		boolean isIterating = false;
+		try {
+			// An empty message has no elements
+			final JsonReader reader = createReader(messageData);
+			if (reader != null)
+				reader.beginArray();
+			ResponseIterator<T> elements = new AbstractResponseIterator<T>(messageData) {
+				@Override
+				protected boolean hasNextElement() throws IOException {
+					if (reader == null)
+						return false;
+					if (reader.hasNext())
+						return true;
+					reader.endArray();
+					return false;
+				}
+
+				@Override
+				protected T readElement() throws IOException {
+					return adapter.read(reader);
+				}
+			};
+			isIterating = true;
+			return elements;
+		} catch (IOException e) {
+			throw new InfinitumRuntimeException("Unable to convert REST response", e);
+		} catch (IllegalStateException e) {
+			throw new InfinitumRuntimeException("Unable to convert REST response", e);
+		} finally {
+			if (!isIterating) {
+				try {
+					messageData.close();
+				} catch (IOException e) {
+					// Ignore, the conversion has already failed
+				}
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T copy(T object, TypeToken<T> type) {
+		if (object == null)
+			return null;
+		TypeAdapter<T> adapter = (TypeAdapter<T>) getAdapter(type.getType());
+		return adapter.fromJsonTree(adapter.toJsonTree(object));
+	}
+
+	/**
+	 * Returns a {@link JsonReader} over the given message data which reads
+	 * leniently, as {@code Gson} does, or {@code null} if the message is empty.
+	 */
+	private JsonReader createReader(InputStream messageData) throws IOException {
+		JsonReader reader = new JsonReader(new InputStreamReader(messageData, "UTF-8"));
+		reader.setLenient(true);
+		try {
+			reader.peek();
+		} catch (EOFException e) {
+			return null;
+		}
+		return reader;
+	}
+
+	private TypeAdapter<?> getAdapter(Type type) {
+		TypeAdapter<?> adapter = mAdapters.get(type);
+		if (adapter == null) {
+			adapter = mGson.getAdapter(com.google.gson.reflect.TypeToken.get(type));
+			TypeAdapter<?> existing = mAdapters.putIfAbsent(type, adapter);
+			if (existing != null)
+				adapter = existing;
+		}
+		return adapter;
 	}
 
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * <p>
+ * {@link HttpEntityWrapper} which compresses the wrapped entity with gzip as
+ * it is written, without buffering it, and sets the
+ * {@code Content-Encoding} of the request accordingly. Since the compressed
+ * length is not known in advance, the entity is sent chunked.
+ * </p>
+ * <p>
+ * {@link CachingEnabledRestfulClient} wraps request entities in a
+ * {@code GzipCompressingEntity} when request compression is enabled. An
+ * individual request can be compressed regardless of the client's setting
+ * by passing its entity wrapped in a {@code GzipCompressingEntity}.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 04/20/13
+ * @since 1.1
+ */
+public class GzipCompressingEntity extends HttpEntityWrapper {
+
+	private static final int BUFFER_SIZE = 4096;
+
+	/**
+	 * Creates a new {@code GzipCompressingEntity} for the given
+	 * {@link HttpEntity}.
+	 * 
+	 * @param entity
+	 *            the {@code HttpEntity} to compress
+	 */
+	public GzipCompressingEntity(HttpEntity entity) {
+		super(entity);
+	}
+
+	@Override
+	public Header getContentEncoding() {
+		return new BasicHeader("Content-Encoding", ContentEncoding.GZIP);
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public boolean isChunked() {
+		return true;
+	}
+
+	/**
+	 * The compressed content is only available through
+	 * {@link #writeTo(OutputStream)}.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		throw new UnsupportedOperationException("Compressed content is only available through writeTo");
+	}
+
+	@Override
+	public void writeTo(OutputStream outStream) throws IOException {
+		CompressingOutputStream gzip = new CompressingOutputStream(outStream);
+		try {
+			wrappedEntity.writeTo(gzip);
+			gzip.finish();
+		} finally {
+			gzip.release();
+		}
+	}
+
+	/**
+	 * {@link GZIPOutputStream} which can release its deflater without closing
+	 * the underlying stream, which belongs to the connection.
+	 */
+	private static class CompressingOutputStream extends GZIPOutputStream {
+
+		public CompressingOutputStream(OutputStream out) throws IOException {
+			super(out, BUFFER_SIZE);
+		}
+
+		public void release() {
+			def.end();
+		}
+
+	}
+
+}
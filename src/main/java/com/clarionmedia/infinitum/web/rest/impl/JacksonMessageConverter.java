@@ -17,32 +17,82 @@
 package com.clarionmedia.infinitum.web.rest.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
 import com.clarionmedia.infinitum.web.rest.MessageConverter;
+import com.clarionmedia.infinitum.web.rest.ObjectCopier;
+import com.clarionmedia.infinitum.web.rest.ResponseIterator;
+import com.clarionmedia.infinitum.web.rest.StreamingMessageConverter;
+import com.clarionmedia.infinitum.web.rest.TypeToken;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 /**
  * <p>
  * Implementation of {@link MessageConverter} which relies on Jackson to perform
- * object conversions.
+ * object conversions. Message data is parsed directly from the response
+ * stream, allowing Jackson to detect its encoding, and objects are written
+ * by a {@link JsonGenerator} directly to the request stream.
+ * </p>
+ * <p>
+ * The {@link ObjectReader} constructed for each type is cached, so repeated
+ * conversions to the same type skip resolving its {@link JavaType}.
+ * {@code ObjectReader} instances are immutable and may be shared between
+ * threads, but this means the {@code ObjectMapper} should be fully configured
+ * before it is given to the converter.
+ * </p>
+ * <p>
+ * The elements of an array message can be converted one at a time as they
+ * are read using {@link #convertElements(TypeToken, RestResponse)}, which
+ * binds each element using a {@link MappingIterator}. A root-level sequence
+ * of values which is not enclosed in an array is read the same way.
+ * </p>
+ * <p>
+ * As an {@link ObjectCopier}, converted objects are copied by serializing
+ * them to a {@link JsonNode} tree and binding the tree with the cached
+ * {@code ObjectReader}, which avoids writing and parsing the message data.
+ * </p>
+ * <p>
+ * Any data format supported by Jackson can be converted by giving the
+ * converter an {@code ObjectMapper} created with the format's
+ * {@code JsonFactory}, along with the format's media type, e.g.
+ * {@code application/cbor}. Binary formats which avoid repeating field names
+ * reduce the size of messages and the time spent parsing them without
+ * changes to the model classes. See {@link SmileMessageConverter}.
  * </p>
  * 
  * @author Tyler Treat
  * @version 1.0 01/01/13
  * @since 1.0
  */
-public class JacksonMessageConverter implements MessageConverter {
+public class JacksonMessageConverter extends AbstractMessageConverter implements StreamingMessageConverter,
+		ObjectCopier {
+
+	private static final String JSON_CONTENT_TYPE = "application/json";
 
 	private ObjectMapper mMapper;
+	private String mContentType;
+	private ConcurrentMap<Type, ObjectReader> mReaders;
 
 	/**
 	 * Creates a new {@code JacksonMessageConverter} instance.
 	 */
 	public JacksonMessageConverter() {
-		mMapper = new ObjectMapper();
+		this(new ObjectMapper());
 	}
 
 	/**
@@ -53,13 +103,31 @@ public class JacksonMessageConverter implements MessageConverter {
 	 *            the {@code Gson} instance to use for conversion
 	 */
 	public JacksonMessageConverter(ObjectMapper mapper) {
+		this(mapper, JSON_CONTENT_TYPE);
+	}
+
+	/**
+	 * Creates a new {@code JacksonMessageConverter} instance with the given
+	 * {@code ObjectMapper} which converts message data of the given media
+	 * type. The {@code ObjectMapper} must be created with the
+	 * {@code JsonFactory} for that media type.
+	 * 
+	 * @param mapper
+	 *            the {@code ObjectMapper} to use for conversion
+	 * @param contentType
+	 *            the media type of the message data read and written by
+	 *            {@code mapper}
+	 */
+	public JacksonMessageConverter(ObjectMapper mapper, String contentType) {
 		mMapper = mapper;
+		mContentType = contentType;
+		mReaders = new ConcurrentHashMap<Type, ObjectReader>();
 	}
 
 	@Override
-	public <T> T convert(Class<T> clazz, RestResponse response) {
+	public <T> T convert(TypeToken<T> type, InputStream messageData) {
 		try {
-			return mMapper.readValue(response.getResponseDataAsString(), clazz);
+			return getReader(type.getType()).<T> readValue(messageData);
 		} catch (JsonParseException e) {
 			throw new InfinitumRuntimeException("Unable to convert REST response", e);
 		} catch (JsonMappingException e) {
@@ -69,4 +137,83 @@ public class JacksonMessageConverter implements MessageConverter {
 		}
 	}
 
+	@Override
+	public void write(Object object, OutputStream messageData) throws IOException {
+		JsonGenerator generator = mMapper.getFactory().createGenerator(messageData, JsonEncoding.UTF8);
+		// The stream belongs to the connection
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		try {
+			mMapper.writeValue(generator, object);
+		} finally {
+			generator.close();
+		}
+	}
+
+	@Override
+	public String getContentType() {
+		return mContentType;
+	}
+
+	@Override
+	public List<String> getSupportedMediaTypes() {
+		return Collections.singletonList(mContentType);
+	}
+
+	@Override
+	public <T> ResponseIterator<T> convertElements(TypeToken<T> elementType, RestResponse response) {
+		InputStream messageData = response.getResponseStream();
+		boolean isIterating = false;
+		try {
+			// The MappingIterator reads the values contained in a root-level array
+			final MappingIterator<T> values = getReader(elementType.getType()).readValues(messageData);
+			ResponseIterator<T> elements = new AbstractResponseIterator<T>(messageData) {
+				@Override
+				protected boolean hasNextElement() throws IOException {
+					return values.hasNextValue();
+				}
+
+				@Override
+				protected T readElement() throws IOException {
+					return values.nextValue();
+				}
+			};
+			isIterating = true;
+			return elements;
+		} catch (IOException e) {
+			throw new InfinitumRuntimeException("Unable to convert REST response", e);
+		} finally {
+			if (!isIterating) {
+				try {
+					messageData.close();
+				} catch (IOException e) {
+					// Ignore, the conversion has already failed
+				}
+			}
+		}
+	}
+
+	@Override
+	public <T> T copy(T object, TypeToken<T> type) {
+		if (object == null)
+			return null;
+		try {
+			JsonNode tree = mMapper.valueToTree(object);
+			return getReader(type.getType()).<T> readValue(tree);
+		} catch (IOException e) {
+			throw new InfinitumRuntimeException("Unable to copy converted object", e);
+		}
+	}
+
+	private ObjectReader getReader(Type type) {
+		ObjectReader reader = mReaders.get(type);
+		if (reader == null) {
+			JavaType javaType = mMapper.getTypeFactory().constructType(type);
+			reader = mMapper.reader(javaType);
+			ObjectReader existing = mReaders.putIfAbsent(type, reader);
+			if (existing != null)
+				reader = existing;
+		}
+		return reader;
+	}
+
 }
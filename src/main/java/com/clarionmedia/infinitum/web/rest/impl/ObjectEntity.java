@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import com.clarionmedia.infinitum.web.rest.MessageConverter;
+
+/**
+ * <p>
+ * {@link HttpEntity} which serializes an object using a
+ * {@link MessageConverter} as it is written. The object is written directly
+ * to the connection's output stream, without first being serialized into a
+ * {@code String} or byte array. Since the serialized length is not known in
+ * advance, the entity is sent chunked.
+ * </p>
+ * <p>
+ * The entity is repeatable, as the object is serialized again each time it
+ * is written. The object must therefore not be modified until the request
+ * has completed.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 06/01/13
+ * @since 1.1
+ */
+public class ObjectEntity extends AbstractHttpEntity {
+
+	private Object mObject;
+	private MessageConverter mMessageConverter;
+
+	/**
+	 * Creates a new {@code ObjectEntity} which serializes the given object
+	 * using the given {@link MessageConverter}. The entity's content type is
+	 * that of the {@code MessageConverter}.
+	 * 
+	 * @param object
+	 *            the object to serialize
+	 * @param messageConverter
+	 *            the {@code MessageConverter} to serialize the object with
+	 */
+	public ObjectEntity(Object object, MessageConverter messageConverter) {
+		mObject = object;
+		mMessageConverter = messageConverter;
+		setContentType(messageConverter.getContentType());
+		setChunked(true);
+	}
+
+	/**
+	 * Returns the object serialized by this entity.
+	 * 
+	 * @return object
+	 */
+	public Object getObject() {
+		return mObject;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * The serialized object is only available through
+	 * {@link #writeTo(OutputStream)}.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		throw new UnsupportedOperationException("Serialized content is only available through writeTo");
+	}
+
+	@Override
+	public void writeTo(OutputStream outStream) throws IOException {
+		mMessageConverter.write(mObject, outStream);
+	}
+
+}
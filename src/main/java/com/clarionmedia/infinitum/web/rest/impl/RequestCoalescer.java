@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpRequest;
+
+import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
+import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
+
+/**
+ * <p>
+ * Collapses concurrent executions of identical requests into a single network
+ * call. The first caller for a given {@link HashableHttpRequest} executes the
+ * request while any callers which arrive before it completes wait for and
+ * share its {@link RestResponse}.
+ * </p>
+ * <p>
+ * This should only be used for safe, idempotent requests such as GET.
+ * </p>
+ * <p>
+ * Since the callers of an in-flight request share its execution, the caller
+ * which executes it should only abort it if no other callers are waiting for
+ * its result, which {@link #abandon(HttpRequest)} determines. A caller which
+ * is interrupted while waiting for the result of another caller's execution
+ * receives an {@link InfinitumRuntimeException} rather than a response.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 02/16/13
+ * @since 1.1
+ */
+public class RequestCoalescer {
+
+	private ConcurrentMap<HashableHttpRequest, InFlightRequest> mInFlightRequests;
+	// In-flight executions by the request which is being sent, which has
+	// identity equality
+	private ConcurrentMap<HttpRequest, InFlightRequest> mExecutingRequests;
+	private AtomicLong mExecutedCount;
+	private AtomicLong mCoalescedCount;
+
+	/**
+	 * Creates a new {@code RequestCoalescer}.
+	 */
+	public RequestCoalescer() {
+		mInFlightRequests = new ConcurrentHashMap<HashableHttpRequest, InFlightRequest>();
+		mExecutingRequests = new ConcurrentHashMap<HttpRequest, InFlightRequest>();
+		mExecutedCount = new AtomicLong();
+		mCoalescedCount = new AtomicLong();
+	}
+
+	/**
+	 * Executes the given request, or waits for the result of an identical
+	 * request if one is already in flight.
+	 * 
+	 * @param request
+	 *            the request being executed
+	 * @param execution
+	 *            the {@link Callable} which performs the request
+	 * @return HTTP response
+	 * @throws InfinitumRuntimeException
+	 *             if the caller was interrupted while waiting for an
+	 *             identical request
+	 */
+	public RestResponse execute(HashableHttpRequest request, Callable<RestResponse> execution) {
+		InFlightRequest task = new InFlightRequest(request, execution);
+		while (true) {
+			InFlightRequest inFlight = mInFlightRequests.putIfAbsent(request, task);
+			if (inFlight == null)
+				break;
+			if (inFlight.join()) {
+				mCoalescedCount.incrementAndGet();
+				try {
+					return getResult(inFlight);
+				} finally {
+					inFlight.leave();
+				}
+			}
+			// The in-flight request was abandoned by its caller
+			mInFlightRequests.remove(request, inFlight);
+		}
+		mExecutedCount.incrementAndGet();
+		mExecutingRequests.put(request.unwrap(), task);
+		try {
+			task.run();
+		} finally {
+			mExecutingRequests.remove(request.unwrap(), task);
+			mInFlightRequests.remove(request, task);
+		}
+		return getResult(task);
+	}
+
+	/**
+	 * Abandons the in-flight execution of the given request, if any, so that
+	 * it can be aborted. An execution cannot be abandoned while other callers
+	 * are waiting for its result, in which case it must be allowed to
+	 * complete. Callers which arrive after the execution has been abandoned
+	 * execute the request again rather than waiting for it.
+	 * 
+	 * @param request
+	 *            the request wrapped by the {@link HashableHttpRequest} passed
+	 *            to {@link #execute(HashableHttpRequest, Callable)}
+	 * @return {@code true} if the request may be aborted, {@code false} if
+	 *         other callers are waiting for it
+	 */
+	public boolean abandon(HttpRequest request) {
+		InFlightRequest inFlight = mExecutingRequests.get(request);
+		if (inFlight == null)
+			return true;
+		if (!inFlight.abandon())
+			return false;
+		mInFlightRequests.remove(inFlight.mRequest, inFlight);
+		return true;
+	}
+
+	/**
+	 * Returns the number of requests which were sent to the network.
+	 * 
+	 * @return number of executed requests
+	 */
+	public long getExecutedCount() {
+		return mExecutedCount.get();
+	}
+
+	/**
+	 * Returns the number of requests which were collapsed into an identical
+	 * in-flight request rather than being sent to the network.
+	 * 
+	 * @return number of collapsed requests
+	 */
+	public long getCoalescedCount() {
+		return mCoalescedCount.get();
+	}
+
+	/**
+	 * Returns the number of distinct requests currently in flight.
+	 * 
+	 * @return number of in-flight requests
+	 */
+	public int getInFlightCount() {
+		return mInFlightRequests.size();
+	}
+
+	private RestResponse getResult(InFlightRequest task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InfinitumRuntimeException("Interrupted while waiting for an identical request", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new InfinitumRuntimeException("Unable to execute request", e.getCause());
+		}
+	}
+
+	/**
+	 * {@link FutureTask} executing a request which keeps track of the number
+	 * of callers waiting for its result.
+	 */
+	private static class InFlightRequest extends FutureTask<RestResponse> {
+
+		private final HashableHttpRequest mRequest;
+		private int mWaiting;
+		private boolean mIsAbandoned;
+
+		public InFlightRequest(HashableHttpRequest request, Callable<RestResponse> execution) {
+			super(execution);
+			mRequest = request;
+		}
+
+		public synchronized boolean join() {
+			if (mIsAbandoned)
+				return false;
+			mWaiting++;
+			return true;
+		}
+
+		public synchronized void leave() {
+			mWaiting--;
+		}
+
+		public synchronized boolean abandon() {
+			if (mWaiting > 0)
+				return false;
+			mIsAbandoned = true;
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,716 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.clarionmedia.infinitum.logging.Logger;
+import com.clarionmedia.infinitum.logging.impl.SmartLogger;
+
+/**
+ * <p>
+ * Disk tier of {@link RestResponseCache} which stores each cached response as
+ * a {@link ResponseRecord} file in a directory, bounded by the total size of
+ * the files.
+ * </p>
+ * <p>
+ * An in-memory index of the stored files, kept in least recently used order,
+ * answers lookups for responses which are not on disk without touching the
+ * file system, and determines which files are evicted when the cache grows
+ * beyond its maximum size. The index is persisted in a journal file to which
+ * every change is appended:
+ * </p>
+ * 
+ * <pre>
+ *     infinitum.web.ResponseDiskCache
+ *     1
+ *     FORMAT_VERSION
+ *     
+ *     DIRTY 3f2a9c0d41b7e8a65c1d0e9f7b2a4c18
+ *     CLEAN 3f2a9c0d41b7e8a65c1d0e9f7b2a4c18 1834 1363564800000
+ *     READ 3f2a9c0d41b7e8a65c1d0e9f7b2a4c18
+ *     VERIFIED 3f2a9c0d41b7e8a65c1d0e9f7b2a4c18
+ *     REMOVE 3f2a9c0d41b7e8a65c1d0e9f7b2a4c18
+ * </pre>
+ * <p>
+ * The header holds the journal version and the value of
+ * {@link ResponseRecord#FORMAT_VERSION}. If either differs, the directory is
+ * cleared. A {@code DIRTY} line
+ * is written before a file is created or replaced, and is followed by a
+ * {@code CLEAN} line, with the file size and retention time, once the file is
+ * complete. Files left dirty by a crash are deleted when the journal is read.
+ * A record which is removed while it is being written is discarded rather
+ * than committed once the write completes. A record stored under a name
+ * which is being written is written by the same thread once the current
+ * write has been committed, so that the latest record always ends up on disk.
+ * When the journal accumulates enough redundant lines, it is compacted by
+ * writing a new journal and atomically renaming it into place, keeping the
+ * previous journal as a backup until the rename succeeds.
+ * </p>
+ * <p>
+ * The journal is read on a background thread by {@link #open()}, so that
+ * neither enabling the disk cache nor the first request waits for it unless
+ * the request arrives before the journal has been read. A cache which is not
+ * opened reads its journal on first use.
+ * </p>
+ * <p>
+ * Records whose message data exceeds the threshold set with
+ * {@link #setMapThreshold(long)} are read by memory-mapping the message data
+ * rather than copying it onto the heap. The checksum of a mapped record is
+ * verified at most once: files written by this cache are trusted for the
+ * lifetime of the process, and a file found in the journal is verified when
+ * it is first read, after which a {@code VERIFIED} line records the result
+ * so that it is not verified again after the journal is next read.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 03/23/13
+ * @since 1.1
+ */
+public class ResponseDiskCache {
+
+	private static final String JOURNAL_FILE = "journal";
+	private static final String JOURNAL_FILE_TEMP = "journal.tmp";
+	private static final String JOURNAL_FILE_BACKUP = "journal.bkp";
+	private static final String MAGIC = "infinitum.web.ResponseDiskCache";
+	private static final String JOURNAL_VERSION = "1";
+	private static final String CLEAN = "CLEAN";
+	private static final String DIRTY = "DIRTY";
+	private static final String REMOVE = "REMOVE";
+	private static final String READ = "READ";
+	private static final String VERIFIED = "VERIFIED";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String SPOOL_PREFIX = "spool";
+	private static final int REDUNDANT_OPERATION_COMPACT_THRESHOLD = 2000;
+
+	private Logger mLogger;
+	private File mDirectory;
+	private File mJournalFile;
+	private File mJournalFileTemp;
+	private File mJournalFileBackup;
+	private long mMaxSize;
+	private volatile long mMapThreshold;
+	private long mSize;
+	private LinkedHashMap<String, Entry> mEntries;
+	private Set<String> mEditing;
+	private Set<String> mRemovedWhileEditing;
+	private Map<String, ResponseRecord> mStoredWhileEditing;
+	private Writer mJournalWriter;
+	private int mRedundantOperationCount;
+	private boolean mIsInitialized;
+	private int mGeneration;
+
+	/**
+	 * Creates a new {@code ResponseDiskCache} in the given directory.
+	 * 
+	 * @param directory
+	 *            the directory to store cached responses in
+	 * @param maxSize
+	 *            the maximum total size of the stored files in bytes
+	 */
+	public ResponseDiskCache(File directory, long maxSize) {
+		mLogger = new SmartLogger(getClass().getSimpleName());
+		mDirectory = directory;
+		mJournalFile = new File(directory, JOURNAL_FILE);
+		mJournalFileTemp = new File(directory, JOURNAL_FILE_TEMP);
+		mJournalFileBackup = new File(directory, JOURNAL_FILE_BACKUP);
+		mMaxSize = maxSize;
+		mEntries = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+		mEditing = new HashSet<String>();
+		mRemovedWhileEditing = new HashSet<String>();
+		mStoredWhileEditing = new HashMap<String, ResponseRecord>();
+	}
+
+	/**
+	 * Reads the journal on a background thread, so that it is ready before
+	 * the first request. Requests made in the meantime wait for it to be
+	 * read.
+	 */
+	public synchronized void open() {
+		if (mIsInitialized)
+			return;
+		final int generation = mGeneration;
+		Thread thread = new Thread("ResponseDiskCache") {
+			@Override
+			public void run() {
+				synchronized (ResponseDiskCache.this) {
+					// The cache may have been closed before the thread ran
+					if (generation == mGeneration)
+						initialize();
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the {@link ResponseRecord} stored under the given name.
+	 * 
+	 * @param name
+	 *            the name of the record
+	 * @return {@code ResponseRecord} or {@code null} if there is none, its
+	 *         retention period has passed or it could not be read
+	 */
+	public ResponseRecord get(String name) {
+		Entry entry;
+		boolean verify;
+		synchronized (this) {
+			initialize();
+			entry = mEntries.get(name);
+			if (entry == null)
+				return null;
+			if (entry.mRetainUntil <= System.currentTimeMillis()) {
+				removeEntry(name);
+				return null;
+			}
+			appendToJournal(READ + ' ' + name);
+			flushJournal();
+			verify = !entry.mWritten && !entry.mVerified;
+		}
+		try {
+			ResponseRecord record = ResponseRecord.readFrom(getFile(name), mMapThreshold, verify);
+			if (verify)
+				markVerified(name, entry);
+			return record;
+		} catch (IOException e) {
+			mLogger.debug("Unable to read cached response " + name + " (" + e.getMessage() + ")");
+			remove(name);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the given {@link ResponseRecord} under the given name, replacing
+	 * any existing record and evicting the least recently used records if the
+	 * cache exceeds its maximum size. If another record with the same name is
+	 * currently being written, this returns immediately and the record is
+	 * written by that thread once the other record has been committed. The
+	 * record is not stored if it is removed before it has been written.
+	 * 
+	 * @param name
+	 *            the name of the record
+	 * @param record
+	 *            the record to store
+	 */
+	public void put(String name, ResponseRecord record) {
+		putAll(Collections.singletonMap(name, record));
+	}
+
+	/**
+	 * Stores the given {@link ResponseRecord} instances under their names as
+	 * a batch, as if by calling {@link #put(String, ResponseRecord)} for each
+	 * of them. The journal is written and flushed once for the batch before
+	 * the records are written, and once after they have been committed.
+	 * 
+	 * @param records
+	 *            the records to store, keyed by name
+	 */
+	public void putAll(Map<String, ResponseRecord> records) {
+		Map<String, ResponseRecord> batch = new LinkedHashMap<String, ResponseRecord>();
+		synchronized (this) {
+			initialize();
+			for (Map.Entry<String, ResponseRecord> record : records.entrySet()) {
+				String name = record.getKey();
+				if (mEditing.contains(name)) {
+					mStoredWhileEditing.put(name, record.getValue());
+				} else {
+					mEditing.add(name);
+					batch.put(name, record.getValue());
+				}
+			}
+		}
+		while (!batch.isEmpty())
+			batch = write(batch);
+	}
+
+	/**
+	 * Removes the record stored under the given name.
+	 * 
+	 * @param name
+	 *            the name of the record
+	 */
+	public synchronized void remove(String name) {
+		initialize();
+		if (mEditing.contains(name)) {
+			mRemovedWhileEditing.add(name);
+			mStoredWhileEditing.remove(name);
+		}
+		removeEntry(name);
+		flushJournal();
+		compactJournalIfNecessary();
+	}
+
+	/**
+	 * Indicates whether or not a record is stored under the given name. This
+	 * does not access the file system.
+	 * 
+	 * @param name
+	 *            the name of the record
+	 * @return {@code true} if a record is stored, {@code false} if not
+	 */
+	public synchronized boolean contains(String name) {
+		initialize();
+		return mEntries.containsKey(name);
+	}
+
+	/**
+	 * Removes all stored records.
+	 */
+	public synchronized void clear() {
+		closeJournal();
+		mRemovedWhileEditing.clear();
+		mStoredWhileEditing.clear();
+		deleteContents();
+		mEntries.clear();
+		mSize = 0;
+		mIsInitialized = false;
+		mGeneration++;
+	}
+
+	/**
+	 * Sets the maximum total size of the stored files, evicting records if
+	 * necessary.
+	 * 
+	 * @param maxSize
+	 *            the maximum size in bytes
+	 */
+	public synchronized void setMaxSize(long maxSize) {
+		mMaxSize = maxSize;
+		if (mIsInitialized) {
+			trimToSize();
+			flushJournal();
+		}
+	}
+
+	/**
+	 * Returns the maximum total size of the stored files.
+	 * 
+	 * @return maximum size in bytes
+	 */
+	public synchronized long getMaxSize() {
+		return mMaxSize;
+	}
+
+	/**
+	 * Creates an empty temporary file in the cache directory, which can be
+	 * used to spool message data before it is stored. The caller is
+	 * responsible for deleting the file. Spool files which are left behind
+	 * are deleted when the cache is next opened.
+	 * 
+	 * @return spool file
+	 * @throws IOException
+	 *             if the file could not be created
+	 */
+	public synchronized File createSpoolFile() throws IOException {
+		initialize();
+		return File.createTempFile(SPOOL_PREFIX, TEMP_SUFFIX, mDirectory);
+	}
+
+	/**
+	 * Sets the minimum length of message data which is memory-mapped when a
+	 * record is read. Mapping is disabled by default.
+	 * 
+	 * @param mapThreshold
+	 *            the minimum length in bytes, or zero or less to disable
+	 *            mapping
+	 */
+	public void setMapThreshold(long mapThreshold) {
+		mMapThreshold = mapThreshold;
+	}
+
+	/**
+	 * Returns the total size of the stored files.
+	 * 
+	 * @return size in bytes
+	 */
+	public synchronized long getSize() {
+		initialize();
+		return mSize;
+	}
+
+	/**
+	 * Closes the journal. It is reopened the next time the cache is used.
+	 */
+	public synchronized void close() {
+		closeJournal();
+		mRemovedWhileEditing.clear();
+		mStoredWhileEditing.clear();
+		mEntries.clear();
+		mSize = 0;
+		mIsInitialized = false;
+		mGeneration++;
+	}
+
+	/**
+	 * Writes and commits the given batch of records, returning the records
+	 * which were stored under the same names in the meantime, whose names
+	 * remain marked as being written.
+	 */
+	private Map<String, ResponseRecord> write(Map<String, ResponseRecord> records) {
+		int generation;
+		synchronized (this) {
+			// The cache may have been closed since the previous batch
+			initialize();
+			for (String name : records.keySet())
+				appendToJournal(DIRTY + ' ' + name);
+			flushJournal();
+			generation = mGeneration;
+		}
+		Set<String> written = new HashSet<String>();
+		for (Map.Entry<String, ResponseRecord> record : records.entrySet()) {
+			if (writeTempFile(record.getKey(), record.getValue()))
+				written.add(record.getKey());
+		}
+		Map<String, ResponseRecord> next = new LinkedHashMap<String, ResponseRecord>();
+		synchronized (this) {
+			for (Map.Entry<String, ResponseRecord> record : records.entrySet()) {
+				String name = record.getKey();
+				commit(name, record.getValue(), written.contains(name), generation);
+				ResponseRecord newer = mStoredWhileEditing.remove(name);
+				if (newer == null)
+					mEditing.remove(name);
+				else
+					next.put(name, newer);
+			}
+			if (generation == mGeneration) {
+				trimToSize();
+				flushJournal();
+				compactJournalIfNecessary();
+			}
+		}
+		return next;
+	}
+
+	private boolean writeTempFile(String name, ResponseRecord record) {
+		try {
+			OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(getTempFile(name)));
+			try {
+				record.writeTo(outputStream);
+			} finally {
+				outputStream.close();
+			}
+			return true;
+		} catch (IOException e) {
+			mLogger.debug("Unable to write cached response " + name + " (" + e.getMessage() + ")");
+			return false;
+		}
+	}
+
+	private synchronized void markVerified(String name, Entry entry) {
+		// The entry may have been replaced or removed while it was being read
+		if (mEntries.get(name) != entry || entry.mVerified)
+			return;
+		entry.mVerified = true;
+		appendToJournal(VERIFIED + ' ' + name);
+		flushJournal();
+	}
+
+	private void commit(String name, ResponseRecord record, boolean written, int generation) {
+		File tempFile = getTempFile(name);
+		if (generation != mGeneration) {
+			// The cache was cleared while the record was being written
+			tempFile.delete();
+			return;
+		}
+		if (mRemovedWhileEditing.remove(name)) {
+			// The record must not replace the removal
+			tempFile.delete();
+			appendToJournal(REMOVE + ' ' + name);
+			return;
+		}
+		// The file is renamed into place under the lock so that a concurrent
+		// removal either precedes or follows the commit
+		File file = getFile(name);
+		if (!written || !tempFile.renameTo(file)) {
+			tempFile.delete();
+			removeEntry(name);
+			return;
+		}
+		long size = file.length();
+		Entry entry = new Entry(size, record.getRetainUntil());
+		entry.mWritten = true;
+		Entry previous = mEntries.put(name, entry);
+		if (previous != null)
+			mSize -= previous.mSize;
+		mSize += size;
+		appendToJournal(CLEAN + ' ' + name + ' ' + size + ' ' + record.getRetainUntil());
+	}
+
+	private void initialize() {
+		if (mIsInitialized)
+			return;
+		mIsInitialized = true;
+		mEntries.clear();
+		mSize = 0;
+		if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+			mLogger.error("Unable to create disk cache directory " + mDirectory);
+			return;
+		}
+		if (mJournalFileBackup.exists()) {
+			// A compaction was interrupted before the new journal was in place
+			if (mJournalFile.exists())
+				mJournalFileBackup.delete();
+			else
+				mJournalFileBackup.renameTo(mJournalFile);
+		}
+		deleteSpoolFiles();
+		if (mJournalFile.exists()) {
+			try {
+				readJournal();
+				mJournalWriter = openJournalWriter(true);
+				trimToSize();
+				flushJournal();
+				return;
+			} catch (IOException e) {
+				mLogger.debug("Disk cache journal is corrupt or outdated, clearing cache (" + e.getMessage() + ")");
+			}
+		}
+		deleteContents();
+		mEntries.clear();
+		mSize = 0;
+		try {
+			rebuildJournal();
+		} catch (IOException e) {
+			mLogger.error("Unable to create disk cache journal", e);
+		}
+	}
+
+	private void readJournal() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mJournalFile), "US-ASCII"));
+		try {
+			if (!MAGIC.equals(reader.readLine()) || !JOURNAL_VERSION.equals(reader.readLine())
+					|| !String.valueOf(ResponseRecord.FORMAT_VERSION).equals(reader.readLine())
+					|| !"".equals(reader.readLine()))
+				throw new IOException("Unexpected journal header");
+			Set<String> dirty = new HashSet<String>();
+			int lineCount = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineCount++;
+				readJournalLine(line, dirty);
+			}
+			mRedundantOperationCount = lineCount - mEntries.size();
+			// Files which were being written when the process ended may be
+			// incomplete
+			for (String name : dirty) {
+				Entry entry = mEntries.remove(name);
+				if (entry != null)
+					mSize -= entry.mSize;
+				getFile(name).delete();
+				getTempFile(name).delete();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void readJournalLine(String line, Set<String> dirty) throws IOException {
+		String[] parts = line.split(" ");
+		if (parts.length < 2)
+			throw new IOException("Unexpected journal line: " + line);
+		String name = parts[1];
+		if (parts[0].equals(CLEAN) && parts.length == 4) {
+			dirty.remove(name);
+			Entry entry;
+			try {
+				entry = new Entry(Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+			} catch (NumberFormatException e) {
+				throw new IOException("Unexpected journal line: " + line);
+			}
+			Entry previous = mEntries.put(name, entry);
+			if (previous != null)
+				mSize -= previous.mSize;
+			mSize += entry.mSize;
+		} else if (parts[0].equals(DIRTY) && parts.length == 2) {
+			dirty.add(name);
+		} else if (parts[0].equals(REMOVE) && parts.length == 2) {
+			dirty.remove(name);
+			Entry previous = mEntries.remove(name);
+			if (previous != null)
+				mSize -= previous.mSize;
+		} else if (parts[0].equals(READ) && parts.length == 2) {
+			// Updates the access order
+			mEntries.get(name);
+		} else if (parts[0].equals(VERIFIED) && parts.length == 2) {
+			Entry entry = mEntries.get(name);
+			if (entry != null)
+				entry.mVerified = true;
+		} else {
+			throw new IOException("Unexpected journal line: " + line);
+		}
+	}
+
+	private void rebuildJournal() throws IOException {
+		closeJournal();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mJournalFileTemp), "US-ASCII"));
+		try {
+			writer.write(MAGIC + '\n' + JOURNAL_VERSION + '\n' + ResponseRecord.FORMAT_VERSION + "\n\n");
+			for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+				writer.write(CLEAN + ' ' + entry.getKey() + ' ' + entry.getValue().mSize + ' '
+						+ entry.getValue().mRetainUntil + '\n');
+				if (entry.getValue().mVerified)
+					writer.write(VERIFIED + ' ' + entry.getKey() + '\n');
+			}
+			for (String name : mEditing)
+				writer.write(DIRTY + ' ' + name + '\n');
+		} finally {
+			writer.close();
+		}
+		if (mJournalFile.exists() && !mJournalFile.renameTo(mJournalFileBackup))
+			throw new IOException("Unable to back up disk cache journal");
+		if (!mJournalFileTemp.renameTo(mJournalFile))
+			throw new IOException("Unable to replace disk cache journal");
+		mJournalFileBackup.delete();
+		mRedundantOperationCount = 0;
+		mJournalWriter = openJournalWriter(true);
+	}
+
+	private void compactJournalIfNecessary() {
+		if (mRedundantOperationCount < REDUNDANT_OPERATION_COMPACT_THRESHOLD
+				|| mRedundantOperationCount < mEntries.size())
+			return;
+		try {
+			rebuildJournal();
+		} catch (IOException e) {
+			mLogger.error("Unable to compact disk cache journal", e);
+		}
+	}
+
+	private void appendToJournal(String line) {
+		if (mJournalWriter == null)
+			return;
+		mRedundantOperationCount++;
+		try {
+			mJournalWriter.write(line);
+			mJournalWriter.write('\n');
+		} catch (IOException e) {
+			mLogger.error("Unable to write to disk cache journal", e);
+		}
+	}
+
+	private void flushJournal() {
+		if (mJournalWriter == null)
+			return;
+		try {
+			mJournalWriter.flush();
+		} catch (IOException e) {
+			mLogger.error("Unable to write to disk cache journal", e);
+		}
+	}
+
+	private Writer openJournalWriter(boolean append) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mJournalFile, append), "US-ASCII"));
+	}
+
+	private void closeJournal() {
+		if (mJournalWriter == null)
+			return;
+		try {
+			mJournalWriter.close();
+		} catch (IOException e) {
+			mLogger.debug("Unable to close disk cache journal (" + e.getMessage() + ")");
+		}
+		mJournalWriter = null;
+	}
+
+	private void removeEntry(String name) {
+		Entry entry = mEntries.remove(name);
+		if (entry == null)
+			return;
+		mSize -= entry.mSize;
+		getFile(name).delete();
+		appendToJournal(REMOVE + ' ' + name);
+	}
+
+	private void trimToSize() {
+		Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+		while (mSize > mMaxSize && iterator.hasNext()) {
+			Map.Entry<String, Entry> eldest = iterator.next();
+			if (mEditing.contains(eldest.getKey()))
+				continue;
+			iterator.remove();
+			mSize -= eldest.getValue().mSize;
+			getFile(eldest.getKey()).delete();
+			appendToJournal(REMOVE + ' ' + eldest.getKey());
+		}
+	}
+
+	private void deleteContents() {
+		File[] files = mDirectory.listFiles();
+		if (files == null)
+			return;
+		for (File file : files)
+			file.delete();
+	}
+
+	private void deleteSpoolFiles() {
+		File[] files = mDirectory.listFiles();
+		if (files == null)
+			return;
+		for (File file : files) {
+			if (file.getName().startsWith(SPOOL_PREFIX) && file.getName().endsWith(TEMP_SUFFIX))
+				file.delete();
+		}
+	}
+
+	private File getFile(String name) {
+		return new File(mDirectory, name);
+	}
+
+	private File getTempFile(String name) {
+		return new File(mDirectory, name + TEMP_SUFFIX);
+	}
+
+	/**
+	 * Size, retention and checksum state of a stored record.
+	 */
+	private static class Entry {
+
+		final long mSize;
+		final long mRetainUntil;
+		// Written by this cache, so its checksum need not be verified
+		boolean mWritten;
+		// Verified by reading the file back, as recorded in the journal
+		boolean mVerified;
+
+		Entry(long size, long retainUntil) {
+			mSize = size;
+			mRetainUntil = retainUntil;
+		}
+
+	}
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Writes {@link ResponseRecord} instances to a {@link ResponseDiskCache} on a
+ * single background thread, keeping disk I/O off the thread which executed
+ * the request.
+ * </p>
+ * <p>
+ * Records are queued and written in batches using
+ * {@link ResponseDiskCache#putAll(Map)}, so that the journal is flushed once
+ * per batch rather than once per record. Queuing a record for a name which is
+ * already waiting to be written replaces the queued record, so only the
+ * latest response for a request is written.
+ * </p>
+ * <p>
+ * The queue is bounded by the total size of the queued message data. When it
+ * is full, records are written on the calling thread instead, unless an older
+ * record with the same name is in the batch being written, in which case the
+ * record is queued behind it regardless. Queued records remain
+ * visible through {@link #getPending(String)} until they are on disk.
+ * Cancelling a record never blocks. A record which is already being written
+ * is marked as superseded instead, and the writer removes it from disk once
+ * it has been committed, unless a newer record has been queued for its name.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 03/30/13
+ * @since 1.1
+ */
+public class ResponseDiskWriter {
+
+	private static final long DEFAULT_MAX_PENDING_SIZE = 2 * 1024 * 1024;
+
+	private ResponseDiskCache mDiskCache;
+	private LinkedHashMap<String, ResponseRecord> mPending;
+	private Map<String, ResponseRecord> mWriting;
+	private Map<String, ResponseRecord> mBatch;
+	private long mPendingSize;
+	private long mMaxPendingSize;
+	private Set<String> mSuperseded;
+	private Thread mWriterThread;
+
+	/**
+	 * Creates a new {@code ResponseDiskWriter} for the given
+	 * {@link ResponseDiskCache}, which queues up to 2MB of message data.
+	 * 
+	 * @param diskCache
+	 *            the {@code ResponseDiskCache} to write records to
+	 */
+	public ResponseDiskWriter(ResponseDiskCache diskCache) {
+		this(diskCache, DEFAULT_MAX_PENDING_SIZE);
+	}
+
+	/**
+	 * Creates a new {@code ResponseDiskWriter} for the given
+	 * {@link ResponseDiskCache}.
+	 * 
+	 * @param diskCache
+	 *            the {@code ResponseDiskCache} to write records to
+	 * @param maxPendingSize
+	 *            the maximum total size in bytes of the message data of
+	 *            queued records
+	 */
+	public ResponseDiskWriter(ResponseDiskCache diskCache, long maxPendingSize) {
+		mDiskCache = diskCache;
+		mMaxPendingSize = maxPendingSize;
+		mPending = new LinkedHashMap<String, ResponseRecord>();
+		mSuperseded = new HashSet<String>();
+	}
+
+	/**
+	 * Queues the given {@link ResponseRecord} to be written under the given
+	 * name, replacing any record already queued for the name. If the queue is
+	 * full, the record is written before this returns.
+	 * 
+	 * @param name
+	 *            the name of the record
+	 * @param record
+	 *            the record to write
+	 */
+	public void enqueue(String name, ResponseRecord record) {
+		synchronized (this) {
+			// The record being written is replaced by this one
+			mSuperseded.remove(name);
+			ResponseRecord previous = mPending.remove(name);
+			if (previous != null)
+				mPendingSize -= sizeOf(previous);
+			long size = sizeOf(record);
+			// A record written now could be overwritten by an older record
+			// in the current batch
+			if (mPending.isEmpty() || mPendingSize + size <= mMaxPendingSize
+					|| (mBatch != null && mBatch.containsKey(name))) {
+				mPending.put(name, record);
+				mPendingSize += size;
+				if (mWriterThread == null) {
+					mWriterThread = new WriterThread();
+					mWriterThread.start();
+				}
+				notifyAll();
+				return;
+			}
+		}
+		mDiskCache.put(name, record);
+	}
+
+	/**
+	 * Returns the record queued or being written under the given name.
+	 * 
+	 * @param name
+	 *            the name of the record
+	 * @return {@link ResponseRecord} or {@code null} if none is pending
+	 */
+	public synchronized ResponseRecord getPending(String name) {
+		ResponseRecord record = mPending.get(name);
+		if (record == null && mWriting != null)
+			record = mWriting.get(name);
+		return record;
+	}
+
+	/**
+	 * Discards the record queued under the given name, if any. If the record
+	 * is currently being written, it is removed from disk once its batch has
+	 * been committed. This does not block.
+	 * 
+	 * @param name
+	 *            the name of the record
+	 */
+	public synchronized void cancel(String name) {
+		ResponseRecord pending = mPending.remove(name);
+		if (pending != null)
+			mPendingSize -= sizeOf(pending);
+		if (mWriting != null && mWriting.remove(name) != null)
+			mSuperseded.add(name);
+	}
+
+	/**
+	 * Discards all queued records. Records which are currently being written
+	 * are removed from disk once they have been committed. This does not
+	 * block.
+	 */
+	public synchronized void cancelAll() {
+		mPending.clear();
+		mPendingSize = 0;
+		if (mWriting != null) {
+			mSuperseded.addAll(mWriting.keySet());
+			mWriting.clear();
+		}
+	}
+
+	/**
+	 * Blocks until all queued records have been written.
+	 */
+	public synchronized void flush() {
+		try {
+			while ((!mPending.isEmpty() || mWriting != null) && mWriterThread != null)
+				wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes all queued records and stops the writer thread. The thread is
+	 * restarted if another record is queued.
+	 */
+	public void shutdown() {
+		Thread writerThread;
+		synchronized (this) {
+			writerThread = mWriterThread;
+			mWriterThread = null;
+			notifyAll();
+		}
+		if (writerThread == null)
+			return;
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private boolean writeBatch(Thread writerThread) throws InterruptedException {
+		Map<String, ResponseRecord> batch;
+		synchronized (this) {
+			// Wait for records, and for a previous writer to finish its batch
+			while ((mPending.isEmpty() || mWriting != null) && mWriterThread == writerThread)
+				wait();
+			// A writer which was shut down drains the queue unless it has
+			// been replaced by a new writer
+			if (mWriterThread != writerThread && (mWriterThread != null || mPending.isEmpty()))
+				return false;
+			mWriting = new LinkedHashMap<String, ResponseRecord>(mPending);
+			mPending.clear();
+			mPendingSize = 0;
+			batch = new LinkedHashMap<String, ResponseRecord>(mWriting);
+			mBatch = batch;
+		}
+		List<String> superseded;
+		try {
+			mDiskCache.putAll(batch);
+		} finally {
+			synchronized (this) {
+				mWriting = null;
+				mBatch = null;
+				superseded = new ArrayList<String>(mSuperseded);
+				mSuperseded.clear();
+				notifyAll();
+			}
+		}
+		for (String name : superseded)
+			mDiskCache.remove(name);
+		return true;
+	}
+
+	private long sizeOf(ResponseRecord record) {
+		return Math.max(1, record.getResponse().getContentLength());
+	}
+
+	/**
+	 * Background thread which writes queued records until the writer is shut
+	 * down and its queue is empty.
+	 */
+	private class WriterThread extends Thread {
+
+		public WriterThread() {
+			super("ResponseDiskWriter");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				boolean isRunning = true;
+				while (isRunning)
+					isRunning = writeBatch(this);
+			} catch (InterruptedException e) {
+				// Stop writing
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
+
+/**
+ * <p>
+ * In-memory tier of {@link RestResponseCache} which is bounded by the total
+ * size in bytes of the cached responses' message data rather than by their
+ * number.
+ * </p>
+ * <p>
+ * Entries are evicted using the W-TinyLFU policy. New responses enter a small
+ * LRU admission window. When they are pushed out of the window, they are only
+ * admitted to the main segmented LRU if they have been requested more often
+ * than the entry which would be evicted to make room for them, as estimated
+ * by a compact frequency sketch. This keeps frequently requested responses
+ * resident even when large or one-off responses pass through the cache.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 03/09/13
+ * @since 1.1
+ */
+public class ResponseMemoryCache {
+
+	private static final int WINDOW_PERCENT = 1;
+	private static final int PROTECTED_PERCENT = 80;
+	private static final int ESTIMATED_ENTRY_SIZE = 2048;
+
+	private LinkedHashMap<HashableHttpRequest, Entry> mWindow;
+	private LinkedHashMap<HashableHttpRequest, Entry> mProbation;
+	private LinkedHashMap<HashableHttpRequest, Entry> mProtected;
+	private FrequencySketch mSketch;
+	private long mMaxSize;
+	private long mMaxWindowSize;
+	private long mMaxProtectedSize;
+	private long mWindowSize;
+	private long mProbationSize;
+	private long mProtectedSize;
+	private long mHitCount;
+	private long mMissCount;
+	private long mEvictionCount;
+
+	/**
+	 * Creates a new {@code ResponseMemoryCache} with the given maximum size.
+	 * 
+	 * @param maxSize
+	 *            the maximum total size of the cached message data in bytes
+	 */
+	public ResponseMemoryCache(long maxSize) {
+		mWindow = new LinkedHashMap<HashableHttpRequest, Entry>();
+		mProbation = new LinkedHashMap<HashableHttpRequest, Entry>();
+		mProtected = new LinkedHashMap<HashableHttpRequest, Entry>();
+		setMaxSize(maxSize);
+	}
+
+	/**
+	 * Returns the cached {@link RestResponse} for the given request.
+	 * 
+	 * @param request
+	 *            the request to retrieve the cached response for
+	 * @return cached {@code RestResponse} or {@code null} if there is none or
+	 *         its retention period has passed
+	 */
+	public synchronized RestResponse get(HashableHttpRequest request) {
+		mSketch.increment(request);
+		Entry entry = removeEntry(request);
+		if (entry == null) {
+			mMissCount++;
+			return null;
+		}
+		if (entry.mRetainUntil <= System.currentTimeMillis()) {
+			mMissCount++;
+			return null;
+		}
+		mHitCount++;
+		if (entry.mSegment == Entry.WINDOW) {
+			addToWindow(entry);
+		} else {
+			// Entries accessed while in the main space are promoted to the
+			// protected segment, demoting its least recently used entries
+			addToProtected(entry);
+			while (mProtectedSize > mMaxProtectedSize) {
+				Entry demoted = removeEldest(mProtected);
+				mProtectedSize -= demoted.mSize;
+				addToProbation(demoted);
+			}
+		}
+		return entry.mResponse;
+	}
+
+	/**
+	 * Caches the given {@link RestResponse} for the given request.
+	 * 
+	 * @param request
+	 *            the request to cache the response for
+	 * @param response
+	 *            the response to cache
+	 * @param retainUntil
+	 *            the time until which the response is retained in
+	 *            milliseconds since the epoch
+	 */
+	public synchronized void put(HashableHttpRequest request, RestResponse response, long retainUntil) {
+		removeEntry(request);
+		long size = sizeOf(response);
+		if (size > mMaxSize)
+			return;
+		addToWindow(new Entry(request, response, size, retainUntil));
+		evict();
+	}
+
+	/**
+	 * Removes the cached response for the given request.
+	 * 
+	 * @param request
+	 *            the request to remove the cached response for
+	 * @return removed {@link RestResponse} or {@code null} if there was none
+	 */
+	public synchronized RestResponse remove(HashableHttpRequest request) {
+		Entry entry = removeEntry(request);
+		return entry == null ? null : entry.mResponse;
+	}
+
+	/**
+	 * Removes all cached responses.
+	 */
+	public synchronized void clear() {
+		mWindow.clear();
+		mProbation.clear();
+		mProtected.clear();
+		mWindowSize = 0;
+		mProbationSize = 0;
+		mProtectedSize = 0;
+	}
+
+	/**
+	 * Sets the maximum total size of the cached message data, evicting
+	 * responses if necessary. The frequency sketch is resized along with the
+	 * cache, retaining the request frequencies recorded so far.
+	 * 
+	 * @param maxSize
+	 *            the maximum size in bytes
+	 */
+	public synchronized void setMaxSize(long maxSize) {
+		mMaxSize = maxSize;
+		mMaxWindowSize = Math.max(1, maxSize * WINDOW_PERCENT / 100);
+		mMaxProtectedSize = (maxSize - mMaxWindowSize) * PROTECTED_PERCENT / 100;
+		int expectedEntries = (int) Math.min(Integer.MAX_VALUE, maxSize / ESTIMATED_ENTRY_SIZE);
+		mSketch = mSketch == null ? new FrequencySketch(expectedEntries) : mSketch.resize(expectedEntries);
+		evict();
+	}
+
+	/**
+	 * Returns the maximum total size of the cached message data.
+	 * 
+	 * @return maximum size in bytes
+	 */
+	public synchronized long getMaxSize() {
+		return mMaxSize;
+	}
+
+	/**
+	 * Returns the total size of the cached message data.
+	 * 
+	 * @return size in bytes
+	 */
+	public synchronized long getSize() {
+		return mWindowSize + mProbationSize + mProtectedSize;
+	}
+
+	/**
+	 * Returns the number of cached responses.
+	 * 
+	 * @return number of cached responses
+	 */
+	public synchronized int getEntryCount() {
+		return mWindow.size() + mProbation.size() + mProtected.size();
+	}
+
+	/**
+	 * Returns the number of lookups which found a cached response.
+	 * 
+	 * @return number of hits
+	 */
+	public synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * Returns the number of lookups which did not find a cached response.
+	 * 
+	 * @return number of misses
+	 */
+	public synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * Returns the number of responses which were evicted or not admitted to
+	 * keep the cache within its maximum size.
+	 * 
+	 * @return number of evictions
+	 */
+	public synchronized long getEvictionCount() {
+		return mEvictionCount;
+	}
+
+	/**
+	 * Returns the ratio of lookups which found a cached response.
+	 * 
+	 * @return hit ratio between 0 and 1
+	 */
+	public synchronized double getHitRatio() {
+		long requests = mHitCount + mMissCount;
+		return requests == 0 ? 0 : (double) mHitCount / requests;
+	}
+
+	private void evict() {
+		while (mWindowSize > mMaxWindowSize) {
+			Entry candidate = removeEldest(mWindow);
+			mWindowSize -= candidate.mSize;
+			admit(candidate);
+		}
+		// The window may exceed its share of a very small cache on its own
+		while (getSize() > mMaxSize) {
+			LinkedHashMap<HashableHttpRequest, Entry> segment = !mProbation.isEmpty() ? mProbation
+					: !mProtected.isEmpty() ? mProtected : mWindow;
+			Entry victim = removeEldest(segment);
+			subtractSize(victim);
+			mEvictionCount++;
+		}
+	}
+
+	private void admit(Entry candidate) {
+		long maxMainSize = mMaxSize - mMaxWindowSize;
+		if (mProbationSize + mProtectedSize + candidate.mSize <= maxMainSize) {
+			addToProbation(candidate);
+			return;
+		}
+		// The candidate is compared once, against the entry which would be
+		// evicted first. If it wins, entries are evicted until it fits.
+		Entry victim = eldest(!mProbation.isEmpty() ? mProbation : mProtected);
+		if (victim != null && mSketch.frequency(candidate.mKey) <= mSketch.frequency(victim.mKey)) {
+			mEvictionCount++;
+			return;
+		}
+		while (mProbationSize + mProtectedSize + candidate.mSize > maxMainSize) {
+			LinkedHashMap<HashableHttpRequest, Entry> segment = !mProbation.isEmpty() ? mProbation : mProtected;
+			if (segment.isEmpty())
+				break;
+			subtractSize(removeEldest(segment));
+			mEvictionCount++;
+		}
+		addToProbation(candidate);
+	}
+
+	private Entry removeEntry(HashableHttpRequest request) {
+		Entry entry = mWindow.remove(request);
+		if (entry == null)
+			entry = mProbation.remove(request);
+		if (entry == null)
+			entry = mProtected.remove(request);
+		if (entry != null)
+			subtractSize(entry);
+		return entry;
+	}
+
+	private void subtractSize(Entry entry) {
+		switch (entry.mSegment) {
+		case Entry.WINDOW:
+			mWindowSize -= entry.mSize;
+			break;
+		case Entry.PROBATION:
+			mProbationSize -= entry.mSize;
+			break;
+		default:
+			mProtectedSize -= entry.mSize;
+		}
+	}
+
+	private void addToWindow(Entry entry) {
+		entry.mSegment = Entry.WINDOW;
+		mWindow.put(entry.mKey, entry);
+		mWindowSize += entry.mSize;
+	}
+
+	private void addToProbation(Entry entry) {
+		entry.mSegment = Entry.PROBATION;
+		mProbation.put(entry.mKey, entry);
+		mProbationSize += entry.mSize;
+	}
+
+	private void addToProtected(Entry entry) {
+		entry.mSegment = Entry.PROTECTED;
+		mProtected.put(entry.mKey, entry);
+		mProtectedSize += entry.mSize;
+	}
+
+	private Entry eldest(LinkedHashMap<HashableHttpRequest, Entry> segment) {
+		return segment.isEmpty() ? null : segment.values().iterator().next();
+	}
+
+	private Entry removeEldest(LinkedHashMap<HashableHttpRequest, Entry> segment) {
+		Iterator<Entry> iterator = segment.values().iterator();
+		Entry eldest = iterator.next();
+		iterator.remove();
+		return eldest;
+	}
+
+	private long sizeOf(RestResponse response) {
+		return Math.max(1, response.getContentLength());
+	}
+
+	/**
+	 * A cached response and its position in the cache.
+	 */
+	private static class Entry {
+
+		static final int WINDOW = 0;
+		static final int PROBATION = 1;
+		static final int PROTECTED = 2;
+
+		final HashableHttpRequest mKey;
+		final RestResponse mResponse;
+		final long mSize;
+		final long mRetainUntil;
+		int mSegment;
+
+		Entry(HashableHttpRequest key, RestResponse response, long size, long retainUntil) {
+			mKey = key;
+			mResponse = response;
+			mSize = size;
+			mRetainUntil = retainUntil;
+		}
+
+	}
+
+	/**
+	 * Count-Min sketch of 4-bit counters estimating how often keys have been
+	 * requested. Counters are periodically halved so that the estimates favor
+	 * recent popularity.
+	 */
+	private static class FrequencySketch {
+
+		private static final int[] SEEDS = { 0x97cb3127, 0x0ba1e1e5, 0x7f4a7c15, 0x2f2b5d6b };
+		private static final int MAX_FREQUENCY = 15;
+		private static final int MIN_WIDTH = 64;
+		private static final int MAX_WIDTH = 1 << 16;
+
+		private final byte[][] mCounters;
+		private final int mMask;
+		private final int mSampleSize;
+		private int mAdditions;
+
+		FrequencySketch(int expectedEntries) {
+			int width = widthFor(expectedEntries);
+			mCounters = new byte[SEEDS.length][width];
+			mMask = width - 1;
+			mSampleSize = width * 10;
+		}
+
+		FrequencySketch resize(int expectedEntries) {
+			if (widthFor(expectedEntries) == mCounters[0].length)
+				return this;
+			// Counters are indexed by the low bits of a key's hash, so they
+			// can be split or folded into a sketch of another width
+			FrequencySketch resized = new FrequencySketch(expectedEntries);
+			for (int i = 0; i < SEEDS.length; i++) {
+				byte[] row = resized.mCounters[i];
+				byte[] previous = mCounters[i];
+				if (row.length > previous.length) {
+					for (int j = 0; j < row.length; j++)
+						row[j] = previous[j & mMask];
+				} else {
+					for (int j = 0; j < previous.length; j++) {
+						int index = j & resized.mMask;
+						row[index] = (byte) Math.min(MAX_FREQUENCY, row[index] + previous[j]);
+					}
+				}
+			}
+			resized.mAdditions = Math.min(mAdditions, resized.mSampleSize - 1);
+			return resized;
+		}
+
+		void increment(Object key) {
+			int hash = key.hashCode();
+			boolean added = false;
+			for (int i = 0; i < SEEDS.length; i++) {
+				int index = indexOf(hash, i);
+				if (mCounters[i][index] < MAX_FREQUENCY) {
+					mCounters[i][index]++;
+					added = true;
+				}
+			}
+			if (added && ++mAdditions >= mSampleSize)
+				reset();
+		}
+
+		int frequency(Object key) {
+			int hash = key.hashCode();
+			int frequency = MAX_FREQUENCY;
+			for (int i = 0; i < SEEDS.length; i++)
+				frequency = Math.min(frequency, mCounters[i][indexOf(hash, i)]);
+			return frequency;
+		}
+
+		private static int widthFor(int expectedEntries) {
+			int width = MIN_WIDTH;
+			while (width < expectedEntries && width < MAX_WIDTH)
+				width <<= 1;
+			return width;
+		}
+
+		private int indexOf(int hash, int row) {
+			int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+			h ^= h >>> 16;
+			return h & mMask;
+		}
+
+		private void reset() {
+			for (byte[] row : mCounters) {
+				for (int i = 0; i < row.length; i++)
+					row[i] >>= 1;
+			}
+			mAdditions /= 2;
+		}
+
+	}
+
+}
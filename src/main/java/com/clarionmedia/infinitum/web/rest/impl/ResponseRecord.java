@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * A {@link RestResponse} as it is persisted by the disk tier of
+ * {@link RestResponseCache}, along with its cache key and the time until which
+ * it is retained.
+ * </p>
+ * <p>
+ * A record is encoded as a four byte magic number and the format version,
+ * followed by a metadata block and the message data, each prefixed with its
+ * length and followed by its CRC32 checksum. The metadata holds the cache key,
+ * which is used to verify that a record belongs to the request it was looked
+ * up for, followed by the status code, expiration, retention, {@code ETag} and {@code Last-Modified}
+ * validators, the content coding of the message data and the remaining
+ * headers. Integers and lengths are encoded as
+ * unsigned variable-length integers, and strings as UTF-8. Records written in
+ * an unknown format or which fail their checksum are rejected with an
+ * {@link IOException}.
+ * </p>
+ * <p>
+ * Because the message data is stored last, records read from a file using
+ * {@link #readFrom(File, long)} can expose large message data as a
+ * memory-mapped region of the file instead of copying it onto the heap.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 03/16/13
+ * @since 1.1
+ */
+public class ResponseRecord {
+
+	/**
+	 * The current version of the record format.
+	 */
+	public static final int FORMAT_VERSION = 3;
+
+	private static final int MAGIC = 0x49574352;
+	private static final int MAX_METADATA_LENGTH = 1 << 20;
+	private static final int CHUNK_SIZE = 8192;
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+
+	private String mKey;
+	private RestResponse mResponse;
+	private long mRetainUntil;
+
+	/**
+	 * Creates a new {@code ResponseRecord}.
+	 * 
+	 * @param key
+	 *            the cache key of the response
+	 * @param response
+	 *            the cached response
+	 * @param retainUntil
+	 *            the time until which the response is retained in
+	 *            milliseconds since the epoch
+	 */
+	public ResponseRecord(String key, RestResponse response, long retainUntil) {
+		mKey = key;
+		mResponse = response;
+		mRetainUntil = retainUntil;
+	}
+
+	/**
+	 * Returns the cache key of the response.
+	 * 
+	 * @return cache key
+	 */
+	public String getKey() {
+		return mKey;
+	}
+
+	/**
+	 * Returns the cached {@link RestResponse}.
+	 * 
+	 * @return {@code RestResponse}
+	 */
+	public RestResponse getResponse() {
+		return mResponse;
+	}
+
+	/**
+	 * Returns the time until which the response is retained.
+	 * 
+	 * @return retention time in milliseconds since the epoch
+	 */
+	public long getRetainUntil() {
+		return mRetainUntil;
+	}
+
+	/**
+	 * Writes this record to the given {@link OutputStream}.
+	 * 
+	 * @param out
+	 *            the {@code OutputStream} to write to
+	 * @throws IOException
+	 *             if the record could not be written
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+		writeString(metadata, mKey);
+		writeVarLong(metadata, mResponse.getStatusCode());
+		writeVarLong(metadata, mResponse.getExpiration());
+		writeVarLong(metadata, mRetainUntil);
+		String etag = null;
+		String lastModified = null;
+		Map<String, String> headers = new HashMap<String, String>();
+		for (Entry<String, String> header : mResponse.getHeaders().entrySet()) {
+			if (header.getKey().equalsIgnoreCase(ETAG))
+				etag = header.getValue();
+			else if (header.getKey().equalsIgnoreCase(LAST_MODIFIED))
+				lastModified = header.getValue();
+			else
+				headers.put(header.getKey(), header.getValue());
+		}
+		writeString(metadata, etag);
+		writeString(metadata, lastModified);
+		writeString(metadata, mResponse.getContentEncoding());
+		writeVarLong(metadata, headers.size());
+		for (Entry<String, String> header : headers.entrySet()) {
+			writeString(metadata, header.getKey());
+			writeString(metadata, header.getValue());
+		}
+		ByteBuffer data = mResponse.getEncodedResponseBuffer();
+		if (data == null)
+			data = ByteBuffer.allocate(0);
+
+		writeInt(out, MAGIC);
+		writeVarLong(out, FORMAT_VERSION);
+		writeVarLong(out, metadata.size());
+		metadata.writeTo(out);
+		writeInt(out, checksum(metadata.toByteArray()));
+		writeVarLong(out, data.remaining());
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[Math.min(CHUNK_SIZE, data.remaining())];
+		while (data.hasRemaining()) {
+			int length = Math.min(chunk.length, data.remaining());
+			data.get(chunk, 0, length);
+			crc.update(chunk, 0, length);
+			out.write(chunk, 0, length);
+		}
+		writeInt(out, (int) crc.getValue());
+	}
+
+	/**
+	 * Reads a record from the given {@link InputStream}.
+	 * 
+	 * @param in
+	 *            the {@code InputStream} to read from
+	 * @return {@code ResponseRecord}
+	 * @throws IOException
+	 *             if the record could not be read, was written in an
+	 *             unsupported format or is corrupt
+	 */
+	public static ResponseRecord readFrom(InputStream in) throws IOException {
+		DataInputStream input = new DataInputStream(in);
+		ResponseRecord record = readMetadata(input);
+		setResponseData(record.mResponse, readBlock(input, Integer.MAX_VALUE));
+		return record;
+	}
+
+	/**
+	 * Reads a record from the given file. If the record's message data is at
+	 * least {@code mapThreshold} bytes long, it is memory-mapped rather than
+	 * read onto the heap and is exposed through
+	 * {@link RestResponse#getResponseBuffer()}. The mapping remains valid
+	 * after the file has been deleted or replaced.
+	 * 
+	 * @param file
+	 *            the file to read from
+	 * @param mapThreshold
+	 *            the minimum length in bytes of message data to map, or zero
+	 *            or less to never map it
+	 * @return {@code ResponseRecord}
+	 * @throws IOException
+	 *             if the record could not be read, was written in an
+	 *             unsupported format or is corrupt
+	 */
+	public static ResponseRecord readFrom(File file, long mapThreshold) throws IOException {
+		return readFrom(file, mapThreshold, true);
+	}
+
+	/**
+	 * Reads a record from the given file as {@link #readFrom(File, long)}
+	 * does, optionally skipping the checksum of memory-mapped message data.
+	 * Computing the checksum reads every page of the mapping, so callers which
+	 * have already verified the file, such as {@link ResponseDiskCache}, can
+	 * skip it. Metadata and message data read onto the heap are always
+	 * verified.
+	 * 
+	 * @param file
+	 *            the file to read from
+	 * @param mapThreshold
+	 *            the minimum length in bytes of message data to map, or zero
+	 *            or less to never map it
+	 * @param verifyMapped
+	 *            {@code true} if the checksum of memory-mapped message data
+	 *            should be verified, {@code false} if not
+	 * @return {@code ResponseRecord}
+	 * @throws IOException
+	 *             if the record could not be read, was written in an
+	 *             unsupported format or is corrupt
+	 */
+	public static ResponseRecord readFrom(File file, long mapThreshold, boolean verifyMapped) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			CountingInputStream counter = new CountingInputStream(new BufferedInputStream(in));
+			DataInputStream input = new DataInputStream(counter);
+			ResponseRecord record = readMetadata(input);
+			long length = readVarLong(input);
+			if (mapThreshold <= 0 || length < mapThreshold) {
+				setResponseData(record.mResponse, readBlockData(input, length, Integer.MAX_VALUE));
+				return record;
+			}
+			FileChannel channel = in.getChannel();
+			long offset = counter.getCount();
+			if (length > Integer.MAX_VALUE || offset + length + 4 > channel.size())
+				throw new IOException("Cached response record truncated");
+			ByteBuffer data = channel.map(MapMode.READ_ONLY, offset, length);
+			if (!verifyMapped) {
+				record.mResponse.setResponseBuffer(data);
+				return record;
+			}
+			ByteBuffer expected = ByteBuffer.allocate(4);
+			while (expected.hasRemaining()) {
+				if (channel.read(expected, offset + length + expected.position()) < 0)
+					throw new EOFException();
+			}
+			expected.flip();
+			if (expected.getInt() != checksum(data.duplicate()))
+				throw new IOException("Cached response record checksum mismatch");
+			record.mResponse.setResponseBuffer(data);
+			return record;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static ResponseRecord readMetadata(DataInputStream input) throws IOException {
+		if (input.readInt() != MAGIC)
+			throw new IOException("Not a cached response record");
+		long version = readVarLong(input);
+		if (version != FORMAT_VERSION)
+			throw new IOException("Unsupported cached response record version " + version);
+		byte[] metadata = readBlock(input, MAX_METADATA_LENGTH);
+		DataInputStream meta = new DataInputStream(new ByteArrayInputStream(metadata));
+		String key = readString(meta);
+		RestResponse response = new RestResponse();
+		response.setStatusCode((int) readVarLong(meta));
+		response.setExpiration(readVarLong(meta));
+		long retainUntil = readVarLong(meta);
+		Map<String, String> headers = new HashMap<String, String>();
+		String etag = readString(meta);
+		if (etag != null)
+			headers.put(ETAG, etag);
+		String lastModified = readString(meta);
+		if (lastModified != null)
+			headers.put(LAST_MODIFIED, lastModified);
+		response.setContentEncoding(readString(meta));
+		long headerCount = readVarLong(meta);
+		for (long i = 0; i < headerCount; i++)
+			headers.put(readString(meta), readString(meta));
+		response.setHeaders(headers);
+		return new ResponseRecord(key, response, retainUntil);
+	}
+
+	private static void setResponseData(RestResponse response, byte[] data) {
+		// Setting the message data clears the content coding read with the
+		// metadata
+		String contentEncoding = response.getContentEncoding();
+		response.setResponseData(data);
+		response.setContentEncoding(contentEncoding);
+	}
+
+	private static byte[] readBlock(DataInputStream input, int maxLength) throws IOException {
+		return readBlockData(input, readVarLong(input), maxLength);
+	}
+
+	private static byte[] readBlockData(DataInputStream input, long length, int maxLength) throws IOException {
+		if (length > maxLength)
+			throw new IOException("Cached response record block too large (" + length + " bytes)");
+		byte[] block = new byte[(int) length];
+		input.readFully(block);
+		if (input.readInt() != checksum(block))
+			throw new IOException("Cached response record checksum mismatch");
+		return block;
+	}
+
+	private static void writeString(OutputStream out, String value) throws IOException {
+		// Zero denotes null, otherwise the length is offset by one
+		if (value == null) {
+			writeVarLong(out, 0);
+			return;
+		}
+		byte[] bytes = value.getBytes("UTF-8");
+		writeVarLong(out, bytes.length + 1L);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		long length = readVarLong(in);
+		if (length == 0)
+			return null;
+		if (length - 1 > in.available())
+			throw new IOException("Cached response record string too long");
+		byte[] bytes = new byte[(int) (length - 1)];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static void writeVarLong(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static long readVarLong(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+
+	private static void writeInt(OutputStream out, int value) throws IOException {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	private static int checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		return (int) crc.getValue();
+	}
+
+	private static int checksum(ByteBuffer data) {
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[Math.min(CHUNK_SIZE, data.remaining())];
+		while (data.hasRemaining()) {
+			int length = Math.min(chunk.length, data.remaining());
+			data.get(chunk, 0, length);
+			crc.update(chunk, 0, length);
+		}
+		return (int) crc.getValue();
+	}
+
+}
@@ -16,31 +16,70 @@
 
 package com.clarionmedia.infinitum.web.rest.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 
+import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
 import com.clarionmedia.infinitum.web.HttpClientResponse;
 
 /**
  * <p>
  * Encapsulates an HTTP server response from a RESTful web service.
  * </p>
+ * <p>
+ * The message data is either held in a byte array or, for large responses
+ * read from the disk cache, in a {@link ByteBuffer} such as a memory-mapped
+ * region of the cache file. {@link #getResponseStream()} and
+ * {@link #getResponseBuffer()} provide access to the message data without
+ * copying it onto the heap, whereas {@link #getResponseData()} copies a
+ * buffered response into a byte array the first time it is called.
+ * </p>
+ * <p>
+ * A streamed response wraps the live stream of the HTTP entity instead. Its
+ * message data can be read once from {@link #getResponseStream()}, and
+ * {@link #close()} must be called if the stream is not read to its end in
+ * order to release the underlying connection. Calling
+ * {@link #getResponseData()} on a streamed response reads the remainder of
+ * the stream into a byte array.
+ * </p>
+ * <p>
+ * The message data may be held in its encoded form, in which case
+ * {@link #getContentEncoding()} names its content coding and the data is
+ * decoded as it is read. {@link #getContentLength()} always refers to the
+ * data as it is held.
+ * </p>
  * 
  * @author Tyler Treat
  * @version 1.0 07/06/12
  * @since 1.0
  */
-public class RestResponse implements HttpClientResponse {
+public class RestResponse implements HttpClientResponse, Closeable {
 
 	private HttpResponse mHttpResponse;
 	private int mStatusCode;
 	private byte[] mResponseData;
+	private ByteBuffer mResponseBuffer;
+	private InputStream mResponseStream;
+	private String mContentEncoding;
+	private long mBytesReceived;
+	private long mBytesDecoded;
 	private Map<String, String> mCookies;
 	private Map<String, String> mHeaders;
+	private long mExpiration;
+	private boolean mIsStale;
+	private String mCacheKey;
+	private long mCacheVersion;
 
 	/**
 	 * Constructs a new {@code RestResponse}.
@@ -48,6 +87,8 @@ public class RestResponse implements HttpClientResponse {
 	public RestResponse() {
 		mCookies = new HashMap<String, String>();
 		mHeaders = new HashMap<String, String>();
+		mBytesReceived = -1;
+		mBytesDecoded = -1;
 	}
 
 	/**
@@ -72,49 +113,335 @@ public class RestResponse implements HttpClientResponse {
 	}
 
 	/**
-	 * Sets the response message data as a byte array.
+	 * Sets the response message data as a byte array. The data is not
+	 * encoded, so this clears any content coding set with
+	 * {@link #setContentEncoding(String)}.
 	 * 
 	 * @param responseData
 	 *            the message data byte array to set
 	 */
 	public void setResponseData(byte[] responseData) {
 		mResponseData = responseData;
+		mResponseBuffer = null;
+		mResponseStream = null;
+		mContentEncoding = null;
+		mCacheKey = null;
+		mCacheVersion = 0;
 	}
 
 	/**
-	 * Sets the response message data as a {@link String}.
+	 * Sets the response message data as a {@link ByteBuffer}. The message
+	 * data consists of the buffer's remaining bytes. The buffer is not copied
+	 * and must not be modified afterward.
+	 * 
+	 * @param responseBuffer
+	 *            the message data buffer to set
+	 */
+	public void setResponseBuffer(ByteBuffer responseBuffer) {
+		mResponseBuffer = responseBuffer;
+		mResponseData = null;
+		mResponseStream = null;
+		mCacheKey = null;
+		mCacheVersion = 0;
+	}
+
+	/**
+	 * Sets the response message data as a live {@link InputStream}, making
+	 * this a streamed response.
+	 * 
+	 * @param responseStream
+	 *            the message data stream to set
+	 */
+	public void setResponseStream(InputStream responseStream) {
+		mResponseStream = responseStream;
+		mResponseData = null;
+		mResponseBuffer = null;
+		mCacheKey = null;
+		mCacheVersion = 0;
+	}
+
+	/**
+	 * Indicates whether or not this is a streamed response whose message data
+	 * has not yet been read into memory.
+	 * 
+	 * @return {@code true} if the response is streamed, {@code false} if not
+	 */
+	public boolean isStreamed() {
+		return mResponseStream != null;
+	}
+
+	/**
+	 * Returns a read-only {@link ByteBuffer} containing the response message
+	 * data. The returned buffer has its own position and limit, so it can be
+	 * consumed independently of other callers.
+	 * 
+	 * @return message data buffer or {@code null} if there is no message data
+	 */
+	public ByteBuffer getResponseBuffer() {
+		if (mContentEncoding == null)
+			return getEncodedResponseBuffer();
+		byte[] data = getResponseData();
+		return data == null ? null : ByteBuffer.wrap(data).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns an {@link InputStream} which reads the response message data.
+	 * Unlike {@link #getResponseData()}, this does not copy a buffered
+	 * response onto the heap. For a streamed response, this is the live
+	 * stream, which can only be read once and releases the underlying
+	 * connection when it is closed or read to its end.
+	 * 
+	 * @return message data {@code InputStream}, which is empty if there is no
+	 *         message data
+	 */
+	public InputStream getResponseStream() {
+		InputStream stream = mResponseStream;
+		if (stream == null) {
+			ByteBuffer buffer = mResponseBuffer;
+			byte[] data = mResponseData;
+			if (buffer != null)
+				stream = new ByteBufferInputStream(buffer.duplicate());
+			else
+				stream = new ByteArrayInputStream(data == null ? new byte[0] : data);
+		}
+		try {
+			return ContentEncoding.decode(stream, mContentEncoding);
+		} catch (IOException e) {
+			throw new InfinitumRuntimeException("Unable to decode web service response", e);
+		}
+	}
+
+	/**
+	 * Sets the content coding of the response message data as it is held,
+	 * causing it to be decoded when it is read.
+	 * 
+	 * @param contentEncoding
+	 *            {@link ContentEncoding#GZIP}, {@link ContentEncoding#DEFLATE}
+	 *            or {@code null} if the message data is not encoded
+	 */
+	public void setContentEncoding(String contentEncoding) {
+		mContentEncoding = contentEncoding;
+	}
+
+	/**
+	 * Returns the content coding of the response message data as it is held.
+	 * This may differ from the {@code Content-Encoding} header if the data
+	 * was decoded when it was received.
+	 * 
+	 * @return {@link ContentEncoding#GZIP}, {@link ContentEncoding#DEFLATE}
+	 *         or {@code null} if the message data is not encoded
+	 */
+	public String getContentEncoding() {
+		return mContentEncoding;
+	}
+
+	/**
+	 * Sets the number of message data bytes received over the network for
+	 * this response.
+	 * 
+	 * @param bytesReceived
+	 *            the number of bytes or -1 if unknown
+	 */
+	public void setBytesReceived(long bytesReceived) {
+		mBytesReceived = bytesReceived;
+	}
+
+	/**
+	 * Returns the number of message data bytes received over the network when
+	 * this response was downloaded. Compared with {@link #getBytesDecoded()},
+	 * this shows the savings of response compression.
+	 * 
+	 * @return number of bytes or -1 if unknown, for example because the
+	 *         response was streamed or read from the disk cache
+	 */
+	public long getBytesReceived() {
+		return mBytesReceived;
+	}
+
+	/**
+	 * Sets the number of message data bytes this response decoded to when it
+	 * was downloaded.
+	 * 
+	 * @param bytesDecoded
+	 *            the number of bytes or -1 if unknown
+	 */
+	public void setBytesDecoded(long bytesDecoded) {
+		mBytesDecoded = bytesDecoded;
+	}
+
+	/**
+	 * Returns the number of message data bytes this response decoded to when
+	 * it was downloaded. For an uncompressed response, this is the same as
+	 * {@link #getBytesReceived()}.
+	 * 
+	 * @return number of bytes or -1 if unknown, for example because the
+	 *         response was kept in its encoded form
+	 */
+	public long getBytesDecoded() {
+		return mBytesDecoded;
+	}
+
+	/**
+	 * Returns the length of the response message data as it is held, which is
+	 * its encoded length if {@link #getContentEncoding()} is not
+	 * {@code null}. The length of a streamed response is taken from its
+	 * {@code Content-Length} header.
+	 * 
+	 * @return message data length in bytes or -1 if the response is streamed
+	 *         and its length is unknown
+	 */
+	public int getContentLength() {
+		if (mResponseStream != null) {
+			String length = getHeader("Content-Length");
+			if (isEmpty(length))
+				return -1;
+			try {
+				return Integer.parseInt(length.trim());
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		ByteBuffer buffer = mResponseBuffer;
+		if (buffer != null)
+			return buffer.remaining();
+		byte[] data = mResponseData;
+		return data == null ? 0 : data.length;
+	}
+
+	/**
+	 * Indicates whether or not the response message data is held in a
+	 * {@link ByteBuffer} rather than a byte array.
+	 * 
+	 * @return {@code true} if the message data is buffered, {@code false} if
+	 *         not
+	 */
+	public boolean isBuffered() {
+		return mResponseBuffer != null;
+	}
+
+	/**
+	 * Sets the response message data as a {@link String}. Like
+	 * {@link #setResponseData(byte[])}, this clears any content coding.
 	 * 
 	 * @param responseDataStr
 	 *            the message data {@code String} to set
 	 */
 	public void setResponseDataAsString(String responseDataStr) {
 		if (responseDataStr == null) {
-			mResponseData = null;
+			setResponseData(null);
 		} else {
 			try {
-				mResponseData = responseDataStr.getBytes("UTF-8");
+				setResponseData(responseDataStr.getBytes("UTF-8"));
 			} catch (UnsupportedEncodingException e) {
 				throw new RuntimeException(e);
 			}
 		}
 	}
 
+	/**
+	 * Sets the time at which this response becomes stale.
+	 * 
+	 * @param expiration
+	 *            the expiration time in milliseconds since the epoch
+	 */
+	public void setExpiration(long expiration) {
+		mExpiration = expiration;
+	}
+
+	/**
+	 * Returns the time at which this response becomes stale. A response which
+	 * was not retrieved from the cache or whose freshness is unknown has an
+	 * expiration of zero.
+	 * 
+	 * @return expiration time in milliseconds since the epoch
+	 */
+	public long getExpiration() {
+		return mExpiration;
+	}
+
+	/**
+	 * Indicates whether or not this response is still fresh, meaning it can
+	 * be served from the cache without revalidating it with the server.
+	 * 
+	 * @return {@code true} if fresh, {@code false} if stale
+	 */
+	public boolean isFresh() {
+		return System.currentTimeMillis() < mExpiration;
+	}
+
+	/**
+	 * Indicates whether or not this response carries an {@code ETag} or
+	 * {@code Last-Modified} validator which can be used to conditionally
+	 * revalidate it.
+	 * 
+	 * @return {@code true} if the response has validators, {@code false} if
+	 *         not
+	 */
+	public boolean hasValidators() {
+		return !isEmpty(getHeader("ETag")) || !isEmpty(getHeader("Last-Modified"));
+	}
+
+	/**
+	 * Sets the value indicating whether or not this response was served from
+	 * the cache after it became stale.
+	 * 
+	 * @param isStale
+	 *            {@code true} if the response is stale, {@code false} if not
+	 */
+	public void setStale(boolean isStale) {
+		mIsStale = isStale;
+	}
+
+	/**
+	 * Indicates whether or not this response was served from the cache after
+	 * it became stale, for example because the server could not be reached
+	 * or responded with an error. Unlike {@link #isFresh()}, this reflects how
+	 * the response was served rather than the current time.
+	 * 
+	 * @return {@code true} if the response was served stale, {@code false}
+	 *         if not
+	 */
+	public boolean isStale() {
+		return mIsStale;
+	}
+
 	@Override
 	public int getStatusCode() {
 		return mStatusCode;
 	}
 
+	/**
+	 * Returns the response message data, reading a streamed response into
+	 * memory and decoding encoded message data. Message data held in a
+	 * {@link ByteBuffer}, such as a memory-mapped cached response, is copied
+	 * onto the heap on every call without the copy being retained, so callers
+	 * reading large responses should use {@link #getResponseStream()}
+	 * instead.
+	 * 
+	 * @return message data or {@code null} if there is none
+	 */
 	@Override
-	public byte[] getResponseData() {
-		return mResponseData;
+	public synchronized byte[] getResponseData() {
+		if (mResponseStream != null)
+			readResponseStream();
+		if (mContentEncoding != null)
+			return decodeResponseData();
+		byte[] data = mResponseData;
+		ByteBuffer buffer = mResponseBuffer;
+		if (data == null && buffer != null) {
+			data = new byte[buffer.remaining()];
+			buffer.duplicate().get(data);
+		}
+		return data;
 	}
 
 	@Override
 	public String getResponseDataAsString() {
 		String response = "";
-		if (mResponseData != null) {
+		byte[] data = getResponseData();
+		if (data != null) {
 			try {
-				response = new String(mResponseData, "UTF-8");
+				response = new String(data, "UTF-8");
 			} catch (UnsupportedEncodingException e) {
 				throw new RuntimeException(e);
 			}
@@ -122,6 +449,17 @@ public class RestResponse implements HttpClientResponse {
 		return response;
 	}
 
+	/**
+	 * Closes the message data stream of a streamed response, releasing the
+	 * underlying connection. This has no effect on other responses.
+	 */
+	@Override
+	public void close() {
+		InputStream stream = mResponseStream;
+		if (stream != null)
+			close(stream);
+	}
+
 	@Override
 	public Map<String, String> getCookies() {
 		return mCookies;
@@ -144,8 +482,16 @@ public class RestResponse implements HttpClientResponse {
 
 	@Override
 	public String getHeader(String header) {
-		if (mHttpResponse == null)
-			return mHeaders.get(header);
+		if (mHttpResponse == null) {
+			String value = mHeaders.get(header);
+			if (value != null)
+				return value;
+			for (Entry<String, String> entry : mHeaders.entrySet()) {
+				if (entry.getKey().equalsIgnoreCase(header))
+					return entry.getValue();
+			}
+			return null;
+		}
 		Header[] headers = mHttpResponse.getHeaders(header);
 		StringBuilder sb = new StringBuilder();
 		String prefix = "";
@@ -161,4 +507,177 @@ public class RestResponse implements HttpClientResponse {
 		mHeaders = headers;
 	}
 
+	/**
+	 * Shares the message data of the given response with this response
+	 * without copying it.
+	 * 
+	 * @param response
+	 *            the response to share the message data of
+	 */
+	void shareResponseData(RestResponse response) {
+		mResponseData = response.mResponseData;
+		mResponseBuffer = response.mResponseBuffer;
+		mContentEncoding = response.mContentEncoding;
+		mCacheKey = response.mCacheKey;
+		mCacheVersion = response.mCacheVersion;
+	}
+
+	/**
+	 * Identifies the cache entry this response's message data is stored in.
+	 * The entry is given a new version each time message data is stored for
+	 * its key, so a key and version always refer to the same message data.
+	 * 
+	 * @param cacheKey
+	 *            the key of the cache entry
+	 * @param cacheVersion
+	 *            the version of the cache entry
+	 */
+	void setCacheEntry(String cacheKey, long cacheVersion) {
+		mCacheKey = cacheKey;
+		mCacheVersion = cacheVersion;
+	}
+
+	/**
+	 * Returns the key of the cache entry this response's message data is
+	 * stored in.
+	 * 
+	 * @return cache key or {@code null} if the message data is not cached
+	 */
+	String getCacheKey() {
+		return mCacheKey;
+	}
+
+	/**
+	 * Returns the version of the cache entry this response's message data is
+	 * stored in.
+	 * 
+	 * @return cache entry version or {@code 0} if the message data is not
+	 *         cached
+	 */
+	long getCacheVersion() {
+		return mCacheVersion;
+	}
+
+	/**
+	 * Returns a read-only {@link ByteBuffer} containing the response message
+	 * data as it is held, without decoding it.
+	 * 
+	 * @return encoded message data buffer or {@code null} if there is no
+	 *         message data
+	 */
+	synchronized ByteBuffer getEncodedResponseBuffer() {
+		if (mResponseStream != null)
+			readResponseStream();
+		ByteBuffer buffer = mResponseBuffer;
+		if (buffer != null)
+			return buffer.asReadOnlyBuffer();
+		byte[] data = mResponseData;
+		return data == null ? null : ByteBuffer.wrap(data).asReadOnlyBuffer();
+	}
+
+	private void readResponseStream() {
+		InputStream stream = mResponseStream;
+		try {
+			mResponseData = readFully(stream, getContentLength());
+			mResponseStream = null;
+		} catch (IOException e) {
+			throw new InfinitumRuntimeException("Unable to read web service response", e);
+		} finally {
+			close(stream);
+		}
+	}
+
+	private byte[] decodeResponseData() {
+		InputStream stream = getResponseStream();
+		try {
+			return readFully(stream, getContentLength());
+		} catch (IOException e) {
+			throw new InfinitumRuntimeException("Unable to decode web service response", e);
+		} finally {
+			close(stream);
+		}
+	}
+
+	private static byte[] readFully(InputStream stream, int sizeHint) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(sizeHint, 32));
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = stream.read(buffer)) >= 0)
+			out.write(buffer, 0, read);
+		return out.toByteArray();
+	}
+
+	private static void close(InputStream stream) {
+		try {
+			stream.close();
+		} catch (IOException e) {
+			// Ignore, the connection is released regardless
+		}
+	}
+
+	private static boolean isEmpty(String value) {
+		return value == null || value.length() == 0;
+	}
+
+	/**
+	 * An {@link InputStream} which reads the remaining bytes of a
+	 * {@link ByteBuffer}.
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		private ByteBuffer mBuffer;
+		private int mMark;
+
+		public ByteBufferInputStream(ByteBuffer buffer) {
+			mBuffer = buffer;
+			mMark = buffer.position();
+		}
+
+		@Override
+		public int read() {
+			if (!mBuffer.hasRemaining())
+				return -1;
+			return mBuffer.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!mBuffer.hasRemaining())
+				return -1;
+			len = Math.min(len, mBuffer.remaining());
+			mBuffer.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public long skip(long n) {
+			int skipped = (int) Math.max(0, Math.min(n, mBuffer.remaining()));
+			mBuffer.position(mBuffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return mBuffer.remaining();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public synchronized void mark(int readLimit) {
+			mMark = mBuffer.position();
+		}
+
+		@Override
+		public synchronized void reset() {
+			mBuffer.position(mMark);
+		}
+
+	}
+
 }
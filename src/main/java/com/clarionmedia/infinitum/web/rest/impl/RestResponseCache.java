@@ -16,145 +16,750 @@
 
 package com.clarionmedia.infinitum.web.rest.impl;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel.MapMode;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
-import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.http.client.methods.HttpUriRequest;
 
+import android.content.Context;
+import android.os.Environment;
+
+import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
 import com.clarionmedia.infinitum.internal.caching.AbstractCache;
+import com.clarionmedia.infinitum.logging.Logger;
+import com.clarionmedia.infinitum.logging.impl.SmartLogger;
 import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
 
 /**
  * <p>
- * Concrete implementation of {@link AbstractCache} for caching REST responses.
- * The cache is keyed off of a {@link HashableHttpRequest}, which is a wrapper
+ * Cache for REST responses. The cache is keyed off of a
+ * {@link HashableHttpRequest}, which is a wrapper
  * for {@link HttpUriRequest} that implements {@code hashCode} and
  * {@code equals} methods.
  * </p>
+ * <p>
+ * Stale responses which carry an {@code ETag} or {@code Last-Modified}
+ * validator are kept in the cache so that they can be revalidated with a
+ * conditional request.
+ * </p>
+ * <p>
+ * Responses are held in a {@link ResponseMemoryCache}, which is bounded by the
+ * total size of their message data, and optionally persisted to a
+ * {@link ResponseDiskCache} using {@link #enableDiskCache(File, long)}.
+ * Responses evicted from memory are read back from disk when they are
+ * requested again.
+ * </p>
+ * <p>
+ * When write-behind is enabled, responses are written to disk by a
+ * {@link ResponseDiskWriter} on a background thread, while the memory tier is
+ * updated immediately. Pending writes should be flushed by calling
+ * {@link #close()} when the cache is no longer needed.
+ * </p>
+ * <p>
+ * Large responses read back from disk can be memory-mapped rather than
+ * copied onto the heap by setting a threshold with
+ * {@link #setMapThreshold(long)}. Their message data is then available from
+ * {@link RestResponse#getResponseStream()} and
+ * {@link RestResponse#getResponseBuffer()} without a copy.
+ * </p>
+ * <p>
+ * Streamed responses are cached using
+ * {@link #storeStream(HashableHttpRequest, RestResponse, InputStream, long)},
+ * which spools their message data to a file in the disk cache directory as
+ * it is read and stores the response on disk once it has been read
+ * completely, so that it is never held on the heap in its entirety.
+ * </p>
+ * <p>
+ * Disk cache files are named using an MD5 digest of the request's cache key,
+ * which is also stored in the file to guard against collisions.
+ * </p>
+ * <p>
+ * Each stored response is stamped with its cache key and a new entry version,
+ * which lets objects converted from its message data be cached alongside it.
+ * A response which is replaced or removed is never stamped again, so its
+ * converted objects become unreachable with it.
+ * </p>
+ * <p>
+ * {@code RestResponseCache} no longer extends {@link AbstractCache}. The
+ * {@code Map}-style methods {@link #get(Object)},
+ * {@link #put(HashableHttpRequest, RestResponse)} and
+ * {@link #containsKey(Object)}, the constructors taking a default expiration
+ * and {@link #enableDiskCache(Context, int)} are retained as deprecated
+ * adapters over {@link #lookup(HashableHttpRequest)},
+ * {@link #store(HashableHttpRequest, RestResponse)} and
+ * {@link #enableDiskCache(File)}.
+ * </p>
  * 
  * @author Tyler Treat
  * @version 1.0 08/15/12
  * @since 1.0
  */
-public class RestResponseCache extends AbstractCache<HashableHttpRequest, RestResponse> {
+public class RestResponseCache {
 
 	private static final String CACHE_NAME = "httpcache";
+	private static final long DEFAULT_MAX_DISK_SIZE = 10 * 1024 * 1024;
+	private static final long DEFAULT_REVALIDATION_RETENTION = 24 * 60 * 60;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private long mRevalidationRetention = DEFAULT_REVALIDATION_RETENTION;
+	private long mDefaultExpiration;
+	private Logger mLogger;
+	private ResponseMemoryCache mMemoryCache;
+	private volatile ResponseDiskCache mDiskCache;
+	private volatile ResponseDiskWriter mDiskWriter;
+	private volatile boolean mIsWriteBehindEnabled;
+	private volatile long mMapThreshold;
+	private AtomicLong mHitCount;
+	private AtomicLong mDiskHitCount;
+	private AtomicLong mMissCount;
+	private AtomicLong mVersion;
 	
 	/**
-	 * Creates a new {@code HttpResponseCache} with the given initial capacity
-	 * and default expiration timeout.
-	 * 
-	 * @param initialCapacity
-	 *            the initial cache capacity
-	 * @param defaultExpiration
-	 *            the default expiration timeout in seconds
+	 * Creates a new {@code RestResponseCache}. Responses are only held in
+	 * memory until the disk cache is enabled.
 	 */
 	public RestResponseCache() {
-		super(CACHE_NAME);
+		mLogger = new SmartLogger(getClass().getSimpleName());
+		mMemoryCache = new ResponseMemoryCache(Runtime.getRuntime().maxMemory() / 16);
+		mHitCount = new AtomicLong();
+		mDiskHitCount = new AtomicLong();
+		mMissCount = new AtomicLong();
+		mVersion = new AtomicLong();
 	}
-	
+
 	/**
-	 * Creates a new {@code HttpResponseCache} with the given default expiration timeout.
+	 * Creates a new {@code RestResponseCache} with the given default
+	 * expiration timeout, which is applied to responses stored using
+	 * {@link #put(HashableHttpRequest, RestResponse)} without an expiration.
 	 * 
 	 * @param defaultExpiration
 	 *            the default expiration timeout in seconds
+	 * @deprecated use {@link #RestResponseCache()} and set the expiration of
+	 *             responses before storing them
 	 */
+	@Deprecated
 	public RestResponseCache(long defaultExpiration) {
-		super(CACHE_NAME, defaultExpiration);
+		this();
+		mDefaultExpiration = defaultExpiration;
 	}
 
 	/**
-	 * Creates a new {@code HttpResponseCache} with the given initial capacity
-	 * and default expiration timeout.
+	 * Creates a new {@code RestResponseCache} with the given default
+	 * expiration timeout. The initial capacity is ignored, since the memory
+	 * tier is bounded by the size of the cached message data.
 	 * 
 	 * @param initialCapacity
-	 *            the initial cache capacity
+	 *            the initial cache capacity, which is ignored
 	 * @param defaultExpiration
 	 *            the default expiration timeout in seconds
+	 * @deprecated use {@link #RestResponseCache()} and set the expiration of
+	 *             responses before storing them
 	 */
+	@Deprecated
 	public RestResponseCache(int initialCapacity, long defaultExpiration) {
-		super(CACHE_NAME, initialCapacity, defaultExpiration);
+		this(defaultExpiration);
+	}
+
+	/**
+	 * Enables persisting cached responses to disk in a subdirectory of the
+	 * given directory, such as the application's cache directory, using the
+	 * default maximum disk cache size of 10MB.
+	 * 
+	 * @param cacheDirectory
+	 *            the directory to store cached responses in
+	 */
+	public void enableDiskCache(File cacheDirectory) {
+		enableDiskCache(cacheDirectory, DEFAULT_MAX_DISK_SIZE);
 	}
 
-	@Override
-	public String getFileNameForKey(HashableHttpRequest request) {
-		return getFileNameFromUri(request);
+	/**
+	 * Enables persisting cached responses to disk in a subdirectory of the
+	 * given directory, such as the application's cache directory. The least
+	 * recently used responses are evicted when the disk cache exceeds the
+	 * given size. The disk cache's journal is read on a background thread.
+	 * 
+	 * @param cacheDirectory
+	 *            the directory to store cached responses in
+	 * @param maxSize
+	 *            the maximum size of the disk cache in bytes
+	 */
+	public synchronized void enableDiskCache(File cacheDirectory, long maxSize) {
+		close();
+		ResponseDiskCache diskCache = new ResponseDiskCache(new File(cacheDirectory, CACHE_NAME), maxSize);
+		diskCache.setMapThreshold(mMapThreshold);
+		diskCache.open();
+		mDiskWriter = new ResponseDiskWriter(diskCache);
+		mDiskCache = diskCache;
 	}
 
-	@Override
-	protected RestResponse readValueFromDisk(File file) throws IOException {
-		BufferedInputStream inputStream = new BufferedInputStream(new FileInputStream(file));
-		long fileSize = file.length();
-		if (fileSize > Integer.MAX_VALUE) {
-			inputStream.close();
-			throw new IOException("Cannot read files larger than " + Integer.MAX_VALUE + " bytes.");
+	/**
+	 * Enables persisting cached responses to disk in the application's
+	 * internal cache directory or on its external storage.
+	 * 
+	 * @param context
+	 *            the {@link Context} of the application
+	 * @param storageDevice
+	 *            {@link AbstractCache#DISK_CACHE_INTERNAL} or
+	 *            {@link AbstractCache#DISK_CACHE_SDCARD}
+	 * @return {@code true} if the disk cache was enabled, {@code false} if
+	 *         external storage was requested but is not available
+	 * @deprecated use {@link #enableDiskCache(File)}
+	 */
+	@Deprecated
+	public boolean enableDiskCache(Context context, int storageDevice) {
+		if (storageDevice != AbstractCache.DISK_CACHE_SDCARD) {
+			enableDiskCache(context.getCacheDir());
+			return true;
 		}
+		if (!Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState()))
+			return false;
+		enableDiskCache(new File(Environment.getExternalStorageDirectory(), "Android/data/"
+				+ context.getPackageName() + "/cache"));
+		return true;
+	}
+
+	/**
+	 * Sets the value indicating whether or not responses are written to disk
+	 * asynchronously. This is disabled by default. Disabling write-behind
+	 * flushes any pending writes.
+	 * 
+	 * @param enabled
+	 *            {@code true} to write responses on a background thread,
+	 *            {@code false} to write them on the storing thread
+	 */
+	public void setWriteBehindEnabled(boolean enabled) {
+		mIsWriteBehindEnabled = enabled;
+		if (!enabled)
+			flush();
+	}
 
-		// The first byte is the status code
-		int statusCode = inputStream.read();
-		
-		// The second byte is the size of the header data
-		int headerSize = inputStream.read();
-		
-		// Next is the header data itself
-		byte[] headerData = new byte[headerSize];
-		inputStream.read(headerData, 0, headerSize);
-
-		// The remainder is the message data
-		int messageDataSize = (int) fileSize - headerSize - 2;
-		byte[] messageData = new byte[messageDataSize];
-		inputStream.read(messageData, 0, messageDataSize);
-		inputStream.close();
-
-		RestResponse response = new RestResponse();
-		response.setStatusCode(statusCode);
-		response.setResponseData(messageData);
-		String headers = new String(headerData);
-		Map<String, String> headerMap = new HashMap<String, String>();
-		String[] values = headers.split("\n");
-		for (int i = 0; i < values.length;)
-			headerMap.put(values[i++], values[i++]);
-		response.setHeaders(headerMap);
+	/**
+	 * Blocks until all responses pending a write-behind have been written to
+	 * disk.
+	 */
+	public void flush() {
+		ResponseDiskWriter diskWriter = mDiskWriter;
+		if (diskWriter != null)
+			diskWriter.flush();
+	}
+
+	/**
+	 * Writes any responses pending a write-behind to disk and releases the
+	 * disk cache's resources. The disk cache is reopened the next time it is
+	 * used.
+	 */
+	public synchronized void close() {
+		if (mDiskWriter != null)
+			mDiskWriter.shutdown();
+		if (mDiskCache != null)
+			mDiskCache.close();
+	}
+
+	/**
+	 * Sets the maximum size of the disk cache, evicting the least recently
+	 * used responses if necessary.
+	 * 
+	 * @param maxSize
+	 *            the maximum size in bytes
+	 */
+	public void setMaxDiskSize(long maxSize) {
+		ResponseDiskCache diskCache = mDiskCache;
+		if (diskCache != null)
+			diskCache.setMaxSize(maxSize);
+	}
+
+	/**
+	 * Sets the minimum length of message data which is memory-mapped when a
+	 * response is read from the disk cache, rather than copied onto the heap.
+	 * Mapping is disabled by default.
+	 * 
+	 * @param mapThreshold
+	 *            the minimum length in bytes, or zero or less to disable
+	 *            mapping
+	 */
+	public synchronized void setMapThreshold(long mapThreshold) {
+		mMapThreshold = mapThreshold;
+		if (mDiskCache != null)
+			mDiskCache.setMapThreshold(mapThreshold);
+	}
+
+	/**
+	 * Returns the cached {@link RestResponse} for the given request, whether
+	 * it is fresh or stale. Use {@link RestResponse#isFresh()} to determine if
+	 * the response must be revalidated before it is served.
+	 * 
+	 * @param request
+	 *            the request to retrieve the cached response for
+	 * @return cached {@code RestResponse} or {@code null} if there is none
+	 */
+	public RestResponse lookup(HashableHttpRequest request) {
+		RestResponse response = mMemoryCache.get(request);
+		if (response == null)
+			response = lookupOnDisk(request);
+		if (response == null)
+			mMissCount.incrementAndGet();
+		else
+			mHitCount.incrementAndGet();
 		return response;
 	}
 
-	@Override
-	protected void writeValueToDisk(File file, RestResponse data) throws IOException {
-		BufferedOutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
-		outputStream.write(data.getStatusCode());
-		byte[] headerData = getHeaderData(data.getHeaders());
-		outputStream.write(headerData.length);
-		outputStream.write(headerData);
-		outputStream.write(data.getResponseData());
-		outputStream.close();
-	}
-
-	private String getFileNameFromUri(HashableHttpRequest request) {
-		// replace all special URI characters with a single y symbol
-		String uri =  request.getRequestUri().toLowerCase(Locale.getDefault());
-		if (uri.startsWith("http://"))
-			uri = uri.substring(7);
-		else if (uri.startsWith("https://"))
-			uri = uri.substring(8);
-		String formatted = request.getHttpMethod() + '_' + uri;
-		return formatted.replaceAll("[.:/,%?&=]", "_").replaceAll("[+]+", "_");
-	}
-
-	private byte[] getHeaderData(Map<String, String> headers) {
-		StringBuilder sb = new StringBuilder();
-		String prefix = "";
-		for (Entry<String, String> header : headers.entrySet()) {
-			sb.append(prefix).append(header.getKey()).append('\n').append(header.getValue());
-			prefix = "\n";
+	/**
+	 * Stores the given {@link RestResponse} for the given request. The
+	 * response is retained until its expiration. Responses which carry
+	 * validators are retained beyond their expiration so that they can be
+	 * conditionally revalidated rather than fetched again in full.
+	 * 
+	 * @param request
+	 *            the request to cache the response for
+	 * @param response
+	 *            the response to cache
+	 */
+	public void store(HashableHttpRequest request, RestResponse response) {
+		store(request, response, 0);
+	}
+
+	/**
+	 * Stores the given {@link RestResponse} for the given request, retaining
+	 * it for at least the given number of seconds after its expiration so
+	 * that it can be served stale. Responses which carry validators are
+	 * retained for the longer of this period and the revalidation retention.
+	 * 
+	 * @param request
+	 *            the request to cache the response for
+	 * @param response
+	 *            the response to cache
+	 * @param staleRetention
+	 *            the number of seconds to retain the response once it is
+	 *            stale
+	 */
+	public void store(HashableHttpRequest request, RestResponse response, long staleRetention) {
+		long retainUntil = getRetainUntil(response, staleRetention);
+		if (retainUntil == 0)
+			return;
+		response.setCacheEntry(getCanonicalKey(request), mVersion.incrementAndGet());
+		mMemoryCache.put(request, response, retainUntil);
+		storeOnDisk(request, response, retainUntil);
+	}
+
+	/**
+	 * Returns an {@link InputStream} which reads the message data of the given
+	 * streamed {@link RestResponse} from the given stream and stores the
+	 * response for the given request once the stream has been read to its
+	 * end. The message data is spooled to disk as it is read, and the stored
+	 * response is only written to the disk tier, from which it is read back
+	 * on the next lookup. The response is not stored if the stream is closed
+	 * before it has been read completely, if its message data exceeds the
+	 * maximum size of the disk cache or if the disk cache is not enabled, in
+	 * which case the given stream is returned.
+	 * 
+	 * @param request
+	 *            the request to cache the response for
+	 * @param response
+	 *            the streamed response to cache, whose expiration has been
+	 *            set
+	 * @param in
+	 *            the {@code InputStream} to read the message data from
+	 * @param staleRetention
+	 *            the number of seconds to retain the response once it is
+	 *            stale
+	 * @return {@code InputStream} to read the message data from instead of
+	 *         {@code in}
+	 */
+	public InputStream storeStream(HashableHttpRequest request, RestResponse response, InputStream in,
+			long staleRetention) {
+		ResponseDiskCache diskCache = mDiskCache;
+		if (diskCache == null)
+			return in;
+		try {
+			File spoolFile = diskCache.createSpoolFile();
+			return new SpoolingInputStream(in, spoolFile, diskCache.getMaxSize(), request, response, staleRetention);
+		} catch (IOException e) {
+			mLogger.debug("Unable to spool response for " + request + " (" + e.getMessage() + ")");
+			return in;
 		}
-		return sb.toString().getBytes();
 	}
-	
+
+	/**
+	 * Removes the cached {@link RestResponse} for the given request from
+	 * memory and from disk.
+	 * 
+	 * @param request
+	 *            the request to remove the cached response for
+	 * @return the {@code RestResponse} removed from memory or {@code null} if
+	 *         it was not held in memory
+	 */
+	public RestResponse remove(HashableHttpRequest request) {
+		RestResponse removed = mMemoryCache.remove(request);
+		ResponseDiskCache diskCache = mDiskCache;
+		if (diskCache == null)
+			return removed;
+		String fileName = getFileName(getCanonicalKey(request));
+		mDiskWriter.cancel(fileName);
+		diskCache.remove(fileName);
+		return removed;
+	}
+
+	/**
+	 * Returns the cached {@link RestResponse} for the given request.
+	 * 
+	 * @param request
+	 *            the {@link HashableHttpRequest} to retrieve the cached
+	 *            response for
+	 * @return cached {@code RestResponse} or {@code null} if there is none
+	 * @deprecated use {@link #lookup(HashableHttpRequest)}
+	 */
+	@Deprecated
+	public RestResponse get(Object request) {
+		if (!(request instanceof HashableHttpRequest))
+			return null;
+		return lookup((HashableHttpRequest) request);
+	}
+
+	/**
+	 * Stores the given {@link RestResponse} for the given request. Responses
+	 * without an expiration expire after the default expiration timeout, if
+	 * one was given.
+	 * 
+	 * @param request
+	 *            the request to cache the response for
+	 * @param response
+	 *            the response to cache
+	 * @return the {@code RestResponse} previously held in memory for the
+	 *         request or {@code null} if there was none
+	 * @deprecated use {@link #store(HashableHttpRequest, RestResponse)}
+	 */
+	@Deprecated
+	public RestResponse put(HashableHttpRequest request, RestResponse response) {
+		if (response.getExpiration() == 0 && mDefaultExpiration > 0)
+			response.setExpiration(System.currentTimeMillis() + mDefaultExpiration * 1000);
+		RestResponse previous = mMemoryCache.remove(request);
+		store(request, response);
+		return previous;
+	}
+
+	/**
+	 * Indicates whether a response is cached for the given request.
+	 * 
+	 * @param request
+	 *            the {@link HashableHttpRequest} to check
+	 * @return {@code true} if a response is cached, {@code false} if not
+	 * @deprecated use {@link #lookup(HashableHttpRequest)}
+	 */
+	@Deprecated
+	public boolean containsKey(Object request) {
+		return get(request) != null;
+	}
+
+	/**
+	 * Removes all cached responses from memory and from disk.
+	 */
+	public void clear() {
+		mMemoryCache.clear();
+		ResponseDiskCache diskCache = mDiskCache;
+		if (diskCache == null)
+			return;
+		mDiskWriter.cancelAll();
+		diskCache.clear();
+	}
+
+	/**
+	 * Sets the maximum total size of the message data of responses held in
+	 * memory, evicting responses if necessary. The default is one sixteenth of
+	 * the maximum heap size.
+	 * 
+	 * @param maxSize
+	 *            the maximum size in bytes
+	 */
+	public void setMaxMemorySize(long maxSize) {
+		mMemoryCache.setMaxSize(maxSize);
+	}
+
+	/**
+	 * Returns the total size of the message data of responses held in memory.
+	 * 
+	 * @return size in bytes
+	 */
+	public long getMemorySize() {
+		return mMemoryCache.getSize();
+	}
+
+	/**
+	 * Returns the number of lookups which found a cached response, either in
+	 * memory or on disk.
+	 * 
+	 * @return number of hits
+	 */
+	public long getHitCount() {
+		return mHitCount.get();
+	}
+
+	/**
+	 * Returns the number of lookups which found a cached response on disk
+	 * after it had been evicted from memory.
+	 * 
+	 * @return number of disk hits
+	 */
+	public long getDiskHitCount() {
+		return mDiskHitCount.get();
+	}
+
+	/**
+	 * Returns the number of lookups which did not find a cached response.
+	 * 
+	 * @return number of misses
+	 */
+	public long getMissCount() {
+		return mMissCount.get();
+	}
+
+	/**
+	 * Returns the ratio of lookups which found a cached response, either in
+	 * memory or on disk.
+	 * 
+	 * @return hit ratio between 0 and 1
+	 */
+	public double getHitRatio() {
+		long hits = mHitCount.get();
+		long requests = hits + mMissCount.get();
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	/**
+	 * Returns the ratio of lookups which found a cached response in memory.
+	 * 
+	 * @return memory hit ratio between 0 and 1
+	 */
+	public double getMemoryHitRatio() {
+		return mMemoryCache.getHitRatio();
+	}
+
+	/**
+	 * Sets the number of seconds a response which carries validators is
+	 * retained after it becomes stale, allowing it to be revalidated. The
+	 * default is one day.
+	 * 
+	 * @param retention
+	 *            the retention period in seconds
+	 */
+	public void setRevalidationRetention(long retention) {
+		mRevalidationRetention = retention;
+	}
+
+	private RestResponse lookupOnDisk(HashableHttpRequest request) {
+		ResponseDiskCache diskCache = mDiskCache;
+		if (diskCache == null)
+			return null;
+		String key = getCanonicalKey(request);
+		String fileName = getFileName(key);
+		ResponseRecord record = mDiskWriter.getPending(fileName);
+		if (record == null)
+			record = diskCache.get(fileName);
+		if (record == null || !key.equals(record.getKey()))
+			return null;
+		RestResponse response = record.getResponse();
+		// Versions are not persisted, so a response read back from disk is
+		// given a new version
+		if (response.getCacheVersion() == 0)
+			response.setCacheEntry(key, mVersion.incrementAndGet());
+		mMemoryCache.put(request, response, record.getRetainUntil());
+		mDiskHitCount.incrementAndGet();
+		return response;
+	}
+
+	private long getRetainUntil(RestResponse response, long staleRetention) {
+		long retention = (response.getExpiration() - System.currentTimeMillis()) / 1000;
+		if (response.hasValidators())
+			staleRetention = Math.max(staleRetention, mRevalidationRetention);
+		if (staleRetention > 0)
+			retention = Math.max(retention, 0) + staleRetention;
+		if (retention <= 0)
+			return 0;
+		return System.currentTimeMillis() + retention * 1000;
+	}
+
+	private void storeSpooled(HashableHttpRequest request, RestResponse response, File spoolFile, long staleRetention)
+			throws IOException {
+		long retainUntil = getRetainUntil(response, staleRetention);
+		if (retainUntil == 0)
+			return;
+		RestResponse spooled = new RestResponse();
+		spooled.setStatusCode(response.getStatusCode());
+		spooled.setHeaders(new HashMap<String, String>(response.getHeaders()));
+		spooled.setExpiration(response.getExpiration());
+		spooled.setContentEncoding(response.getContentEncoding());
+		FileInputStream in = new FileInputStream(spoolFile);
+		try {
+			spooled.setResponseBuffer(in.getChannel().map(MapMode.READ_ONLY, 0, spoolFile.length()));
+		} finally {
+			in.close();
+		}
+		spooled.setCacheEntry(getCanonicalKey(request), mVersion.incrementAndGet());
+		// Any copy of the previous response in memory is now outdated
+		mMemoryCache.remove(request);
+		storeOnDisk(request, spooled, retainUntil);
+	}
+
+	private void storeOnDisk(HashableHttpRequest request, RestResponse response, long retainUntil) {
+		ResponseDiskCache diskCache = mDiskCache;
+		if (diskCache == null)
+			return;
+		String key = getCanonicalKey(request);
+		ResponseRecord record = new ResponseRecord(key, response, retainUntil);
+		if (mIsWriteBehindEnabled)
+			mDiskWriter.enqueue(getFileName(key), record);
+		else
+			diskCache.put(getFileName(key), record);
+	}
+
+	private String getCanonicalKey(HashableHttpRequest request) {
+		String key = request.getCacheKey();
+		return key != null ? key : request.getHttpMethod() + ' ' + request.getRequestUri();
+	}
+
+	private String getFileName(String key) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new InfinitumRuntimeException("Unable to compute cache file name", e);
+		}
+		byte[] hash;
+		try {
+			hash = digest.digest(key.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new InfinitumRuntimeException("Unable to compute cache file name", e);
+		}
+		char[] name = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			name[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0x0F];
+			name[i * 2 + 1] = HEX_DIGITS[hash[i] & 0x0F];
+		}
+		return new String(name);
+	}
+
+	/**
+	 * {@link FilterInputStream} which copies the message data of a streamed
+	 * response to a spool file as it is read and stores the response once the
+	 * end of the stream is reached.
+	 */
+	private class SpoolingInputStream extends FilterInputStream {
+
+		private File mSpoolFile;
+		private OutputStream mSpool;
+		private long mMaxLength;
+		private long mLength;
+		private HashableHttpRequest mRequest;
+		private RestResponse mResponse;
+		private long mStaleRetention;
+
+		public SpoolingInputStream(InputStream in, File spoolFile, long maxLength, HashableHttpRequest request,
+				RestResponse response, long staleRetention) throws IOException {
+			super(in);
+			mSpoolFile = spoolFile;
+			mSpool = new BufferedOutputStream(new FileOutputStream(spoolFile));
+			mMaxLength = maxLength;
+			mRequest = request;
+			mResponse = response;
+			mStaleRetention = staleRetention;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b < 0)
+				complete();
+			else
+				spool(new byte[] { (byte) b }, 0, 1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read < 0)
+				complete();
+			else
+				spool(b, off, read);
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// Skipped bytes must be read so that they are spooled
+			byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+			int read = buffer.length == 0 ? 0 : read(buffer, 0, buffer.length);
+			return Math.max(read, 0);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				abort();
+			}
+		}
+
+		private void spool(byte[] b, int off, int len) {
+			if (mSpool == null)
+				return;
+			mLength += len;
+			if (mLength > mMaxLength) {
+				mLogger.debug("Response for " + mRequest + " is too large to cache");
+				abort();
+				return;
+			}
+			try {
+				mSpool.write(b, off, len);
+			} catch (IOException e) {
+				mLogger.debug("Unable to spool response for " + mRequest + " (" + e.getMessage() + ")");
+				abort();
+			}
+		}
+
+		private void complete() {
+			if (mSpool == null)
+				return;
+			try {
+				mSpool.close();
+				mSpool = null;
+				storeSpooled(mRequest, mResponse, mSpoolFile, mStaleRetention);
+			} catch (IOException e) {
+				mLogger.debug("Unable to cache response for " + mRequest + " (" + e.getMessage() + ")");
+			} finally {
+				abort();
+			}
+		}
+
+		private void abort() {
+			if (mSpool != null) {
+				try {
+					mSpool.close();
+				} catch (IOException e) {
+					// Ignore, the spool file is discarded
+				}
+				mSpool = null;
+			}
+			mSpoolFile.delete();
+		}
+
+	}
+
 }
@@ -16,23 +16,39 @@
 
 package com.clarionmedia.infinitum.web.rest.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
 import org.simpleframework.xml.Serializer;
 import org.simpleframework.xml.core.Persister;
 
 import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
 import com.clarionmedia.infinitum.web.rest.MessageConverter;
+import com.clarionmedia.infinitum.web.rest.TypeToken;
 
 /**
  * <p>
  * Implementation of {@link MessageConverter} which relies on Simple XML to
- * perform object conversions.
+ * perform object conversions. Message data is parsed directly from the
+ * response stream, allowing its encoding to be taken from the XML
+ * declaration, and objects are written as UTF-8 directly to the request
+ * stream.
+ * </p>
+ * <p>
+ * Simple XML binds to classes rather than generic types, so a
+ * {@link TypeToken} is converted using its raw type. The element types of
+ * collections are instead taken from the {@code ElementList} annotations of
+ * the class being read.
  * </p>
  * 
  * @author Tyler Treat
  * @version 1.0 01/01/13
  * @since 1.0
  */
-public class SimpleXmlMessageConverter implements MessageConverter {
+public class SimpleXmlMessageConverter extends AbstractMessageConverter {
 
 	private Serializer mSerializer;
 
@@ -55,12 +71,35 @@ public class SimpleXmlMessageConverter implements MessageConverter {
 	}
 
 	@Override
-	public <T> T convert(Class<T> clazz, RestResponse response) {
+	@SuppressWarnings("unchecked")
+	public <T> T convert(TypeToken<T> type, InputStream messageData) {
 		try {
-			return mSerializer.read(clazz, response.getResponseDataAsString());
+			// The Persister caches the schema of each class it reads
+			return (T) mSerializer.read(type.getRawType(), messageData);
 		} catch (Exception e) {
 			throw new InfinitumRuntimeException("Unable to convert REST response", e);
 		}
 	}
 
+	@Override
+	public void write(Object object, OutputStream messageData) throws IOException {
+		try {
+			mSerializer.write(object, messageData);
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new InfinitumRuntimeException("Unable to write REST request", e);
+		}
+	}
+
+	@Override
+	public String getContentType() {
+		return "application/xml; charset=UTF-8";
+	}
+
+	@Override
+	public List<String> getSupportedMediaTypes() {
+		return Arrays.asList("application/xml", "text/xml");
+	}
+
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.clarionmedia.infinitum.web.rest.MessageConverter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * <p>
+ * Implementation of {@link MessageConverter} which relies on Jackson to
+ * perform object conversions using Smile, a binary encoding of the JSON data
+ * model. Smile refers back to field names and short string values which have
+ * already been written rather than repeating them, which considerably
+ * reduces the size of messages consisting of many similar objects, and is
+ * faster to parse than JSON text. The same model classes are used as for
+ * JSON.
+ * </p>
+ * <p>
+ * Messages are read and written with the media type
+ * {@code application/x-jackson-smile}, which is advertised in the
+ * {@code Accept} header of requests. To fall back to JSON for servers which
+ * do not support Smile, register the converter with a
+ * {@link CompositeMessageConverter} whose default converter reads JSON.
+ * </p>
+ * 
+ * @author Tyler Treat
+ * @version 1.1 06/08/13
+ * @since 1.1
+ */
+public class SmileMessageConverter extends JacksonMessageConverter {
+
+	/**
+	 * The media type of Smile messages.
+	 */
+	public static final String CONTENT_TYPE = "application/x-jackson-smile";
+
+	/**
+	 * Creates a new {@code SmileMessageConverter} instance.
+	 */
+	public SmileMessageConverter() {
+		this(new ObjectMapper(new SmileFactory()));
+	}
+
+	/**
+	 * Creates a new {@code SmileMessageConverter} instance with the given
+	 * {@code ObjectMapper}, which must have been created with a
+	 * {@link SmileFactory}.
+	 * 
+	 * @param mapper
+	 *            the {@code ObjectMapper} to use for conversion
+	 */
+	public SmileMessageConverter(ObjectMapper mapper) {
+		super(mapper, CONTENT_TYPE);
+	}
+
+}
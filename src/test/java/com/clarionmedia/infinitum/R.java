@@ -0,0 +1,3 @@
+package com.clarionmedia.infinitum;
+public final class R {
+}
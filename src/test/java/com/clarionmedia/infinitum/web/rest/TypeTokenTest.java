@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest;
+
+import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.ParameterizedType;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class TypeTokenTest {
+
+    @Test
+    public void testCapturesGenericType() {
+        // Run
+        TypeToken<Map<String, List<Integer>>> actual = new TypeToken<Map<String, List<Integer>>>() {
+        };
+
+        // Verify
+        assertTrue("Type argument should be captured as a parameterized type",
+                actual.getType() instanceof ParameterizedType);
+        ParameterizedType type = (ParameterizedType) actual.getType();
+        assertSame("Raw type should be captured", Map.class, type.getRawType());
+        assertSame("First type argument should be captured", String.class, type.getActualTypeArguments()[0]);
+        assertTrue("Nested type argument should be captured",
+                type.getActualTypeArguments()[1] instanceof ParameterizedType);
+    }
+
+    @Test
+    public void testGetRawTypeOfParameterizedType() {
+        // Run
+        Class<?> actual = new TypeToken<List<String>>() {
+        }.getRawType();
+
+        // Verify
+        assertSame("Raw type of a parameterized type should be its class", List.class, actual);
+    }
+
+    @Test
+    public void testGetRawTypeOfArrayTypes() {
+        // Run
+        Class<?> genericArray = new TypeToken<List<String>[]>() {
+        }.getRawType();
+        Class<?> array = new TypeToken<String[]>() {
+        }.getRawType();
+
+        // Verify
+        assertSame("Raw type of a generic array should be an array of its raw component type", List[].class,
+                genericArray);
+        assertSame("Raw type of an array should be the array class", String[].class, array);
+    }
+
+    @Test
+    public void testEqualsClassToken() {
+        // Setup
+        TypeToken<String> captured = new TypeToken<String>() {
+        };
+
+        // Run
+        TypeToken<String> actual = TypeToken.get(String.class);
+
+        // Verify
+        assertEquals("Tokens for the same type should be equal", captured, actual);
+        assertEquals("Tokens for the same type should have the same hash code", captured.hashCode(),
+                actual.hashCode());
+        assertSame("Raw type of a class token should be the class", String.class, actual.getRawType());
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test(expected = InfinitumRuntimeException.class)
+    public void testMissingTypeArgument() {
+        // Run
+        new TypeToken() {
+        };
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class ByteArrayPoolTest {
+
+    private ByteArrayPool bufferPool;
+
+    @Before
+    public void setup() {
+        bufferPool = new ByteArrayPool(1024, 2);
+    }
+
+    @Test
+    public void testReleasedBufferIsReused() {
+        // Setup
+        byte[] buffer = bufferPool.acquire();
+        bufferPool.release(buffer);
+
+        // Run
+        byte[] actual = bufferPool.acquire();
+
+        // Verify
+        assertSame("Released buffer should be reused", buffer, actual);
+        assertEquals("Reused buffer should not be counted as an allocation", 1, bufferPool.getAllocationCount());
+    }
+
+    @Test
+    public void testPoolRetainsAtMostMaxBuffers() {
+        // Setup
+        byte[][] buffers = { bufferPool.acquire(), bufferPool.acquire(), bufferPool.acquire() };
+        for (byte[] buffer : buffers)
+            bufferPool.release(buffer);
+
+        // Run
+        for (int i = 0; i < 3; i++)
+            bufferPool.acquire();
+
+        // Verify
+        assertEquals("Buffers beyond the pool's capacity should not be retained", 4,
+                bufferPool.getAllocationCount());
+    }
+
+    @Test
+    public void testForeignBufferIsIgnored() {
+        // Setup
+        byte[] foreign = new byte[512];
+        bufferPool.release(foreign);
+
+        // Run
+        byte[] actual = bufferPool.acquire();
+
+        // Verify
+        assertNotSame("Buffer of another size should not be pooled", foreign, actual);
+        assertEquals("Buffer should be the pool's size", 1024, actual.length);
+    }
+
+}
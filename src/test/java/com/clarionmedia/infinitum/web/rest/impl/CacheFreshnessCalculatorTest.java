@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.response;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class CacheFreshnessCalculatorTest {
+
+    private static final long NOW = 1356998400000L; // 01/01/13 00:00:00 GMT
+
+    @Mock
+    private HashableHttpRequest mockRequest;
+
+    private CacheFreshnessCalculator calculator;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(mockRequest.getHttpMethod()).thenReturn("GET");
+        calculator = new CacheFreshnessCalculator();
+    }
+
+    @Test
+    public void testMaxAge() {
+        // Setup
+        RestResponse response = response(200, "Cache-Control", "max-age=60");
+
+        // Run
+        long actual = calculator.computeExpiration(mockRequest, response, NOW, NOW);
+
+        // Verify
+        assertEquals("max-age should be interpreted as seconds", NOW + 60000, actual);
+    }
+
+    @Test
+    public void testExpiresRelativeToDate() {
+        // Setup
+        RestResponse response = response(200, "Date", httpDate(NOW - 5000), "Expires", httpDate(NOW + 55000));
+
+        // Run
+        long actual = calculator.computeExpiration(mockRequest, response, NOW, NOW);
+
+        // Verify
+        assertEquals("Expires should be measured from Date and reduced by the apparent age", NOW + 55000, actual);
+    }
+
+    @Test
+    public void testMaxAgeOverridesExpiresRegardlessOfHeaderOrder() {
+        // Setup
+        RestResponse expiresFirst = response(200, "Expires", httpDate(NOW + 3600000), "Cache-Control", "max-age=60");
+        RestResponse maxAgeFirst = response(200, "Cache-Control", "max-age=60", "Expires", httpDate(NOW + 3600000));
+
+        // Run
+        long expiresFirstActual = calculator.computeExpiration(mockRequest, expiresFirst, NOW, NOW);
+        long maxAgeFirstActual = calculator.computeExpiration(mockRequest, maxAgeFirst, NOW, NOW);
+
+        // Verify
+        assertEquals("max-age should take precedence over Expires", NOW + 60000, expiresFirstActual);
+        assertEquals("max-age should take precedence over Expires", NOW + 60000, maxAgeFirstActual);
+    }
+
+    @Test
+    public void testAgeHeaderReducesFreshness() {
+        // Setup
+        RestResponse response = response(200, "Cache-Control", "max-age=60", "Age", "20");
+
+        // Run
+        long actual = calculator.computeExpiration(mockRequest, response, NOW, NOW);
+
+        // Verify
+        assertEquals("Age should be subtracted from the freshness lifetime", NOW + 40000, actual);
+    }
+
+    @Test
+    public void testResponseDelayCountsTowardAge() {
+        // Setup
+        RestResponse response = response(200, "Cache-Control", "max-age=60");
+
+        // Run
+        long actual = calculator.computeExpiration(mockRequest, response, NOW - 2000, NOW);
+
+        // Verify
+        assertEquals("Network delay should be counted toward the response age", NOW + 58000, actual);
+    }
+
+    @Test
+    public void testSharedMaxAgeIgnoredByPrivateCache() {
+        // Setup
+        RestResponse response = response(200, "Cache-Control", "max-age=60, s-maxage=600");
+
+        // Run
+        long privateActual = calculator.computeExpiration(mockRequest, response, NOW, NOW);
+        calculator.setSharedCache(true);
+        long sharedActual = calculator.computeExpiration(mockRequest, response, NOW, NOW);
+
+        // Verify
+        assertEquals("Private cache should ignore s-maxage", NOW + 60000, privateActual);
+        assertEquals("Shared cache should honor s-maxage", NOW + 600000, sharedActual);
+    }
+
+    @Test
+    public void testPrivateResponse() {
+        // Setup
+        RestResponse response = response(200, "Cache-Control", "private, max-age=60");
+
+        // Run
+        boolean privateActual = calculator.isCacheable(mockRequest, response);
+        calculator.setSharedCache(true);
+        boolean sharedActual = calculator.isCacheable(mockRequest, response);
+
+        // Verify
+        assertTrue("Private cache should store private responses", privateActual);
+        assertFalse("Shared cache should not store private responses", sharedActual);
+    }
+
+    @Test
+    public void testNoStore() {
+        // Setup
+        RestResponse response = response(200, "Cache-Control", "no-store, max-age=60");
+
+        // Run
+        long actual = calculator.computeExpiration(mockRequest, response, NOW, NOW);
+
+        // Verify
+        assertEquals("no-store responses should not be cacheable", -1, actual);
+    }
+
+    @Test
+    public void testNoCacheIsStoredButStale() {
+        // Setup
+        RestResponse response = response(200, "Cache-Control", "no-cache, max-age=60", "ETag", "\"abc\"");
+
+        // Run
+        long actual = calculator.computeExpiration(mockRequest, response, NOW, NOW);
+
+        // Verify
+        assertEquals("no-cache responses should be stored but immediately stale", NOW, actual);
+    }
+
+    @Test
+    public void testPragmaNoCache() {
+        // Setup
+        RestResponse response = response(200, "Pragma", "no-cache", "Expires", httpDate(NOW + 60000));
+
+        // Run
+        long actual = calculator.getFreshnessLifetime(response, NOW);
+
+        // Verify
+        assertEquals("Pragma: no-cache without Cache-Control should be treated as no-cache", 0, actual);
+    }
+
+    @Test
+    public void testMustRevalidateDoesNotPreventCaching() {
+        // Setup
+        RestResponse response = response(200, "Cache-Control", "max-age=60, must-revalidate");
+
+        // Run
+        long actual = calculator.computeExpiration(mockRequest, response, NOW, NOW);
+
+        // Verify
+        assertEquals("must-revalidate responses should be fresh for max-age", NOW + 60000, actual);
+        assertTrue("must-revalidate should be reported", calculator.mustRevalidate(response));
+    }
+
+    @Test
+    public void testPostIsNotCacheable() {
+        // Setup
+        when(mockRequest.getHttpMethod()).thenReturn("POST");
+        RestResponse response = response(200, "Cache-Control", "max-age=60");
+
+        // Run
+        boolean actual = calculator.isCacheable(mockRequest, response);
+
+        // Verify
+        assertFalse("POST responses should not be cacheable", actual);
+    }
+
+    @Test
+    public void testServerErrorRequiresExplicitFreshness() {
+        // Setup
+        RestResponse implicit = response(503, "Last-Modified", httpDate(NOW - 3600000));
+        RestResponse explicit = response(503, "Cache-Control", "max-age=5");
+
+        // Run
+        boolean implicitActual = calculator.isCacheable(mockRequest, implicit);
+        boolean explicitActual = calculator.isCacheable(mockRequest, explicit);
+
+        // Verify
+        assertFalse("503 without explicit freshness should not be cacheable", implicitActual);
+        assertTrue("503 with explicit freshness should be cacheable", explicitActual);
+    }
+
+    @Test
+    public void testHeuristicFreshness() {
+        // Setup
+        RestResponse response = response(200, "Date", httpDate(NOW), "Last-Modified", httpDate(NOW - 1000000));
+
+        // Run
+        long actual = calculator.computeExpiration(mockRequest, response, NOW, NOW);
+
+        // Verify
+        assertEquals("Heuristic freshness should be 10% of the time since last modification", NOW + 100000, actual);
+    }
+
+    @Test
+    public void testInvalidExpiresIsExpired() {
+        // Setup
+        RestResponse response = response(200, "Expires", "0");
+
+        // Run
+        long actual = calculator.getFreshnessLifetime(response, NOW);
+
+        // Verify
+        assertEquals("Invalid Expires values should be treated as already expired", 0, actual);
+    }
+
+    @Test
+    public void testVaryStarIsNotCacheable() {
+        // Setup
+        RestResponse response = response(200, "Cache-Control", "max-age=60", "Vary", "*");
+
+        // Run
+        boolean actual = calculator.isCacheable(mockRequest, response);
+
+        // Verify
+        assertFalse("Vary: * responses should not be cacheable", actual);
+    }
+
+    @Test
+    public void testStaleWhileRevalidateDirective() {
+        // Setup
+        RestResponse response = response(200, "Cache-Control", "max-age=60, stale-while-revalidate=30");
+
+        // Run
+        long actual = calculator.getDirectiveSeconds(response, "stale-while-revalidate");
+
+        // Verify
+        assertEquals("Directive value should be returned in seconds", 30, actual);
+        assertEquals("Missing directives should return -1", -1, calculator.getDirectiveSeconds(response, "stale-if-error"));
+    }
+
+    @Test
+    public void testMaxAgeOverflowIsClamped() {
+        // Setup
+        RestResponse response = response(200, "Cache-Control", "max-age=9223372036854775807");
+        RestResponse unparseable = response(200, "Cache-Control", "max-age=99999999999999999999");
+
+        // Run
+        long actual = calculator.getFreshnessLifetime(response, NOW);
+        long actualUnparseable = calculator.getFreshnessLifetime(unparseable, NOW);
+
+        // Verify
+        assertEquals("max-age should be clamped to 2^31 seconds", 2147483648000L, actual);
+        assertEquals("max-age too large for a long should be clamped to 2^31 seconds", 2147483648000L,
+                actualUnparseable);
+    }
+
+    @Test
+    public void testRequestRequiresRevalidation() {
+        // Verify
+        assertTrue("Request no-cache should require revalidation",
+                calculator.requiresRevalidation(requestWith("Cache-Control", "no-cache")));
+        assertTrue("Request max-age=0 should require revalidation",
+                calculator.requiresRevalidation(requestWith("Cache-Control", "max-age=0")));
+        assertTrue("Request Pragma no-cache should require revalidation",
+                calculator.requiresRevalidation(requestWith("Pragma", "no-cache")));
+        assertFalse("Request max-age above zero should not require revalidation",
+                calculator.requiresRevalidation(requestWith("Cache-Control", "max-age=60")));
+        assertFalse("Request without directives should not require revalidation",
+                calculator.requiresRevalidation(requestWith("Accept", "application/json")));
+    }
+
+    private HashableHttpRequest requestWith(String header, String value) {
+        HashableHttpRequest request = mock(HashableHttpRequest.class);
+        when(request.getHeader(anyString())).thenReturn("");
+        when(request.getHeader(header)).thenReturn(value);
+        return request;
+    }
+
+    private String httpDate(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(time));
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.clarionmedia.infinitum.context.impl.XmlApplicationContext;
+import com.clarionmedia.infinitum.context.impl.XmlContextFactory;
+import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.RequestWrapper;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Requests, responses and environment shared by the response cache tests.
+ */
+final class CacheTestFixtures {
+
+    private CacheTestFixtures() {
+    }
+
+    /**
+     * Installs a mock Infinitum context so that classes which log through
+     * {@code SmartLogger} can run outside of an application.
+     */
+    static void configureContext() throws Exception {
+        Field context = XmlContextFactory.class.getDeclaredField("sInfinitumContext");
+        context.setAccessible(true);
+        context.set(null, mock(XmlApplicationContext.class));
+    }
+
+    /**
+     * Returns a GET request for the given URI, keyed by its method and URI.
+     */
+    static HashableHttpRequest request(String uri) throws Exception {
+        return request(uri, "GET " + uri);
+    }
+
+    static HashableHttpRequest request(String uri, String cacheKey) throws Exception {
+        return new HashableHttpRequest(new RequestWrapper(new HttpGet(uri))).withCacheKey(cacheKey);
+    }
+
+    /**
+     * Returns a response with the given status code and header name/value
+     * pairs and no message data.
+     */
+    static RestResponse response(int statusCode, String... headers) {
+        RestResponse response = new RestResponse();
+        response.setStatusCode(statusCode);
+        Map<String, String> headerMap = new LinkedHashMap<String, String>();
+        for (int i = 0; i < headers.length; i += 2)
+            headerMap.put(headers[i], headers[i + 1]);
+        response.setHeaders(headerMap);
+        return response;
+    }
+
+    static RestResponse response(String data) {
+        RestResponse response = response(200);
+        response.setResponseDataAsString(data);
+        return response;
+    }
+
+    static RestResponse responseOfSize(int size) {
+        RestResponse response = response(200);
+        response.setResponseData(new byte[size]);
+        return response;
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files)
+                delete(child);
+        }
+        file.delete();
+    }
+
+}
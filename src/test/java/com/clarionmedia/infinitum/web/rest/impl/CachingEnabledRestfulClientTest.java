@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.clarionmedia.infinitum.web.rest.ResponseCallback;
+import com.xtremelabs.robolectric.Robolectric;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.configureContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class CachingEnabledRestfulClientTest {
+
+    private static final String URI = "http://example.com/resource";
+
+    @Mock
+    private HttpClient mockHttpClient;
+
+    private CachingEnabledRestfulClient restClient;
+    private AtomicInteger requestCount;
+    private CountDownLatch executing;
+    private CountDownLatch released;
+    private volatile boolean blocking;
+
+    @Before
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        configureContext();
+        restClient = new CachingEnabledRestfulClient(Robolectric.application) {
+            @Override
+            protected HttpClient getHttpClient() {
+                return mockHttpClient;
+            }
+        };
+        requestCount = new AtomicInteger();
+        executing = new CountDownLatch(1);
+        released = new CountDownLatch(1);
+    }
+
+    @After
+    public void teardown() {
+        released.countDown();
+        restClient.shutdown();
+        restClient.clearCache();
+    }
+
+    @Test
+    public void testCancelAbortsInFlightRequest() throws Exception {
+        // Setup
+        final AtomicReference<HttpUriRequest> sent = new AtomicReference<HttpUriRequest>();
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenAnswer(new Answer<HttpResponse>() {
+            @Override
+            public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+                sent.set((HttpUriRequest) invocation.getArguments()[0]);
+                executing.countDown();
+                // Blocks like a request waiting for the server until it is
+                // aborted
+                while (!sent.get().isAborted())
+                    Thread.sleep(5);
+                throw new IOException("Request aborted");
+            }
+        });
+        Future<RestResponse> future = restClient.executeGetAsync(URI);
+        executing.await();
+
+        // Run
+        boolean cancelled = future.cancel(true);
+
+        // Verify
+        assertTrue("In-flight request should be cancelled", cancelled);
+        assertTrue("Future should report cancellation", future.isCancelled());
+        assertTrue("Cancelling the future should abort the HTTP request", sent.get().isAborted());
+    }
+
+    @Test
+    public void testCallbackReceivesResponse() throws Exception {
+        // Setup
+        respond(200, "data");
+        RecordingCallback callback = new RecordingCallback();
+
+        // Run
+        Future<RestResponse> future = restClient.executeGetAsync(URI, callback);
+        callback.await();
+
+        // Verify
+        assertEquals("Callback should receive the response", "data", callback.result.getResponseDataAsString());
+        assertSame("Callback should receive the future's result", future.get(), callback.result);
+        assertNull("Callback should not receive a failure", callback.error);
+    }
+
+    @Test
+    public void testCallbackReceivesFailure() throws Exception {
+        // Setup
+        final RuntimeException failure = new IllegalStateException("Connection pool shut down");
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenThrow(failure);
+        RecordingCallback callback = new RecordingCallback();
+
+        // Run
+        restClient.executeGetAsync(URI, callback);
+        callback.await();
+
+        // Verify
+        assertSame("Callback should receive the failure", failure, callback.error);
+        assertNull("Callback should not receive a result", callback.result);
+    }
+
+    @Test
+    public void testShutdownCancelsQueuedRequests() throws Exception {
+        // Setup
+        restClient.setAsyncPoolSize(1);
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenAnswer(new Answer<HttpResponse>() {
+            @Override
+            public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+                executing.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted");
+                }
+                return response(200, "data");
+            }
+        });
+        Future<RestResponse> running = restClient.executeGetAsync(URI);
+        executing.await();
+        Future<RestResponse> queued = restClient.executeGetAsync(URI + "?queued");
+
+        // Run
+        restClient.shutdown();
+
+        // Verify
+        assertTrue("Queued request should be cancelled", queued.isCancelled());
+        assertNull("Running request should be interrupted", running.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStaleHitReturnsWhileRefreshing() throws Exception {
+        // Setup
+        respond(200, "data", "Cache-Control", "max-age=0, stale-while-revalidate=60");
+        restClient.executeGet(URI);
+        blocking = true;
+
+        // Run
+        RestResponse actual = restClient.executeGet(URI);
+
+        // Verify
+        assertTrue("Stale response should be returned while it is refreshed", actual.isStale());
+        assertEquals("Stale response should carry the cached data", "data", actual.getResponseDataAsString());
+        assertTrue("Response should be refreshed in the background", executing.await(5, TimeUnit.SECONDS));
+        released.countDown();
+        awaitRefreshes(1);
+    }
+
+    @Test
+    public void testConcurrentRefreshesAreDeduplicated() throws Exception {
+        // Setup
+        respond(200, "data", "Cache-Control", "max-age=0, stale-while-revalidate=60");
+        restClient.executeGet(URI);
+        blocking = true;
+        restClient.executeGet(URI);
+        executing.await();
+
+        // Run
+        for (int i = 0; i < 3; i++)
+            restClient.executeGet(URI);
+        released.countDown();
+        awaitRefreshes(1);
+
+        // Verify
+        assertEquals("Only one refresh should be sent while one is pending", 2, requestCount.get());
+    }
+
+    @Test
+    public void testRejectedRefreshClearsPendingMarker() throws Exception {
+        // Setup
+        respond(200, "data", "Cache-Control", "max-age=0, stale-while-revalidate=60");
+        // Enough requests to occupy the refresh threads and fill their queue
+        int refreshCapacity = CachingEnabledRestfulClient.DEFAULT_REFRESH_POOL_SIZE
+                + CachingEnabledRestfulClient.DEFAULT_REFRESH_QUEUE_SIZE;
+        for (int i = 0; i <= refreshCapacity; i++)
+            restClient.executeGet(URI + "?id=" + i);
+        blocking = true;
+        for (int i = 0; i < refreshCapacity; i++)
+            restClient.executeGet(URI + "?id=" + i);
+
+        // Run
+        RestResponse rejected = restClient.executeGet(URI + "?id=" + refreshCapacity);
+        blocking = false;
+        released.countDown();
+        awaitRefreshes(refreshCapacity);
+        int sent = requestCount.get();
+        restClient.executeGet(URI + "?id=" + refreshCapacity);
+        awaitRefreshes(refreshCapacity + 1);
+
+        // Verify
+        assertTrue("Stale response should be returned when its refresh is rejected", rejected.isStale());
+        assertEquals("Request whose refresh was rejected should be refreshed again", sent + 1,
+                requestCount.get());
+    }
+
+    @Test
+    public void testRequestNoCacheBypassesFreshResponse() throws Exception {
+        // Setup
+        respond(200, "data", "Cache-Control", "max-age=60");
+        restClient.executeGet(URI);
+
+        // Run
+        RestResponse cached = restClient.executeGet(URI);
+        RestResponse revalidated = restClient.executeGet(URI, Collections.singletonMap("Cache-Control", "no-cache"));
+
+        // Verify
+        assertEquals("Fresh response should be served from the cache", "data", cached.getResponseDataAsString());
+        assertEquals("Request with no-cache should be sent to the server", 2, requestCount.get());
+        assertEquals("Response to a no-cache request should be returned", "data",
+                revalidated.getResponseDataAsString());
+    }
+
+    @Test
+    public void testStaleIfErrorOnServerError() throws Exception {
+        // Setup
+        restClient.setStaleWhileRevalidateEnabled(false);
+        respond(200, "data", "Cache-Control", "max-age=0, stale-if-error=60");
+        restClient.executeGet(URI);
+        respond(503, "unavailable");
+
+        // Run
+        RestResponse actual = restClient.executeGet(URI);
+
+        // Verify
+        assertEquals("Cached response should be served on a server error", 200, actual.getStatusCode());
+        assertEquals("Cached data should be served on a server error", "data", actual.getResponseDataAsString());
+        assertTrue("Response served on a server error should be stale", actual.isStale());
+    }
+
+    @Test
+    public void testStaleIfErrorOnIOException() throws Exception {
+        // Setup
+        restClient.setStaleWhileRevalidateEnabled(false);
+        respond(200, "data", "Cache-Control", "max-age=0, stale-if-error=60");
+        restClient.executeGet(URI);
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenThrow(new IOException("Connection refused"));
+
+        // Run
+        RestResponse actual = restClient.executeGet(URI);
+
+        // Verify
+        assertEquals("Cached data should be served when the server cannot be reached", "data",
+                actual.getResponseDataAsString());
+        assertTrue("Response served when the server cannot be reached should be stale", actual.isStale());
+    }
+
+    @Test
+    public void testStaleIfErrorWindowExpired() throws Exception {
+        // Setup
+        restClient.setStaleWhileRevalidateEnabled(false);
+        restClient.setStaleIfError(50);
+        respond(200, "data", "Cache-Control", "max-age=0");
+        restClient.executeGet(URI);
+        Thread.sleep(100);
+        respond(503, "unavailable");
+
+        // Run
+        RestResponse actual = restClient.executeGet(URI);
+
+        // Verify
+        assertEquals("Server error should be returned once the stale-if-error window has passed", 503,
+                actual.getStatusCode());
+        assertFalse("Server error should not be marked stale", actual.isStale());
+    }
+
+    @Test
+    public void testChunkedResponseExceedingMaxSizeFails() throws Exception {
+        // Setup
+        restClient.setMaxResponseSize(2 * CachingEnabledRestfulClient.READ_BUFFER_SIZE);
+        final byte[] body = new byte[4 * CachingEnabledRestfulClient.READ_BUFFER_SIZE];
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenAnswer(new Answer<HttpResponse>() {
+            @Override
+            public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+                HttpResponse response = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, null));
+                // A length of -1 is read in chunks as it is unknown
+                response.setEntity(new InputStreamEntity(new ByteArrayInputStream(body), -1));
+                return response;
+            }
+        });
+        restClient.executeGet(URI);
+        long allocations = restClient.mBufferPool.getAllocationCount();
+
+        // Run
+        RestResponse actual = restClient.executeGet(URI);
+
+        // Verify
+        assertNull("Response exceeding the maximum size should not be returned", actual);
+        assertEquals("Read buffers should be returned to the pool when the response is rejected", allocations,
+                restClient.mBufferPool.getAllocationCount());
+    }
+
+    private void awaitRefreshes(int count) throws InterruptedException {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) restClient.getRefreshExecutor();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getCompletedTaskCount() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals("Refreshes should complete", count, executor.getCompletedTaskCount());
+    }
+
+    private void respond(final int statusCode, final String body, final String... headers) throws IOException {
+        when(mockHttpClient.execute(any(HttpUriRequest.class))).thenAnswer(new Answer<HttpResponse>() {
+            @Override
+            public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+                requestCount.incrementAndGet();
+                if (blocking) {
+                    executing.countDown();
+                    released.await();
+                }
+                return response(statusCode, body, headers);
+            }
+        });
+    }
+
+    private HttpResponse response(int statusCode, String body, String... headers) throws IOException {
+        HttpResponse response = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, null));
+        for (int i = 0; i < headers.length; i += 2)
+            response.addHeader(headers[i], headers[i + 1]);
+        response.setEntity(new StringEntity(body, "UTF-8"));
+        return response;
+    }
+
+    private static class RecordingCallback implements ResponseCallback<RestResponse> {
+
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile RestResponse result;
+        private volatile Throwable error;
+
+        @Override
+        public void onSuccess(RestResponse result) {
+            this.result = result;
+            completed.countDown();
+        }
+
+        @Override
+        public void onFailure(Throwable error) {
+            this.error = error;
+            completed.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Callback should be notified", completed.await(5, TimeUnit.SECONDS));
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class CachingEnabledRestfulMappingClientTest {
+
+    @Test
+    public void testAcceptHeaderQualityValues() {
+        // Setup
+        CompositeMessageConverter converter = new CompositeMessageConverter(new JacksonMessageConverter())
+                .addConverter(new SmileMessageConverter());
+
+        // Run
+        String actual = CachingEnabledRestfulMappingClient.getAcceptHeader(converter);
+
+        // Verify
+        assertEquals("Less preferred media types should have descending quality values",
+                "application/x-jackson-smile, application/json;q=0.9", actual);
+    }
+
+    @Test
+    public void testAcceptHeaderSingleMediaType() {
+        // Run
+        String actual = CachingEnabledRestfulMappingClient.getAcceptHeader(new JacksonMessageConverter());
+
+        // Verify
+        assertEquals("A single media type should not have a quality value", "application/json", actual);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.clarionmedia.infinitum.web.rest.MessageConverter;
+import com.clarionmedia.infinitum.web.rest.TypeToken;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class CompositeMessageConverterTest {
+
+    private MessageConverter defaultConverter;
+    private MessageConverter exactConverter;
+    private MessageConverter suffixConverter;
+    private MessageConverter wildcardConverter;
+    private CompositeMessageConverter compositeConverter;
+
+    @Before
+    public void setup() {
+        defaultConverter = new StubMessageConverter();
+        exactConverter = new StubMessageConverter();
+        suffixConverter = new StubMessageConverter();
+        wildcardConverter = new StubMessageConverter();
+        compositeConverter = new CompositeMessageConverter(defaultConverter);
+        compositeConverter.addConverter(wildcardConverter, "application/*");
+        compositeConverter.addConverter(suffixConverter, "+json");
+        compositeConverter.addConverter(exactConverter, "application/vnd.example+json");
+    }
+
+    @Test
+    public void testGetConverterExactMatch() {
+        // Run
+        MessageConverter actual = compositeConverter.getConverter("application/vnd.example+json");
+
+        // Verify
+        assertSame("Full media type should take precedence over suffix and wildcard", exactConverter, actual);
+    }
+
+    @Test
+    public void testGetConverterSuffixMatch() {
+        // Run
+        MessageConverter actual = compositeConverter.getConverter("application/vnd.other+json");
+
+        // Verify
+        assertSame("Suffix should take precedence over wildcard", suffixConverter, actual);
+    }
+
+    @Test
+    public void testGetConverterWildcardMatch() {
+        // Run
+        MessageConverter actual = compositeConverter.getConverter("application/octet-stream");
+
+        // Verify
+        assertSame("Wildcard should match types without a full or suffix registration", wildcardConverter,
+                actual);
+    }
+
+    @Test
+    public void testGetConverterDefault() {
+        // Verify
+        assertSame("Unregistered media type should use the default converter", defaultConverter,
+                compositeConverter.getConverter("text/plain"));
+        assertSame("Missing Content-Type should use the default converter", defaultConverter,
+                compositeConverter.getConverter(null));
+        assertSame("Malformed media type should use the default converter", defaultConverter,
+                compositeConverter.getConverter("json"));
+    }
+
+    @Test
+    public void testGetConverterIgnoresParametersAndCase() {
+        // Run
+        MessageConverter actual = compositeConverter.getConverter(" Application/VND.Example+JSON ; charset=UTF-8");
+
+        // Verify
+        assertSame("Parameters, case and whitespace should be ignored", exactConverter, actual);
+    }
+
+    private static class StubMessageConverter extends AbstractMessageConverter {
+
+        @Override
+        public <T> T convert(TypeToken<T> type, InputStream messageData) {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContentEncodingTest {
+
+    private byte[] messageData;
+
+    @Before
+    public void setup() throws IOException {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            data.append("{\"id\":").append(i).append('}');
+        messageData = data.toString().getBytes("UTF-8");
+    }
+
+    @Test
+    public void testDecodeGzip() throws IOException {
+        // Setup
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(encoded);
+        out.write(messageData);
+        out.close();
+
+        // Run
+        byte[] actual = readFully(ContentEncoding.decode(new ByteArrayInputStream(encoded.toByteArray()),
+                ContentEncoding.GZIP));
+
+        // Verify
+        assertArrayEquals("gzip data should be decoded", messageData, actual);
+    }
+
+    @Test
+    public void testDecodeZlibDeflate() throws IOException {
+        // Setup
+        byte[] encoded = deflate(new Deflater());
+
+        // Run
+        byte[] actual = readFully(ContentEncoding.decode(new ByteArrayInputStream(encoded),
+                ContentEncoding.DEFLATE));
+
+        // Verify
+        assertArrayEquals("deflate data with a zlib wrapper should be decoded", messageData, actual);
+    }
+
+    @Test
+    public void testDecodeRawDeflate() throws IOException {
+        // Setup
+        byte[] encoded = deflate(new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+        // Run
+        byte[] actual = readFully(ContentEncoding.decode(new ByteArrayInputStream(encoded),
+                ContentEncoding.DEFLATE));
+
+        // Verify
+        assertArrayEquals("deflate data without a zlib wrapper should be decoded", messageData, actual);
+    }
+
+    @Test
+    public void testDecodeEmptyMessage() throws IOException {
+        // Run
+        byte[] actual = readFully(ContentEncoding.decode(new ByteArrayInputStream(new byte[0]),
+                ContentEncoding.GZIP));
+
+        // Verify
+        assertEquals("Empty message should decode to no data", 0, actual.length);
+    }
+
+    @Test
+    public void testDecodeDrainsEncodedStream() throws IOException {
+        // Setup
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(encoded);
+        out.write(messageData);
+        out.close();
+        CountingInputStream received = new CountingInputStream(new ByteArrayInputStream(encoded.toByteArray()));
+
+        // Run
+        readFully(ContentEncoding.decode(received, ContentEncoding.GZIP));
+
+        // Verify
+        assertEquals("Encoded stream should be read to its end", encoded.size(), received.getCount());
+    }
+
+    @Test
+    public void testDecodeIdentity() throws IOException {
+        // Setup
+        InputStream in = new ByteArrayInputStream(messageData);
+
+        // Run
+        InputStream actual = ContentEncoding.decode(in, null);
+
+        // Verify
+        assertSame("Data which is not encoded should not be wrapped", in, actual);
+    }
+
+    @Test
+    public void testGetSupportedEncoding() {
+        // Verify
+        assertEquals("gzip should be supported", ContentEncoding.GZIP, ContentEncoding.getSupportedEncoding("gzip"));
+        assertEquals("x-gzip should be treated as gzip", ContentEncoding.GZIP,
+                ContentEncoding.getSupportedEncoding("x-gzip"));
+        assertEquals("Codings should be matched regardless of case and whitespace", ContentEncoding.DEFLATE,
+                ContentEncoding.getSupportedEncoding(" Deflate "));
+        assertNull("Unsupported codings should not be returned", ContentEncoding.getSupportedEncoding("br"));
+        assertNull("Missing coding should not be returned", ContentEncoding.getSupportedEncoding(null));
+    }
+
+    private byte[] deflate(Deflater deflater) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(encoded, deflater);
+        out.write(messageData);
+        out.close();
+        deflater.end();
+        return encoded.toByteArray();
+    }
+
+    private byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = in.read(buffer)) >= 0)
+            out.write(buffer, 0, read);
+        in.close();
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConvertedObjectCacheTest {
+
+    private static final String KEY = "GET http://example.com/resource";
+
+    private ConvertedObjectCache objectCache;
+
+    @Before
+    public void setup() {
+        objectCache = new ConvertedObjectCache(2);
+    }
+
+    @Test
+    public void testGet() {
+        // Setup
+        Object object = new Object();
+        objectCache.put(KEY, Object.class, 1, object);
+
+        // Run
+        Object actual = objectCache.get(KEY, Object.class, 1);
+
+        // Verify
+        assertSame("Object converted from the same version should be returned", object, actual);
+        assertNull("Object converted to another type should not be returned", objectCache.get(KEY, String.class, 1));
+    }
+
+    @Test
+    public void testNewerVersionInvalidatesObject() {
+        // Setup
+        objectCache.put(KEY, Object.class, 1, new Object());
+
+        // Run
+        Object actual = objectCache.get(KEY, Object.class, 2);
+
+        // Verify
+        assertNull("Object converted from an older version should not be returned", actual);
+        assertEquals("Object converted from an older version should be removed", 0, objectCache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedObjectEvicted() {
+        // Setup
+        Object first = new Object();
+        objectCache.put(KEY + "/1", Object.class, 1, first);
+        objectCache.put(KEY + "/2", Object.class, 1, new Object());
+        objectCache.get(KEY + "/1", Object.class, 1);
+
+        // Run
+        objectCache.put(KEY + "/3", Object.class, 1, new Object());
+
+        // Verify
+        assertEquals("Cache should not exceed its maximum number of entries", 2, objectCache.size());
+        assertSame("Recently used object should be retained", first, objectCache.get(KEY + "/1", Object.class, 1));
+        assertNull("Least recently used object should be evicted", objectCache.get(KEY + "/2", Object.class, 1));
+    }
+
+    @Test
+    public void testPutOfOlderVersionRejected() {
+        // Setup
+        Object newer = new Object();
+        objectCache.put(KEY, Object.class, 2, newer);
+
+        // Run
+        objectCache.put(KEY, Object.class, 1, new Object());
+
+        // Verify
+        assertSame("Object converted from an older version should not replace a newer one", newer,
+                objectCache.get(KEY, Object.class, 2));
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.RequestWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@RunWith(RobolectricTestRunner.class)
+public class DefaultCacheKeyPolicyTest {
+
+    private static final String URI = "http://example.com/resource";
+
+    private DefaultCacheKeyPolicy cacheKeyPolicy;
+
+    @Before
+    public void setup() {
+        cacheKeyPolicy = new DefaultCacheKeyPolicy();
+    }
+
+    @Test
+    public void testAcceptIsPartOfKey() throws Exception {
+        // Setup
+        HashableHttpRequest json = request("application/json");
+        HashableHttpRequest smile = request("application/x-jackson-smile");
+
+        // Run
+        String jsonKey = cacheKeyPolicy.getCacheKey(json, Collections.<String> emptyList());
+        String smileKey = cacheKeyPolicy.getCacheKey(smile, Collections.<String> emptyList());
+
+        // Verify
+        assertFalse("Requests accepting different media types should have different keys", jsonKey.equals(smileKey));
+    }
+
+    @Test
+    public void testKeyWithoutAccept() throws Exception {
+        // Run
+        String actual = cacheKeyPolicy.getCacheKey(request(null), Collections.<String> emptyList());
+
+        // Verify
+        assertEquals("Requests without an Accept header should be keyed by method and URI", "GET " + URI, actual);
+    }
+
+    @Test
+    public void testAcceptNotDuplicatedWhenVaried() throws Exception {
+        // Run
+        String actual = cacheKeyPolicy.getCacheKey(request("application/json"), Collections.singletonList("Accept"));
+
+        // Verify
+        assertEquals("Accept should appear once when the response varies on it",
+                "GET " + URI + "\naccept:application/json", actual);
+    }
+
+    private HashableHttpRequest request(String accept) throws Exception {
+        HttpGet httpGet = new HttpGet(URI);
+        if (accept != null)
+            httpGet.addHeader("Accept", accept);
+        return new HashableHttpRequest(new RequestWrapper(httpGet));
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.clarionmedia.infinitum.web.rest.ResponseIterator;
+import com.clarionmedia.infinitum.web.rest.TypeToken;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.response;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class GsonMessageConverterTest {
+
+    private GsonMessageConverter gsonConverter;
+    private TrackingInputStream messageData;
+    private RestResponse response;
+
+    @Before
+    public void setup() throws Exception {
+        gsonConverter = new GsonMessageConverter();
+        // Trailing data after the array stands in for the rest of the entity
+        messageData = new TrackingInputStream("[1, 2, 3]  \n".getBytes("UTF-8"));
+        response = response(200);
+        response.setResponseStream(messageData);
+    }
+
+    @Test
+    public void testConvertElements() {
+        // Setup
+        List<Integer> actual = new ArrayList<Integer>();
+
+        // Run
+        for (Integer element : gsonConverter.convertElements(TypeToken.get(Integer.class), response))
+            actual.add(element);
+
+        // Verify
+        assertEquals("Elements should be read in order", Arrays.asList(1, 2, 3), actual);
+        assertEquals("Message data should be drained after the last element", 0, messageData.available());
+        assertTrue("Message data should be closed after the last element", messageData.isClosed);
+    }
+
+    @Test
+    public void testCloseAfterFirstElement() {
+        // Setup
+        ResponseIterator<Integer> elements = gsonConverter.convertElements(TypeToken.get(Integer.class), response);
+        Integer first = elements.next();
+
+        // Run
+        elements.close();
+
+        // Verify
+        assertEquals("First element should be read", Integer.valueOf(1), first);
+        assertTrue("Closing the iterator should close the message data", messageData.isClosed);
+        assertFalse("Closed iterator should have no more elements", elements.hasNext());
+    }
+
+    @Test
+    public void testConversionFailureClosesMessageData() throws Exception {
+        // Setup
+        ResponseIterator<Integer> elements = gsonConverter.convertElements(TypeToken.get(Integer.class),
+                streamedResponse("[1, \"two\"]"));
+        elements.next();
+
+        // Run
+        try {
+            elements.next();
+        } catch (RuntimeException e) {
+            // Expected, the element is not a number
+        }
+
+        // Verify
+        assertTrue("Message data should be closed when an element cannot be converted", messageData.isClosed);
+    }
+
+    private RestResponse streamedResponse(String data) throws IOException {
+        messageData = new TrackingInputStream(data.getBytes("UTF-8"));
+        RestResponse streamed = response(200);
+        streamed.setResponseStream(messageData);
+        return streamed;
+    }
+
+    private static class TrackingInputStream extends ByteArrayInputStream {
+
+        private boolean isClosed;
+
+        TrackingInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public void close() throws IOException {
+            isClosed = true;
+            super.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ObjectEntityTest {
+
+    private Map<String, Integer> object;
+    private ObjectEntity objectEntity;
+
+    @Before
+    public void setup() {
+        object = Collections.singletonMap("id", 1);
+        objectEntity = new ObjectEntity(object, new GsonMessageConverter());
+    }
+
+    @Test
+    public void testHeaders() {
+        // Verify
+        assertEquals("Content-Type should be that of the message converter", "application/json",
+                objectEntity.getContentType().getValue());
+        assertTrue("Entity should be sent chunked", objectEntity.isChunked());
+        assertEquals("Content length should be unknown", -1, objectEntity.getContentLength());
+    }
+
+    @Test
+    public void testWriteTo() throws Exception {
+        // Setup
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+
+        // Run
+        objectEntity.writeTo(first);
+        objectEntity.writeTo(second);
+
+        // Verify
+        assertEquals("Object should be serialized by the message converter", "{\"id\":1}", first.toString("UTF-8"));
+        assertTrue("Entity should be repeatable", objectEntity.isRepeatable());
+        assertEquals("Object should be serialized again each time the entity is written", first.toString("UTF-8"),
+                second.toString("UTF-8"));
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.clarionmedia.infinitum.exception.InfinitumRuntimeException;
+import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.request;
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.response;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RequestCoalescerTest {
+
+    private static final String URI = "http://example.com/resource";
+
+    private RequestCoalescer coalescer;
+    private AtomicInteger executions;
+    private CountDownLatch executing;
+    private CountDownLatch released;
+
+    @Before
+    public void setup() {
+        coalescer = new RequestCoalescer();
+        executions = new AtomicInteger();
+        executing = new CountDownLatch(1);
+        released = new CountDownLatch(1);
+    }
+
+    @Test
+    public void testConcurrentIdenticalRequestsExecuteOnce() throws Exception {
+        // Setup
+        RestResponse response = response("data");
+        Caller leader = startLeader(blockingExecution(response, null));
+        List<Caller> followers = startFollowers(4);
+
+        // Run
+        released.countDown();
+        leader.join();
+        for (Caller follower : followers)
+            follower.join();
+
+        // Verify
+        assertEquals("Identical requests should be sent to the network once", 1, executions.get());
+        assertSame("Leader should receive the response", response, leader.result);
+        for (Caller follower : followers)
+            assertSame("Followers should share the leader's response", response, follower.result);
+        assertEquals("Followers should be counted as coalesced", 4, coalescer.getCoalescedCount());
+        assertEquals("No requests should remain in flight", 0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    public void testLeaderExceptionPropagatesToFollowers() throws Exception {
+        // Setup
+        RuntimeException failure = new IllegalStateException("Connection reset");
+        Caller leader = startLeader(blockingExecution(null, failure));
+        List<Caller> followers = startFollowers(2);
+
+        // Run
+        released.countDown();
+        leader.join();
+        for (Caller follower : followers)
+            follower.join();
+
+        // Verify
+        assertSame("Leader should receive its exception", failure, leader.failure);
+        for (Caller follower : followers)
+            assertSame("Followers should receive the leader's exception", failure, follower.failure);
+    }
+
+    @Test
+    public void testAbandonWithWaitersDoesNotCancelThem() throws Exception {
+        // Setup
+        RestResponse response = response("data");
+        Caller leader = startLeader(blockingExecution(response, null));
+        List<Caller> followers = startFollowers(2);
+
+        // Run
+        boolean abandoned = coalescer.abandon(leader.request.unwrap());
+        // A waiting caller whose asynchronous request is cancelled is
+        // interrupted
+        followers.get(0).interrupt();
+        followers.get(0).join();
+        released.countDown();
+        leader.join();
+        followers.get(1).join();
+
+        // Verify
+        assertFalse("Execution should not be abandoned while callers are waiting for it", abandoned);
+        assertSame("Leader should receive the response", response, leader.result);
+        assertSame("Remaining waiter should receive the response", response, followers.get(1).result);
+        assertEquals("Request should be sent to the network once", 1, executions.get());
+    }
+
+    @Test
+    public void testInterruptedWaiterDoesNotReceiveNull() throws Exception {
+        // Setup
+        Caller leader = startLeader(blockingExecution(response("data"), null));
+        Caller follower = startFollowers(1).get(0);
+
+        // Run
+        follower.interrupt();
+        follower.join();
+        released.countDown();
+        leader.join();
+
+        // Verify
+        assertNull("Interrupted waiter should not receive a response", follower.result);
+        assertTrue("Interrupted waiter should receive an exception",
+                follower.failure instanceof InfinitumRuntimeException);
+        assertTrue("Interrupt status should be restored", follower.wasInterrupted);
+    }
+
+    @Test
+    public void testAbandonWithoutWaiters() throws Exception {
+        // Setup
+        Caller leader = startLeader(blockingExecution(response("data"), null));
+
+        // Run
+        boolean abandoned = coalescer.abandon(leader.request.unwrap());
+        RestResponse actual = coalescer.execute(request(URI), execution(response("other")));
+        released.countDown();
+        leader.join();
+
+        // Verify
+        assertTrue("Execution without waiters should be abandoned", abandoned);
+        assertEquals("Caller arriving after abandonment should execute the request again", "other",
+                actual.getResponseDataAsString());
+        assertEquals("Request should be sent to the network again", 2, executions.get());
+    }
+
+    private Caller startLeader(Callable<RestResponse> execution) throws Exception {
+        Caller leader = new Caller(request(URI), execution);
+        leader.start();
+        executing.await();
+        return leader;
+    }
+
+    private List<Caller> startFollowers(int count) throws Exception {
+        List<Caller> followers = new ArrayList<Caller>();
+        for (int i = 0; i < count; i++) {
+            Caller follower = new Caller(request(URI), execution(response("unexpected")));
+            follower.start();
+            followers.add(follower);
+        }
+        // Followers are counted once they wait for the leader's result
+        while (coalescer.getCoalescedCount() < count)
+            Thread.sleep(5);
+        return followers;
+    }
+
+    private Callable<RestResponse> execution(final RestResponse response) {
+        return new Callable<RestResponse>() {
+            @Override
+            public RestResponse call() {
+                executions.incrementAndGet();
+                return response;
+            }
+        };
+    }
+
+    private Callable<RestResponse> blockingExecution(final RestResponse response, final RuntimeException failure) {
+        return new Callable<RestResponse>() {
+            @Override
+            public RestResponse call() throws Exception {
+                executions.incrementAndGet();
+                executing.countDown();
+                released.await();
+                if (failure != null)
+                    throw failure;
+                return response;
+            }
+        };
+    }
+
+    private class Caller extends Thread {
+
+        private final HashableHttpRequest request;
+        private final Callable<RestResponse> execution;
+        private volatile RestResponse result;
+        private volatile RuntimeException failure;
+        private volatile boolean wasInterrupted;
+
+        Caller(HashableHttpRequest request, Callable<RestResponse> execution) {
+            this.request = request;
+            this.execution = execution;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result = coalescer.execute(request, execution);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            wasInterrupted = isInterrupted();
+        }
+
+    }
+
+}
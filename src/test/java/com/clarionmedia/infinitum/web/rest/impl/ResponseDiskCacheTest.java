@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.configureContext;
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.delete;
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.responseOfSize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ResponseDiskCacheTest {
+
+    private static final long MAX_SIZE = 1024 * 1024;
+    private static final long RETAIN_FOREVER = Long.MAX_VALUE;
+
+    private File directory;
+    private ResponseDiskCache diskCache;
+
+    @Before
+    public void setup() throws Exception {
+        configureContext();
+        directory = File.createTempFile("ResponseDiskCacheTest", "");
+        directory.delete();
+        diskCache = new ResponseDiskCache(directory, MAX_SIZE);
+    }
+
+    @After
+    public void teardown() {
+        diskCache.close();
+        delete(directory);
+    }
+
+    @Test
+    public void testJournalReplay() {
+        // Setup
+        diskCache.put("a", record("a", 100));
+        diskCache.put("b", record("b", 200));
+        diskCache.put("c", record("c", 300));
+        diskCache.remove("b");
+        long size = diskCache.getSize();
+        diskCache.close();
+
+        // Run
+        ResponseDiskCache reopened = new ResponseDiskCache(directory, MAX_SIZE);
+
+        // Verify
+        assertTrue("Stored records should be restored from the journal", reopened.contains("a"));
+        assertFalse("Removed records should not be restored from the journal", reopened.contains("b"));
+        assertTrue("Stored records should be restored from the journal", reopened.contains("c"));
+        assertEquals("Size should be restored from the journal", size, reopened.getSize());
+        assertEquals("Restored records should be readable", "a", reopened.get("a").getKey());
+        reopened.close();
+    }
+
+    @Test
+    public void testOpenReadsJournalInBackground() throws Exception {
+        // Setup
+        diskCache.put("a", record("a", 100));
+        diskCache.close();
+        ResponseDiskCache reopened = new ResponseDiskCache(directory, MAX_SIZE);
+
+        // Run
+        reopened.open();
+
+        // Verify
+        assertTrue("Journal read in the background should restore stored records", reopened.contains("a"));
+        reopened.close();
+    }
+
+    @Test
+    public void testJournalReplayRestoresAccessOrder() {
+        // Setup
+        diskCache.put("a", record("a", 100));
+        diskCache.put("b", record("b", 100));
+        diskCache.get("a");
+        long size = diskCache.getSize();
+        diskCache.close();
+        ResponseDiskCache reopened = new ResponseDiskCache(directory, MAX_SIZE);
+
+        // Run
+        reopened.setMaxSize(size - 1);
+
+        // Verify
+        assertTrue("Recently read record should survive eviction after replay", reopened.contains("a"));
+        assertFalse("Least recently used record should be evicted after replay", reopened.contains("b"));
+        reopened.close();
+    }
+
+    @Test
+    public void testJournalReplayDiscardsDirtyRecords() throws IOException {
+        // Setup
+        diskCache.put("a", record("a", 100));
+        diskCache.close();
+        // A write which was interrupted by the process ending leaves a DIRTY
+        // line without a matching CLEAN line
+        Writer journal = new FileWriter(new File(directory, "journal"), true);
+        journal.write("DIRTY a\n");
+        journal.close();
+
+        // Run
+        ResponseDiskCache reopened = new ResponseDiskCache(directory, MAX_SIZE);
+
+        // Verify
+        assertFalse("Dirty record should be discarded", reopened.contains("a"));
+        assertFalse("Dirty file should be deleted", new File(directory, "a").exists());
+        assertEquals("Size should not include dirty records", 0, reopened.getSize());
+        reopened.close();
+    }
+
+    @Test
+    public void testJournalCompaction() throws IOException {
+        // Setup
+        diskCache.put("a", record("a", 10));
+
+        // Run
+        for (int i = 0; i < 3000; i++)
+            diskCache.put("b", record("b", 10));
+
+        // Verify
+        assertTrue("Journal should be compacted once it accumulates redundant lines",
+                countLines(new File(directory, "journal")) < 2000);
+        diskCache.close();
+        ResponseDiskCache reopened = new ResponseDiskCache(directory, MAX_SIZE);
+        assertNotNull("Records should survive compaction", reopened.get("a"));
+        assertNotNull("Records should survive compaction", reopened.get("b"));
+        reopened.close();
+    }
+
+    @Test
+    public void testPutAllWritesJournalOncePerBatch() throws IOException {
+        // Setup
+        Map<String, ResponseRecord> records = new LinkedHashMap<String, ResponseRecord>();
+        records.put("a", record("a", 100));
+        records.put("b", record("b", 100));
+
+        // Run
+        diskCache.putAll(records);
+
+        // Verify
+        List<String> lines = readLines(new File(directory, "journal"));
+        assertEquals("Batch should be marked dirty before its records are committed",
+                Arrays.asList("DIRTY a", "DIRTY b"), lines.subList(4, 6));
+        assertTrue("Batch should be committed after its records are written",
+                lines.get(6).startsWith("CLEAN a ") && lines.get(7).startsWith("CLEAN b "));
+        assertNotNull("Records in a batch should be stored", diskCache.get("a"));
+        assertNotNull("Records in a batch should be stored", diskCache.get("b"));
+    }
+
+    @Test
+    public void testCorruptJournalClearsCache() throws IOException {
+        // Setup
+        diskCache.put("a", record("a", 100));
+        diskCache.close();
+        Writer journal = new FileWriter(new File(directory, "journal"), true);
+        journal.write("BOGUS a\n");
+        journal.close();
+
+        // Run
+        ResponseDiskCache reopened = new ResponseDiskCache(directory, MAX_SIZE);
+
+        // Verify
+        assertNull("Cache should be cleared when the journal is corrupt", reopened.get("a"));
+        assertFalse("Files should be deleted when the journal is corrupt", new File(directory, "a").exists());
+        reopened.close();
+    }
+
+    @Test
+    public void testCorruptMappedRecordRejectedOnFirstRead() throws IOException {
+        // Setup
+        diskCache.put("a", record("a", 100));
+        diskCache.close();
+        corruptMessageData(new File(directory, "a"));
+        ResponseDiskCache reopened = new ResponseDiskCache(directory, MAX_SIZE);
+        reopened.setMapThreshold(1);
+
+        // Run
+        ResponseRecord actual = reopened.get("a");
+
+        // Verify
+        assertNull("Corrupt mapped record should be rejected when it is first read", actual);
+        assertFalse("Corrupt mapped record should be removed", reopened.contains("a"));
+        reopened.close();
+    }
+
+    @Test
+    public void testMappedRecordVerifiedOnce() throws IOException {
+        // Setup
+        diskCache.put("a", record("a", 100));
+        diskCache.close();
+        ResponseDiskCache reopened = new ResponseDiskCache(directory, MAX_SIZE);
+        reopened.setMapThreshold(1);
+        assertNotNull("Intact mapped record should be read", reopened.get("a"));
+        reopened.close();
+        // Damage which is only detectable by the checksum of the message data
+        corruptMessageData(new File(directory, "a"));
+
+        // Run
+        reopened = new ResponseDiskCache(directory, MAX_SIZE);
+        reopened.setMapThreshold(1);
+        ResponseRecord actual = reopened.get("a");
+
+        // Verify
+        List<String> lines = readLines(new File(directory, "journal"));
+        assertTrue("Verification should be recorded in the journal", lines.contains("VERIFIED a"));
+        assertNotNull("Mapped record verified once should not be verified again", actual);
+        reopened.close();
+    }
+
+    @Test
+    public void testRemoveWhileWriting() throws Exception {
+        // Setup
+        diskCache.put("a", record("a", 100));
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch removed = new CountDownLatch(1);
+        Thread writer = putInBackground("a", blockingRecord("a", writing, removed));
+        writing.await();
+
+        // Run
+        diskCache.remove("a");
+        removed.countDown();
+        writer.join();
+
+        // Verify
+        assertFalse("Record removed while being written should not be committed", diskCache.contains("a"));
+        assertNull("Record removed while being written should not be returned", diskCache.get("a"));
+        assertFalse("Record removed while being written should not be on disk", new File(directory, "a").exists());
+        diskCache.close();
+        ResponseDiskCache reopened = new ResponseDiskCache(directory, MAX_SIZE);
+        assertFalse("Record removed while being written should not be restored", reopened.contains("a"));
+        reopened.close();
+    }
+
+    @Test
+    public void testPutWhileWriting() throws Exception {
+        // Setup
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        Thread writer = putInBackground("a", blockingRecord("a", writing, released));
+        writing.await();
+
+        // Run
+        diskCache.put("a", record("b", 200));
+        released.countDown();
+        writer.join();
+
+        // Verify
+        assertEquals("Record stored while another was being written should be written after it", "b",
+                diskCache.get("a").getKey());
+        diskCache.close();
+        ResponseDiskCache reopened = new ResponseDiskCache(directory, MAX_SIZE);
+        assertEquals("Newer record should be restored", "b", reopened.get("a").getKey());
+        reopened.close();
+    }
+
+    @Test
+    public void testCancelWhileWriting() throws Exception {
+        // Setup
+        final ResponseDiskWriter diskWriter = new ResponseDiskWriter(diskCache);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        diskWriter.enqueue("a", blockingRecord("a", writing, released));
+        writing.await();
+
+        // Run
+        Thread canceller = new Thread() {
+            @Override
+            public void run() {
+                diskWriter.cancel("a");
+            }
+        };
+        canceller.start();
+        canceller.join(1000);
+        boolean blocked = canceller.isAlive();
+        released.countDown();
+        canceller.join();
+        diskWriter.shutdown();
+
+        // Verify
+        assertFalse("cancel should not wait for a record which is being written", blocked);
+        assertNull("Record cancelled while being written should be removed once committed", diskCache.get("a"));
+    }
+
+    @Test
+    public void testEnqueueWhenQueueIsFull() throws Exception {
+        // Setup
+        ResponseDiskWriter diskWriter = new ResponseDiskWriter(diskCache, 150);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        diskWriter.enqueue("a", blockingRecord("a", writing, released));
+        writing.await();
+        diskWriter.enqueue("b", record("b", 100));
+
+        // Run
+        diskWriter.enqueue("c", record("c", 100));
+        diskWriter.enqueue("a", record("newer", 100));
+
+        // Verify
+        assertTrue("Record which does not fit in the queue should be written immediately", diskCache.contains("c"));
+        assertFalse("Queued record should wait for the writer", diskCache.contains("b"));
+        released.countDown();
+        diskWriter.shutdown();
+        assertEquals("Record for a name in the current batch should be queued behind it", "newer",
+                diskCache.get("a").getKey());
+        assertNotNull("Queued record should be written", diskCache.get("b"));
+    }
+
+    @Test
+    public void testEnqueueAfterCancelWhileWriting() throws Exception {
+        // Setup
+        ResponseDiskWriter diskWriter = new ResponseDiskWriter(diskCache);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        diskWriter.enqueue("a", blockingRecord("a", writing, released));
+        writing.await();
+
+        // Run
+        diskWriter.cancel("a");
+        diskWriter.enqueue("a", record("b", 100));
+        released.countDown();
+        diskWriter.shutdown();
+
+        // Verify
+        assertEquals("Record queued after a cancellation should be written", "b", diskCache.get("a").getKey());
+    }
+
+    private ResponseRecord record(String key, int size) {
+        return new ResponseRecord(key, responseOfSize(size), RETAIN_FOREVER);
+    }
+
+    private ResponseRecord blockingRecord(String key, final CountDownLatch writing, final CountDownLatch release) {
+        return new ResponseRecord(key, responseOfSize(100), RETAIN_FOREVER) {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted");
+                }
+                super.writeTo(out);
+            }
+        };
+    }
+
+    private Thread putInBackground(final String name, final ResponseRecord record) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                diskCache.put(name, record);
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private void corruptMessageData(File file) throws IOException {
+        // The last byte of message data precedes its four byte checksum
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(raf.length() - 5);
+            raf.write(1);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private List<String> readLines(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            List<String> lines = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private int countLines(File file) throws IOException {
+        return readLines(file).size();
+    }
+
+}
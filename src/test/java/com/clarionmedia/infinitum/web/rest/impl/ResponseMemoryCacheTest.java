@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.request;
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.responseOfSize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class ResponseMemoryCacheTest {
+
+    private static final long RETAIN_FOREVER = Long.MAX_VALUE;
+
+    private ResponseMemoryCache memoryCache;
+
+    @Before
+    public void setup() {
+        memoryCache = new ResponseMemoryCache(100 * 1000);
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        // Setup
+        HashableHttpRequest request = request("http://example.com/resource");
+        RestResponse response = responseOfSize(1000);
+        memoryCache.put(request, response, RETAIN_FOREVER);
+
+        // Run
+        RestResponse actual = memoryCache.get(request);
+
+        // Verify
+        assertSame("get should return the cached response", response, actual);
+        assertEquals("Cache size should be the size of the message data", 1000, memoryCache.getSize());
+    }
+
+    @Test
+    public void testGetAfterRetention() throws Exception {
+        // Setup
+        HashableHttpRequest request = request("http://example.com/resource");
+        memoryCache.put(request, responseOfSize(1000), System.currentTimeMillis() - 1);
+
+        // Run
+        RestResponse actual = memoryCache.get(request);
+
+        // Verify
+        assertNull("get should not return a response whose retention has passed", actual);
+        assertEquals("Expired response should be removed", 0, memoryCache.getSize());
+    }
+
+    @Test
+    public void testPutLargerThanMaxSize() throws Exception {
+        // Setup
+        HashableHttpRequest request = request("http://example.com/resource");
+
+        // Run
+        memoryCache.put(request, responseOfSize(100 * 1000 + 1), RETAIN_FOREVER);
+
+        // Verify
+        assertNull("Response larger than the cache should not be cached", memoryCache.get(request));
+    }
+
+    @Test
+    public void testSizeBound() throws Exception {
+        // Setup
+        List<HashableHttpRequest> requests = requests("resource", 500);
+
+        // Run
+        for (HashableHttpRequest request : requests)
+            memoryCache.put(request, responseOfSize(1000), RETAIN_FOREVER);
+
+        // Verify
+        assertEquals("Cache should not exceed its maximum size", 100 * 1000, memoryCache.getSize());
+        assertEquals("Cache should hold as many responses as fit", 100, memoryCache.getEntryCount());
+    }
+
+    @Test
+    public void testFrequentlyUsedResponsesSurviveScan() throws Exception {
+        // Setup
+        // Responses of the size which the frequency sketch is dimensioned for
+        memoryCache = new ResponseMemoryCache(100 * 2048);
+        List<HashableHttpRequest> hot = requests("hot", 50);
+
+        // Run
+        for (int round = 0; round < 10; round++) {
+            for (HashableHttpRequest request : hot) {
+                if (memoryCache.get(request) == null)
+                    memoryCache.put(request, responseOfSize(2048), RETAIN_FOREVER);
+            }
+            for (HashableHttpRequest request : requests("scan" + round, 200)) {
+                if (memoryCache.get(request) == null)
+                    memoryCache.put(request, responseOfSize(2048), RETAIN_FOREVER);
+            }
+        }
+
+        // Verify
+        int resident = 0;
+        for (HashableHttpRequest request : hot) {
+            if (memoryCache.get(request) != null)
+                resident++;
+        }
+        assertEquals("Frequently requested responses should not be evicted by one-off responses", hot.size(), resident);
+    }
+
+    @Test
+    public void testAdmissionComparesFirstVictimOnly() throws Exception {
+        // Setup
+        HashableHttpRequest rare = request("http://example.com/rare");
+        HashableHttpRequest popular = request("http://example.com/popular");
+        HashableHttpRequest candidate = request("http://example.com/candidate");
+        memoryCache.put(rare, responseOfSize(49 * 1000), RETAIN_FOREVER);
+        memoryCache.put(popular, responseOfSize(49 * 1000), RETAIN_FOREVER);
+        // The popular response is promoted to the protected segment, leaving
+        // the rare response to be evicted first
+        for (int i = 0; i < 5; i++)
+            memoryCache.get(popular);
+        for (int i = 0; i < 2; i++)
+            memoryCache.get(candidate);
+
+        // Run
+        memoryCache.put(candidate, responseOfSize(60 * 1000), RETAIN_FOREVER);
+
+        // Verify
+        assertNotNull("Candidate requested more often than the first victim should be admitted",
+                memoryCache.get(candidate));
+        assertNull("First victim should be evicted", memoryCache.get(rare));
+        assertNull("Responses should be evicted until the candidate fits", memoryCache.get(popular));
+    }
+
+    @Test
+    public void testSetMaxSize() throws Exception {
+        // Setup
+        for (HashableHttpRequest request : requests("resource", 50))
+            memoryCache.put(request, responseOfSize(1000), RETAIN_FOREVER);
+
+        // Run
+        memoryCache.setMaxSize(10 * 1000);
+
+        // Verify
+        assertEquals("Responses should be evicted to fit the new maximum size", 10 * 1000, memoryCache.getSize());
+    }
+
+    @Test
+    public void testSetMaxSizeRetainsFrequencies() throws Exception {
+        // Setup
+        memoryCache = new ResponseMemoryCache(300 * 1000);
+        List<HashableHttpRequest> hot = requests("hot", 10);
+        for (HashableHttpRequest request : hot) {
+            memoryCache.put(request, responseOfSize(1000), RETAIN_FOREVER);
+            for (int i = 0; i < 15; i++)
+                memoryCache.get(request);
+        }
+
+        // Run
+        memoryCache.setMaxSize(12 * 1000);
+        for (HashableHttpRequest request : requests("scan", 100)) {
+            if (memoryCache.get(request) == null)
+                memoryCache.put(request, responseOfSize(1000), RETAIN_FOREVER);
+        }
+
+        // Verify
+        int resident = 0;
+        for (HashableHttpRequest request : hot) {
+            if (memoryCache.get(request) != null)
+                resident++;
+        }
+        assertEquals("Request frequencies should be retained when the cache is resized", hot.size(), resident);
+    }
+
+    @Test
+    public void testHitRatio() throws Exception {
+        // Setup
+        HashableHttpRequest request = request("http://example.com/resource");
+        memoryCache.get(request);
+        memoryCache.put(request, responseOfSize(1000), RETAIN_FOREVER);
+
+        // Run
+        for (int i = 0; i < 3; i++)
+            memoryCache.get(request);
+
+        // Verify
+        assertEquals("Hit ratio should reflect hits and misses", 0.75, memoryCache.getHitRatio(), 0.0001);
+    }
+
+    private List<HashableHttpRequest> requests(String path, int count) throws Exception {
+        List<HashableHttpRequest> requests = new ArrayList<HashableHttpRequest>();
+        for (int i = 0; i < count; i++)
+            requests.add(request("http://example.com/" + path + "?id=" + i));
+        return requests;
+    }
+
+}
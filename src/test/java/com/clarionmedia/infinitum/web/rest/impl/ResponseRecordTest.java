@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.response;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class ResponseRecordTest {
+
+    private static final long NOW = 1356998400000L; // 01/01/13 00:00:00 GMT
+    private static final String KEY = "GET http://example.com/resource";
+
+    private byte[] messageData;
+
+    @Before
+    public void setup() throws IOException {
+        messageData = "{\"id\":1}".getBytes("UTF-8");
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        // Setup
+        RestResponse response = responseWithData(200, "Content-Type", "application/json", "ETag", "\"v1\"",
+                "Last-Modified", "Tue, 01 Jan 2013 00:00:00 GMT");
+        response.setExpiration(NOW + 60000);
+
+        // Run
+        ResponseRecord actual = readRecord(writeRecord(new ResponseRecord(KEY, response, NOW + 120000)));
+
+        // Verify
+        assertEquals("Cache key should be read back", KEY, actual.getKey());
+        assertEquals("Retention should be read back", NOW + 120000, actual.getRetainUntil());
+        assertEquals("Expiration should be read back", NOW + 60000, actual.getResponse().getExpiration());
+        assertEquals("Headers should be read back", "application/json",
+                actual.getResponse().getHeader("Content-Type"));
+        assertEquals("ETag should be read back", "\"v1\"", actual.getResponse().getHeader("ETag"));
+        assertEquals("Last-Modified should be read back", "Tue, 01 Jan 2013 00:00:00 GMT",
+                actual.getResponse().getHeader("Last-Modified"));
+        assertArrayEquals("Message data should be read back", messageData,
+                actual.getResponse().getResponseData());
+    }
+
+    @Test
+    public void testStatusCodeAbove255() throws IOException {
+        // Setup
+        RestResponse response = responseWithData(503);
+
+        // Run
+        ResponseRecord actual = readRecord(writeRecord(new ResponseRecord(KEY, response, NOW)));
+
+        // Verify
+        assertEquals("Status codes should not be truncated to a byte", 503, actual.getResponse().getStatusCode());
+    }
+
+    @Test
+    public void testHeaderBlockAbove255Bytes() throws IOException {
+        // Setup
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            value.append("token").append(i).append(';');
+        RestResponse response = responseWithData(200, "Set-Cookie", value.toString(), "X-Request-Id", "abc");
+
+        // Run
+        ResponseRecord actual = readRecord(writeRecord(new ResponseRecord(KEY, response, NOW)));
+
+        // Verify
+        assertEquals("Long header values should not be truncated", value.toString(),
+                actual.getResponse().getHeader("Set-Cookie"));
+        assertEquals("Headers after a long header should be read back", "abc",
+                actual.getResponse().getHeader("X-Request-Id"));
+    }
+
+    @Test
+    public void testContentEncodingRoundTrip() throws IOException {
+        // Setup
+        RestResponse response = response(200);
+        response.setResponseData(gzip(messageData));
+        response.setContentEncoding(ContentEncoding.GZIP);
+
+        // Run
+        ResponseRecord actual = readRecord(writeRecord(new ResponseRecord(KEY, response, NOW)));
+
+        // Verify
+        assertEquals("Content coding should be read back", ContentEncoding.GZIP,
+                actual.getResponse().getContentEncoding());
+        assertArrayEquals("Encoded message data should be decoded when read", messageData,
+                actual.getResponse().getResponseData());
+    }
+
+    @Test(expected = IOException.class)
+    public void testChecksumMismatch() throws IOException {
+        // Setup
+        byte[] record = writeRecord(new ResponseRecord(KEY, responseWithData(200), NOW));
+        // The message data is followed by its four byte checksum
+        record[record.length - 5] ^= 0x01;
+
+        // Run
+        readRecord(record);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFormatVersionMismatch() throws IOException {
+        // Setup
+        byte[] record = writeRecord(new ResponseRecord(KEY, responseWithData(200), NOW));
+        // The format version follows the four byte magic number
+        record[4] = (byte) (ResponseRecord.FORMAT_VERSION + 1);
+
+        // Run
+        readRecord(record);
+    }
+
+    private RestResponse responseWithData(int statusCode, String... headers) {
+        RestResponse response = response(statusCode, headers);
+        response.setResponseData(messageData);
+        return response;
+    }
+
+    private byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private byte[] writeRecord(ResponseRecord record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        record.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private ResponseRecord readRecord(byte[] record) throws IOException {
+        return ResponseRecord.readFrom(new ByteArrayInputStream(record));
+    }
+
+}
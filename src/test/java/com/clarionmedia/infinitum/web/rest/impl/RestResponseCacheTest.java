@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.clarionmedia.infinitum.web.impl.HashableHttpRequest;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.delete;
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.request;
+import static com.clarionmedia.infinitum.web.rest.impl.CacheTestFixtures.response;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RestResponseCacheTest {
+
+    private static final String KEY = "GET http://example.com/resource?id=1&sort=name";
+
+    private File directory;
+    private RestResponseCache responseCache;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("RestResponseCacheTest", "");
+        directory.delete();
+        responseCache = new RestResponseCache();
+        responseCache.enableDiskCache(directory);
+    }
+
+    @After
+    public void teardown() {
+        responseCache.close();
+        delete(directory);
+    }
+
+    @Test
+    public void testFileNameIsDigestOfCacheKey() throws Exception {
+        // Setup
+        HashableHttpRequest request = request("http://example.com/resource?id=1&sort=name", KEY);
+
+        // Run
+        responseCache.store(request, freshResponse("data"));
+
+        // Verify
+        File file = new File(new File(directory, "httpcache"), md5(KEY));
+        assertTrue("Response should be stored in a file named by the MD5 digest of its cache key", file.exists());
+    }
+
+    @Test
+    public void testLookupFromDisk() throws Exception {
+        // Setup
+        HashableHttpRequest request = request("http://example.com/resource?id=1&sort=name", KEY);
+        responseCache.store(request, freshResponse("data"));
+        responseCache.close();
+        RestResponseCache reopened = new RestResponseCache();
+        reopened.enableDiskCache(directory);
+
+        // Run
+        RestResponse actual = reopened.lookup(request);
+
+        // Verify
+        assertEquals("Response should be read back from its file", "data", actual.getResponseDataAsString());
+        reopened.close();
+    }
+
+    @Test
+    public void testKeyCollision() throws Exception {
+        // Setup
+        responseCache.close();
+        // A record belonging to another cache key, stored under the file name
+        // of this request's cache key
+        ResponseDiskCache diskCache = new ResponseDiskCache(new File(directory, "httpcache"), 1024 * 1024);
+        diskCache.put(md5(KEY), new ResponseRecord("GET http://example.com/other", freshResponse("other"),
+                Long.MAX_VALUE));
+        diskCache.close();
+        responseCache = new RestResponseCache();
+        responseCache.enableDiskCache(directory);
+
+        // Run
+        RestResponse actual = responseCache.lookup(request("http://example.com/resource?id=1&sort=name", KEY));
+
+        // Verify
+        assertNull("Record stored for another cache key should not be returned", actual);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedMapAdapters() throws Exception {
+        // Setup
+        responseCache.close();
+        responseCache = new RestResponseCache(60);
+        HashableHttpRequest request = request("http://example.com/resource?id=1&sort=name", KEY);
+        RestResponse response = response("data");
+
+        // Run
+        responseCache.put(request, response);
+
+        // Verify
+        assertTrue("Response without an expiration should be given the default expiration", response.isFresh());
+        assertSame("get should look up the stored response", response, responseCache.get(request));
+        assertTrue("containsKey should find the stored response", responseCache.containsKey(request));
+        assertFalse("containsKey should not find other keys", responseCache.containsKey("other"));
+    }
+
+    private RestResponse freshResponse(String data) {
+        RestResponse response = response(data);
+        response.setExpiration(System.currentTimeMillis() + 60000);
+        return response;
+    }
+
+    private String md5(String key) throws Exception {
+        byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+        return String.format("%032x", new BigInteger(1, digest));
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RestResponseTest {
+
+    private RestResponse response;
+
+    @Before
+    public void setup() {
+        response = new RestResponse();
+    }
+
+    @Test
+    public void testGetResponseDataDoesNotRetainBufferCopy() throws Exception {
+        // Setup
+        byte[] data = "data".getBytes("UTF-8");
+        response.setResponseBuffer(ByteBuffer.wrap(data));
+
+        // Run
+        byte[] first = response.getResponseData();
+        byte[] second = response.getResponseData();
+
+        // Verify
+        assertArrayEquals("Buffered message data should be copied", data, first);
+        assertNotSame("Copy of buffered message data should not be retained", first, second);
+        assertTrue("Response should still hold its message data in the buffer", response.isBuffered());
+    }
+
+    @Test
+    public void testSetResponseDataClearsBufferAndEncoding() throws Exception {
+        // Setup
+        response.setResponseBuffer(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        response.setContentEncoding(ContentEncoding.GZIP);
+
+        // Run
+        response.setResponseData("data".getBytes("UTF-8"));
+
+        // Verify
+        assertFalse("Buffer should be replaced by the message data", response.isBuffered());
+        assertNull("Content coding should be cleared", response.getContentEncoding());
+        assertEquals("Message data should be read unchanged", "data", response.getResponseDataAsString());
+    }
+
+    @Test
+    public void testSetResponseDataAsStringClearsStreamAndEncoding() throws Exception {
+        // Setup
+        response.setResponseStream(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        response.setContentEncoding(ContentEncoding.DEFLATE);
+
+        // Run
+        response.setResponseDataAsString("data");
+
+        // Verify
+        assertFalse("Stream should be replaced by the message data", response.isStreamed());
+        assertNull("Content coding should be cleared", response.getContentEncoding());
+        assertEquals("Message data should be read unchanged", "data", response.getResponseDataAsString());
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 Clarion Media, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.clarionmedia.infinitum.web.rest.impl;
+
+import com.clarionmedia.infinitum.web.rest.TypeToken;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class SmileMessageConverterTest {
+
+    private SmileMessageConverter smileConverter;
+
+    @Before
+    public void setup() {
+        smileConverter = new SmileMessageConverter();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        // Setup
+        List<Item> items = Arrays.asList(new Item(1, "first"), new Item(2, "second"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Run
+        smileConverter.write(items, out);
+        List<Item> actual = smileConverter.convert(new TypeToken<List<Item>>() {
+        }, new ByteArrayInputStream(out.toByteArray()));
+
+        // Verify
+        assertEquals("Message should be written with the Smile header", ":)\n", new String(out.toByteArray(), 0, 3,
+                "US-ASCII"));
+        assertEquals("Objects should be read back", items, actual);
+    }
+
+    @Test
+    public void testMediaTypes() {
+        // Verify
+        assertEquals("Messages should be written as Smile", SmileMessageConverter.CONTENT_TYPE,
+                smileConverter.getContentType());
+        assertEquals("Smile should be advertised", Arrays.asList(SmileMessageConverter.CONTENT_TYPE),
+                smileConverter.getSupportedMediaTypes());
+    }
+
+    public static class Item {
+
+        public long id;
+        public String name;
+
+        public Item() {
+        }
+
+        Item(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Item))
+                return false;
+            Item item = (Item) other;
+            return id == item.id && name.equals(item.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) id;
+        }
+
+    }
+
+}